@@ -27,12 +27,14 @@ import com.tle.web.sections.convert.Conversion;
 import com.tle.web.sections.events.AbstractDirectEvent;
 import com.tle.web.sections.events.EventAuthoriser;
 import com.tle.web.sections.events.SectionEvent;
+import com.tle.web.sections.registry.handler.util.MethodInvoker;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
 
 @NonNullByDefault
 public class MethodInvocationEventGenerator implements ParameterizedEvent {
-  private final Method method;
+  private final MethodInvoker invoker;
+  private final Type[] paramTypes;
   private final Object instance;
   private final String forId;
   private final int numParams;
@@ -47,6 +49,7 @@ public class MethodInvocationEventGenerator implements ParameterizedEvent {
       String id,
       Object instance,
       Method method,
+      MethodInvoker invoker,
       int priority,
       boolean preventXsrf,
       Conversion conversion) {
@@ -54,7 +57,8 @@ public class MethodInvocationEventGenerator implements ParameterizedEvent {
     this.eventId = eventId;
     this.forId = id;
     this.instance = instance;
-    this.method = method;
+    this.invoker = invoker;
+    this.paramTypes = method.getGenericParameterTypes();
     this.priority = priority;
     this.preventXsrf = preventXsrf;
     this.useContext = method.getParameterTypes()[0] == SectionContext.class;
@@ -84,14 +88,13 @@ public class MethodInvocationEventGenerator implements ParameterizedEvent {
         } else {
           args[0] = info;
         }
-        Type[] paramTypes = method.getGenericParameterTypes();
         int i = 1;
         for (String param : params) {
           args[i] = conversion.convertFromString(param, paramTypes[i]);
           i++;
         }
         try {
-          method.invoke(instance, args);
+          invoker.invoke(instance, args);
         } catch (Exception e) {
           SectionUtils.throwRuntime(e);
         }
@@ -23,6 +23,9 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
 import com.tle.core.guice.Bind;
 import com.tle.core.guice.Bindings;
 import com.tle.core.plugins.PluginService;
@@ -41,11 +44,17 @@ import com.tle.web.sections.registry.handler.TreeLookupRegistrationHandler;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import org.java.plugin.registry.Extension;
 import org.java.plugin.registry.Extension.Parameter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Responsible for mapping URLs to a {@link SectionTree}.
@@ -70,6 +79,8 @@ import org.java.plugin.registry.Extension.Parameter;
 @Singleton
 @SuppressWarnings("nls")
 public class TreeRegistry implements RegistrationController {
+  private static final Logger LOGGER = LoggerFactory.getLogger(TreeRegistry.class);
+
   private PluginService pluginService;
   private PluginTracker<Object> sectionTreePlugin;
   private PluginTracker<Object> sectionPlugin;
@@ -252,6 +263,42 @@ public class TreeRegistry implements RegistrationController {
     registrationPlugins.setBeanKey("class");
   }
 
+  /**
+   * Builds every registered tree ahead of the first request for it, using the given executor.
+   * Trees which fail to build are logged and left out of the cache, so that they are retried when
+   * they are first requested.
+   *
+   * @return The time in milliseconds taken to build each tree, keyed by path. A value of -1 means
+   *     the tree failed to build.
+   */
+  public Map<String, Long> buildAllTrees(ExecutorService executor) {
+    List<String> paths = Lists.newArrayList(sectionTreePlugin.getExtensionMap().keySet());
+    List<Future<Long>> futures = Lists.newArrayList();
+    for (final String path : paths) {
+      futures.add(
+          executor.submit(
+              new Callable<Long>() {
+                @Override
+                public Long call() {
+                  long start = System.nanoTime();
+                  try {
+                    treeMap.getUnchecked(path);
+                  } catch (RuntimeException e) {
+                    LOGGER.warn("Failed to build section tree " + path, e);
+                    treeMap.invalidate(path);
+                    return -1L;
+                  }
+                  return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                }
+              }));
+    }
+    Map<String, Long> timings = Maps.newLinkedHashMap();
+    for (int i = 0; i < paths.size(); i++) {
+      timings.put(paths.get(i), Futures.getUnchecked(futures.get(i)));
+    }
+    return timings;
+  }
+
   public void clearAll() {
     treeMap.invalidateAll();
   }
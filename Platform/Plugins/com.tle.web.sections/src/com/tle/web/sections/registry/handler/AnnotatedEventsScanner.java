@@ -18,7 +18,6 @@
 
 package com.tle.web.sections.registry.handler;
 
-import com.google.common.base.Throwables;
 import com.tle.annotation.NonNullByDefault;
 import com.tle.annotation.Nullable;
 import com.tle.web.sections.SectionContext;
@@ -33,8 +32,8 @@ import com.tle.web.sections.convert.Conversion;
 import com.tle.web.sections.events.AbstractDirectEvent;
 import com.tle.web.sections.events.js.EventGenerator;
 import com.tle.web.sections.events.js.MethodInvocationEventGenerator;
+import com.tle.web.sections.registry.handler.util.MethodInvoker;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -47,12 +46,14 @@ public class AnnotatedEventsScanner {
   public static class EventData {
     String name;
     Method eventMethod;
+    MethodInvoker invoker;
     EventHandlerMethod annotation;
     int numParams;
   }
 
   public static class DirectData {
     Method eventMethod;
+    MethodInvoker invoker;
     DirectEvent annotation;
   }
 
@@ -82,6 +83,7 @@ public class AnnotatedEventsScanner {
         }
         handlerData.numParams = params.length - 1;
         handlerData.eventMethod = method;
+        handlerData.invoker = new MethodInvoker(method);
         handlerData.annotation = annotation;
         String name = annotation.name();
         if (name.isEmpty()) {
@@ -95,6 +97,7 @@ public class AnnotatedEventsScanner {
         DirectData directData = new DirectData();
         directData.annotation = direct;
         directData.eventMethod = method;
+        directData.invoker = new MethodInvoker(method);
         directEvents.add(directData);
       }
     }
@@ -119,6 +122,7 @@ public class AnnotatedEventsScanner {
           EventData newdata = new EventData();
           newdata.annotation = data.annotation;
           newdata.eventMethod = method;
+          newdata.invoker = new MethodInvoker(method);
           newdata.name = data.name;
           newdata.numParams = data.numParams;
           data = newdata;
@@ -136,7 +140,7 @@ public class AnnotatedEventsScanner {
   public EventGenerator registerEventFactories(Object section, String id, SectionTree tree) {
     for (DirectData data : directEvents) {
       tree.addApplicationEvent(
-          new DirectMethodEvent(data.annotation.priority(), id, data.eventMethod));
+          new DirectMethodEvent(data.annotation.priority(), id, data.eventMethod, data.invoker));
     }
 
     if (factories.isEmpty()) {
@@ -164,6 +168,7 @@ public class AnnotatedEventsScanner {
               id,
               section,
               data.eventMethod,
+              data.invoker,
               annotation.priority(),
               annotation.preventXsrf(),
               conversion);
@@ -174,30 +179,22 @@ public class AnnotatedEventsScanner {
   }
 
   public static class DirectMethodEvent extends AbstractDirectEvent {
-    private final Method method;
+    private final MethodInvoker invoker;
+    private final boolean useInfo;
 
-    public DirectMethodEvent(int priority, String id, Method method) {
+    public DirectMethodEvent(int priority, String id, Method method, MethodInvoker invoker) {
       super(priority, id);
-      this.method = method;
+      this.invoker = invoker;
+      this.useInfo = method.getParameterTypes()[0] == SectionInfo.class;
     }
 
     @Override
     public void fireDirect(SectionId sectionId, SectionInfo info) throws Exception {
-      try {
-        SectionId section = info.getSectionForId(sectionId);
-        if (method.getParameterTypes()[0] == SectionInfo.class) {
-          method.invoke(section, info);
-        } else {
-          method.invoke(section, info.getContextForId(sectionId.getSectionId()));
-        }
-      } catch (InvocationTargetException e) {
-        Throwable t = e.getTargetException();
-        if (t instanceof Exception) {
-          throw (Exception) t;
-        } else if (t != null) {
-          throw Throwables.propagate(t);
-        }
-        throw e;
+      SectionId section = info.getSectionForId(sectionId);
+      if (useInfo) {
+        invoker.invoke(section, info);
+      } else {
+        invoker.invoke(section, info.getContextForId(sectionId.getSectionId()));
       }
     }
   }
@@ -19,6 +19,8 @@
 package com.tle.web.sections.registry.handler.util;
 
 import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
 
@@ -26,6 +28,8 @@ public class MethodAccessor implements PropertyAccessor {
   private final Method getter;
   private final Method setter;
   private final String name;
+  private final MethodHandle readHandle;
+  private final MethodHandle writeHandle;
 
   public MethodAccessor(PropertyDescriptor desc) {
     this(desc.getReadMethod(), desc.getWriteMethod(), desc.getName());
@@ -35,16 +39,34 @@ public class MethodAccessor implements PropertyAccessor {
     this.getter = getter;
     this.setter = setter;
     this.name = name;
+    this.readHandle =
+        getter == null
+            ? null
+            : MethodInvoker.unreflect(getter)
+                .asType(MethodType.methodType(Object.class, Object.class));
+    this.writeHandle =
+        setter == null
+            ? null
+            : MethodInvoker.unreflect(setter)
+                .asType(MethodType.methodType(void.class, Object.class, Object.class));
   }
 
   @Override
   public Object read(Object obj) throws Exception {
-    return getter.invoke(obj);
+    try {
+      return (Object) readHandle.invokeExact(obj);
+    } catch (Throwable t) {
+      throw MethodInvoker.rethrow(t);
+    }
   }
 
   @Override
   public void write(Object obj, Object value) throws Exception {
-    setter.invoke(obj, value);
+    try {
+      writeHandle.invokeExact(obj, value);
+    } catch (Throwable t) {
+      throw MethodInvoker.rethrow(t);
+    }
   }
 
   @Override
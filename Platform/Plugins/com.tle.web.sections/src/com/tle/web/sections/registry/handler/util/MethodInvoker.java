@@ -0,0 +1,71 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.web.sections.registry.handler.util;
+
+import com.google.common.base.Throwables;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+/**
+ * Invokes a method through a {@link MethodHandle} which is resolved once, rather than going
+ * through {@link Method#invoke(Object, Object...)} (and its access checks and argument copying) on
+ * every call. Unlike {@code Method.invoke}, exceptions thrown by the method are not wrapped in an
+ * {@code InvocationTargetException}.
+ */
+public final class MethodInvoker {
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+  private final MethodHandle handle;
+
+  public MethodInvoker(Method method) {
+    int params = method.getParameterTypes().length;
+    this.handle =
+        unreflect(method)
+            .asType(MethodType.genericMethodType(params + 1))
+            .asSpreader(Object[].class, params);
+  }
+
+  public Object invoke(Object target, Object... args) throws Exception {
+    try {
+      return (Object) handle.invokeExact(target, args);
+    } catch (Throwable t) {
+      throw rethrow(t);
+    }
+  }
+
+  /**
+   * Resolves a handle for the method, regardless of the method's visibility. The handle takes the
+   * target object as its first parameter.
+   */
+  public static MethodHandle unreflect(Method method) {
+    method.setAccessible(true);
+    try {
+      return LOOKUP.unreflect(method);
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  static Exception rethrow(Throwable t) throws Exception {
+    Throwables.propagateIfPossible(t, Exception.class);
+    throw new RuntimeException(t);
+  }
+}
@@ -0,0 +1,60 @@
+package com.tle.web.sections.registry.handler.util;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import junit.framework.TestCase;
+
+public class MethodInvokerTest extends TestCase {
+  @SuppressWarnings("unused")
+  private static class Target {
+    private int calls;
+
+    private String join(String first, Integer second) {
+      calls++;
+      return first + second;
+    }
+
+    private void throwIt(Exception e) throws Exception {
+      throw e;
+    }
+
+    private void error() {
+      throw new AssertionError("error");
+    }
+  }
+
+  private static MethodInvoker invoker(String name, Class<?>... params) throws Exception {
+    Method method = Target.class.getDeclaredMethod(name, params);
+    return new MethodInvoker(method);
+  }
+
+  public void testInvokesPrivateMethod() throws Exception {
+    MethodInvoker invoker = invoker("join", String.class, Integer.class);
+    Target target = new Target();
+
+    assertEquals("a1", invoker.invoke(target, "a", 1));
+    assertEquals("b2", invoker.invoke(target, "b", 2));
+    assertEquals(2, target.calls);
+  }
+
+  public void testCheckedExceptionIsNotWrapped() throws Exception {
+    MethodInvoker invoker = invoker("throwIt", Exception.class);
+    IOException thrown = new IOException("checked");
+    try {
+      invoker.invoke(new Target(), thrown);
+      fail("Expected an exception");
+    } catch (IOException e) {
+      assertSame(thrown, e);
+    }
+  }
+
+  public void testErrorIsNotWrapped() throws Exception {
+    MethodInvoker invoker = invoker("error");
+    try {
+      invoker.invoke(new Target());
+      fail("Expected an error");
+    } catch (AssertionError e) {
+      assertEquals("error", e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.common.searching;
+
+import com.tle.annotation.Nullable;
+import java.io.Serializable;
+
+/**
+ * The position of the last result of a page of search results, as the value of the search's sort
+ * field and the item's ID (to break ties). Passing it back in returns the results that follow it,
+ * which unlike an offset costs the same no matter how deep the page is.
+ */
+public class SearchCursor implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  @Nullable private final String sortValue;
+  private final long key;
+
+  public SearchCursor(@Nullable String sortValue, long key) {
+    this.sortValue = sortValue;
+    this.key = key;
+  }
+
+  @Nullable
+  public String getSortValue() {
+    return sortValue;
+  }
+
+  public long getKey() {
+    return key;
+  }
+
+  @Override
+  public String toString() {
+    return sortValue + ":" + key; // $NON-NLS-1$
+  }
+}
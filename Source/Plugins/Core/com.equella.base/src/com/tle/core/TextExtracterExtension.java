@@ -41,4 +41,12 @@ public interface TextExtracterExtension {
   boolean isMimeTypeSupported(String mimeType);
 
   String getNameKey();
+
+  /**
+   * Identifies the output of this extracter. Previously extracted text is cached against this, so
+   * change it whenever the extracter will produce different text for the same input.
+   */
+  default String getExtracterVersion() {
+    return "1"; // $NON-NLS-1$
+  }
 }
@@ -19,7 +19,7 @@
 package com.tle.core.notification.service
 
 import java.util.concurrent.Callable
-import java.util.{Collections, Date, UUID}
+import java.util.{Collections, UUID}
 
 import com.tle.common.institution.CurrentInstitution
 import com.tle.common.usermanagement.user.CurrentUser
@@ -48,9 +48,12 @@ object NotificationEmailer {
   val LOGGER = LoggerFactory.getLogger(classOf[NotificationEmailer])
 }
 
-class NotificationEmailer(batched: Boolean,
-                          processDate: Date,
-                          attemptId: String,
+/**
+  * Creates the emails for the current user. The reason counts are those of the user's unprocessed
+  * notifications in this attempt, which the caller has already fetched for a batch of users.
+  */
+class NotificationEmailer(attemptId: String,
+                          reasonCounts: java.util.Map[String, Integer],
                           dao: NotificationDao,
                           emailService: EmailService)
     extends Callable[java.lang.Iterable[Callable[EmailResult[EmailKey]]]] {
@@ -59,8 +62,7 @@ class NotificationEmailer(batched: Boolean,
     val userBean = CurrentUser.getDetails
     val inst     = CurrentInstitution.get()
     val user     = userBean.getUniqueID
-    dao.updateLastAttempt(user, batched, processDate, attemptId)
-    val reasonMap = dao.getReasonCounts(user, attemptId).asScala.mapValues(_.intValue()).toMap
+    val reasonMap = reasonCounts.asScala.mapValues(_.intValue()).toMap
     val canSend = emailService.hasMailSettings && Option(userBean.getEmailAddress)
       .exists(_.nonEmpty)
     val ext2Reasons = reasonMap.keys.groupBy(extensionForType)
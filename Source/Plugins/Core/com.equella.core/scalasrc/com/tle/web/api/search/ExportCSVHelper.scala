@@ -21,10 +21,8 @@ package com.tle.web.api.search
 import com.dytech.devlib.PropBagEx
 import com.tle.beans.entity.Schema
 import com.tle.beans.entity.Schema.SchemaNode
-import com.tle.core.services.item.FreetextResult
-import com.tle.legacy.LegacyGuice
 import org.apache.commons.lang.StringEscapeUtils
-import java.io.BufferedOutputStream
+import java.io.Writer
 import scala.collection.JavaConverters._
 case class CSVHeader(name: String, xpath: String)
 
@@ -159,15 +157,17 @@ object ExportCSVHelper {
     (processValues ++ processAttributes).mkString(delimiter)
   }
 
+  // Regex for XPATH that points to an attribute(e.g. item/@name).
+  private val xpathAttributeRegex = """^.+/@.+$""".r
+
   /**
-    * Builds a CSV row based on the XML for an Item.
+    * Writes a CSV row based on the XML for an Item, escaping each cell straight into the writer
+    * rather than building the row up as a string first.
     * @param xml The XML from an Item for this row
     * @param headers The CSV column headers
+    * @param out Writer the row is written to
     */
-  def buildCSVRow(xml: PropBagEx, headers: List[CSVHeader]): String = {
-    // Regex for XPATH that points to an attribute(e.g. item/@name).
-    val rowContent          = new StringBuilder
-    val xpathAttributeRegex = """^.+/@.+$""".r
+  def writeCSVRow(xml: PropBagEx, headers: List[CSVHeader], out: Writer): Unit = {
     headers.foreach(header => {
       // If the xpath points to an attribute, read the value directly.
       val cellContent: String = header.xpath match {
@@ -187,27 +187,16 @@ object ExportCSVHelper {
       }
 
       // Add a comma to separate each cell.
-      rowContent.append(StringEscapeUtils.escapeCsv(cellContent))
-      rowContent.append(",")
-    })
-    rowContent.toString()
-  }
-
-  def convertSearchResultToXML(searchResults: List[FreetextResult]): List[PropBagEx] = {
-    searchResults.map(result => {
-      val item                   = LegacyGuice.itemService.getItemPack(result.getItemKey).getItem
-      val fullItemXml: PropBagEx = LegacyGuice.itemXsltService.getStandardXmlForXslt(item, null)
-      fullItemXml
+      StringEscapeUtils.escapeCsv(out, cellContent)
+      out.write(",")
     })
+    out.write("\n")
   }
 
   /**
-    * Write CSV contents into a BufferedOutputStream.
-    * @param bos BufferedOutputStream A BufferedOutputStream wrapping another underlying OutputStream.
-    * @param contents Contents to be written to the BufferedOutputStream.
+    * Write CSV contents into a Writer. It is up to the caller to flush the writer.
+    * @param out Writer, typically buffered, wrapping the underlying OutputStream.
+    * @param contents Contents to be written to the Writer.
     */
-  def writeRow(bos: BufferedOutputStream, contents: String): Unit = {
-    bos.write(s"${contents}\n".getBytes())
-    bos.flush()
-  }
+  def writeRow(out: Writer, contents: String): Unit = out.write(s"${contents}\n")
 }
@@ -39,7 +39,8 @@ import javax.ws.rs.core.{Context, Response}
 import javax.ws.rs.{BadRequestException, BeanParam, GET, HEAD, NotFoundException, Path, Produces}
 import org.jboss.resteasy.annotations.cache.NoCache
 
-import java.io.BufferedOutputStream
+import java.io.{BufferedWriter, OutputStreamWriter}
+import java.nio.charset.StandardCharsets
 import scala.collection.JavaConverters._
 import javax.servlet.http.HttpServletResponse
 
@@ -48,6 +49,8 @@ import javax.servlet.http.HttpServletResponse
 @Produces(Array("application/json"))
 @Api("Search V2")
 class SearchResource {
+  private val ExportBufferSize = 64 * 1024
+
   @GET
   @ApiOperation(
     value = "Search items",
@@ -89,18 +92,21 @@ class SearchResource {
 
     resp.setContentType("text/csv")
     resp.setHeader("Content-Disposition", " attachment; filename=search.csv")
-    val bos = new BufferedOutputStream(resp.getOutputStream)
+    // The export service flushes after each chunk of rows, not after every row.
+    val out = new BufferedWriter(
+      new OutputStreamWriter(resp.getOutputStream, StandardCharsets.UTF_8),
+      ExportBufferSize)
 
     // Build the first row for headers.
     val csvHeaders = buildCSVHeaders(schema)
-    writeRow(bos, s"${csvHeaders.map(c => c.name).mkString(",")}")
+    writeRow(out, s"${csvHeaders.map(c => c.name).mkString(",")}")
 
     LegacyGuice.exportService.export(createSearch(params),
                                      params.searchAttachments,
                                      csvHeaders,
-                                     writeRow(bos, _))
+                                     out)
 
-    bos.close()
+    out.close()
   }
 
   private def convertParamsToJsonString(params: SearchParam): String = {
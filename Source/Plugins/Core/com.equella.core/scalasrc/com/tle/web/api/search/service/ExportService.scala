@@ -18,45 +18,98 @@
 
 package com.tle.web.api.search.service
 
+import com.tle.beans.item.{Item, ItemSelect}
 import com.tle.common.search.DefaultSearch
+import com.tle.common.searching.SearchCursor
+import com.tle.common.searching.SortField.Type
+import com.tle.common.security.SecurityConstants
 import com.tle.core.guice.Bind
+import com.tle.core.item.dao.ItemDao
+import com.tle.core.services.item.FreetextResult
 import com.tle.legacy.LegacyGuice
 import com.tle.web.api.search.CSVHeader
-import com.tle.web.api.search.ExportCSVHelper.{buildCSVRow, convertSearchResultToXML}
+import com.tle.web.api.search.ExportCSVHelper.writeCSVRow
 import com.tle.web.api.search.SearchHelper.search
 import org.springframework.transaction.annotation.Transactional
-import javax.inject.Singleton
+
+import java.io.Writer
+import javax.inject.{Inject, Singleton}
+import scala.annotation.tailrec
 import scala.collection.JavaConverters._
 
 @Bind
 @Singleton
 class ExportService {
+  @Inject var itemDao: ItemDao = _
+
+  val ChunkSize = 100
 
   /**
     * Export search results as CSV contents. The full result is chunked by paging and streaming.
+    * Searches sorted on a single field are paged with a cursor so each chunk costs the same no
+    * matter how far into the results it is, others (e.g. by relevance) fall back to offsets.
+    * The items of each chunk are loaded in one query and evicted from the session once written,
+    * and the writer is flushed after each chunk.
     * @param defaultSearch A set of search criteria
     * @param searchAttachments Whether to search attachments.
     * @param headers A list of CSV headers
-    * @param writeRow Function used to output CSV contents
+    * @param out Writer used to output CSV contents, which should be buffered
     */
   @Transactional
   def export(defaultSearch: DefaultSearch,
              searchAttachments: Boolean,
              headers: List[CSVHeader],
-             writeRow: (String) => Unit): Unit = {
-    // Get the total count first. As we only do one search, the result of 'countsFromFilters'
-    // must be an array that has only one element.
-    val count     = LegacyGuice.freeTextService.countsFromFilters(List(defaultSearch).asJava)(0)
-    val chunkSize = 100
-    val starts: Seq[Int] =
-      for (i <- 0 until count / chunkSize + 1) yield i * chunkSize
-
-    starts.foreach(start => {
-      convertSearchResultToXML(
-        search(defaultSearch, start, chunkSize, searchAttachments).getSearchResults.asScala.toList)
-        .foreach(xml => {
-          writeRow(s"${buildCSVRow(xml, headers)}")
-        })
-    })
+             out: Writer): Unit = {
+    def writeChunk(results: java.util.List[FreetextResult]): Unit = {
+      loadItems(results).foreach(item => {
+        writeCSVRow(LegacyGuice.itemXsltService.getStandardXmlForXslt(item, null), headers, out)
+      })
+      out.flush()
+      itemDao.clear()
+    }
+
+    @tailrec
+    def byCursor(cursor: Option[SearchCursor]): Unit = {
+      val results = LegacyGuice.freeTextService
+        .searchAfter[FreetextResult](defaultSearch, cursor.orNull, ChunkSize, searchAttachments)
+      writeChunk(results.getSearchResults)
+      Option(results.getNextCursor) match {
+        case Some(next) => byCursor(Some(next))
+        case None       =>
+      }
+    }
+
+    @tailrec
+    def byOffset(start: Int): Unit = {
+      val results = search(defaultSearch, start, ChunkSize, searchAttachments)
+      writeChunk(results.getSearchResults)
+      if (results.getCount > 0 && start + results.getCount < results.getAvailable) {
+        byOffset(start + results.getCount)
+      }
+    }
+
+    if (canUseCursor(defaultSearch)) byCursor(None) else byOffset(0)
+  }
+
+  private def canUseCursor(search: DefaultSearch): Boolean =
+    Option(search.getSortFields).exists(fields =>
+      fields.length == 1 && fields(0).getType == Type.STRING)
+
+  // Loads the items of a chunk in one go, rather than as an item pack each. Items which have been
+  // deleted since they were indexed, or which the user can't view, are skipped.
+  private def loadItems(results: java.util.List[FreetextResult]): List[Item] = {
+    val select = new ItemSelect
+    select.setItemXml(true)
+    select.setItemdef(true)
+    select.setDrm(true)
+    select.setModeration(true)
+    val items = LegacyGuice.itemService
+      .queryItems(results.asScala.map(_.getItemIdKey).asJava, select)
+      .asScala
+      .filter(_ != null)
+    LegacyGuice.aclManager
+      .filterNonGrantedObjects(List(SecurityConstants.VIEW_ITEM).asJava, items.asJava)
+      .asScala
+      .toList
   }
 }
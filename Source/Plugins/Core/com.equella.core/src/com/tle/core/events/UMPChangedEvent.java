@@ -45,6 +45,12 @@ public class UMPChangedEvent extends ApplicationEvent<UMPChangedListener> {
     return groupPurge;
   }
 
+  /** Only purges of everything can be merged, purges of single ids are delivered as is. */
+  @Override
+  public Object getCoalesceKey() {
+    return purgeIdFromCaches == null ? UMPChangedEvent.class : null;
+  }
+
   @Override
   public Class<UMPChangedListener> getListener() {
     return UMPChangedListener.class;
@@ -0,0 +1,45 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tle.core.filesystem.dedup;
+
+import com.tle.core.guice.Bind;
+import com.tle.core.scheduler.ScheduledTask;
+import java.io.IOException;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.apache.log4j.Logger;
+
+/** Removes the blobs of the {@link ContentStore} that are no longer used by any file. */
+@Bind
+@Singleton
+@SuppressWarnings("nls")
+public class CollectContentGarbageTask implements ScheduledTask {
+  private static final Logger LOGGER = Logger.getLogger(CollectContentGarbageTask.class);
+
+  @Inject private ContentStore contentStore;
+
+  @Override
+  public void execute() {
+    try {
+      int removed = contentStore.collectGarbage();
+      LOGGER.info("Collected content store garbage, " + removed + " unused blobs were removed");
+    } catch (IOException e) {
+      LOGGER.error("Error collecting content store garbage", e);
+    }
+  }
+}
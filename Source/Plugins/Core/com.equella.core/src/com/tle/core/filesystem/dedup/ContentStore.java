@@ -0,0 +1,186 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tle.core.filesystem.dedup;
+
+import com.tle.core.filesystem.digest.FileDigestIndex;
+import com.tle.core.guice.Bind;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.UUID;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.apache.log4j.Logger;
+
+/**
+ * Stores each distinct file content of the filestore once. Committed files are hard linked to a
+ * blob in the ContentStore folder named by their MD5 digest and size, so byte identical files in
+ * different items and item versions share their storage. The number of links to a blob is its
+ * reference count, and blobs that are only linked from the store itself are removed by {@link
+ * #collectGarbage()}.
+ *
+ * <p>Folders starting with an underscore (thumbnails, tiles, zips etc.) are left alone, since they
+ * are regenerated in place by external tools that know nothing about shared files.
+ */
+@Bind
+@Singleton
+@SuppressWarnings("nls")
+public class ContentStore {
+  private static final Logger LOGGER = Logger.getLogger(ContentStore.class);
+  private static final String STORE_FOLDER = "ContentStore";
+  private static final String TEMP = ".dedup";
+  private static final boolean UNIX_ATTRIBUTES =
+      FileSystems.getDefault().supportedFileAttributeViews().contains("unix");
+
+  @Inject private FileDigestIndex digestIndex;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("filestore.deduplicate")
+  private boolean enabled;
+
+  private final Path rootDir;
+  private final Path storeRoot;
+
+  @Inject
+  public ContentStore(@Named("filestore.root") File rootDir) {
+    this.rootDir = rootDir.toPath();
+    this.storeRoot = this.rootDir.resolve(STORE_FOLDER);
+  }
+
+  /** Link counts are needed to tell whether a blob is still used. */
+  public boolean isEnabled() {
+    return enabled && UNIX_ATTRIBUTES;
+  }
+
+  /**
+   * Links each file under the folder to the blob with the same content, storing a new blob for
+   * content that hasn't been seen before. Files on other filestores are left alone.
+   *
+   * @return The number of bytes that are now shared rather than stored again
+   */
+  public long deduplicate(File folder) throws IOException {
+    Path start = folder.toPath();
+    if (!isEnabled() || !start.startsWith(rootDir) || !Files.isDirectory(start)) {
+      return 0;
+    }
+
+    final long[] saved = new long[1];
+    Files.walkFileTree(
+        start,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            return dir.getFileName().toString().startsWith("_")
+                ? FileVisitResult.SKIP_SUBTREE
+                : FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+              throws IOException {
+            if (attrs.isRegularFile() && attrs.size() > 0) {
+              saved[0] += store(file, attrs.size());
+            }
+            return FileVisitResult.CONTINUE;
+          }
+        });
+    if (saved[0] > 0 && LOGGER.isDebugEnabled()) {
+      LOGGER.debug("Deduplicated " + saved[0] + " bytes under " + folder);
+    }
+    return saved[0];
+  }
+
+  private long store(Path file, long size) throws IOException {
+    // Already shared, either with a blob or with another version through staging
+    if (getLinkCount(file) > 1) {
+      return 0;
+    }
+
+    String digest = digestIndex.getDigest(file.toFile());
+    Path blob = storeRoot.resolve(digest.substring(0, 2)).resolve(digest + '-' + size);
+    Files.createDirectories(blob.getParent());
+    try {
+      Files.createLink(blob, file);
+      return 0;
+    } catch (FileAlreadyExistsException e) {
+      // Fall through and share the existing blob
+    }
+
+    if (!com.google.common.io.Files.equal(file.toFile(), blob.toFile())) {
+      LOGGER.warn("Digest collision between " + file + " and " + blob);
+      return 0;
+    }
+
+    Path link = file.resolveSibling('.' + UUID.randomUUID().toString() + TEMP);
+    try {
+      Files.createLink(link, blob);
+    } catch (NoSuchFileException e) {
+      // Garbage collected in the meantime
+      return 0;
+    }
+    Files.move(link, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    digestIndex.record(file.toFile(), digest);
+    return size;
+  }
+
+  /**
+   * Removes the blobs that no longer have any file linked to them.
+   *
+   * @return The number of blobs removed
+   */
+  public int collectGarbage() throws IOException {
+    if (!UNIX_ATTRIBUTES || !Files.isDirectory(storeRoot)) {
+      return 0;
+    }
+
+    final int[] removed = new int[1];
+    Files.walkFileTree(
+        storeRoot,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult visitFile(Path blob, BasicFileAttributes attrs)
+              throws IOException {
+            if (attrs.isRegularFile() && getLinkCount(blob) <= 1) {
+              Files.deleteIfExists(blob);
+              removed[0]++;
+            }
+            return FileVisitResult.CONTINUE;
+          }
+        });
+    return removed[0];
+  }
+
+  private static int getLinkCount(Path file) throws IOException {
+    try {
+      return ((Number) Files.getAttribute(file, "unix:nlink", LinkOption.NOFOLLOW_LINKS))
+          .intValue();
+    } catch (UnsupportedOperationException e) {
+      return 1;
+    }
+  }
+}
@@ -0,0 +1,229 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.filesystem.digest;
+
+import com.dytech.devlib.Md5;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.tle.annotation.Nullable;
+import com.tle.common.filesystem.FileSystemHelper;
+import com.tle.core.guice.Bind;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.apache.log4j.Logger;
+
+/**
+ * Remembers the MD5 digest of files in the filestore, so that ETags don't have to be calculated by
+ * reading the whole file for every request. Entries are stored in a folder next to the filestore
+ * (so all cluster nodes share them) and are only trusted while the size and last modified time of
+ * the file still match what was recorded.
+ */
+@Bind
+@Singleton
+@SuppressWarnings("nls")
+public class FileDigestIndex {
+  private static final Logger LOGGER = Logger.getLogger(FileDigestIndex.class);
+  private static final String INDEX_FOLDER = "DigestIndex";
+  private static final String TEMP = ".tmp";
+
+  private final Cache<String, DigestEntry> entries =
+      CacheBuilder.newBuilder().maximumSize(10000).build();
+
+  private final Path indexRoot;
+
+  @Inject
+  public FileDigestIndex(@Named("filestore.root") File rootDir) {
+    this.indexRoot = new File(rootDir, INDEX_FOLDER).toPath();
+  }
+
+  /**
+   * Returns the MD5 digest of the file, calculating (and remembering) it if there is no up to date
+   * entry for it.
+   */
+  public String getDigest(File file) throws IOException {
+    DigestEntry entry = getEntry(file);
+    if (entry != null && entry.matches(file)) {
+      return entry.getDigest();
+    }
+
+    String digest = FileSystemHelper.md5recurse(file, new byte[Short.MAX_VALUE]);
+    if (file.isFile()) {
+      record(file, digest);
+    }
+    return digest;
+  }
+
+  /** Remembers an already calculated digest for the file, e.g. one worked out while writing it. */
+  public void record(File file, String digest) {
+    DigestEntry entry =
+        new DigestEntry(file.getAbsolutePath(), file.length(), file.lastModified(), digest);
+    entries.put(entry.getPath(), entry);
+    try {
+      Path entryFile = getEntryFile(entry.getPath());
+      Files.createDirectories(entryFile.getParent());
+      Path temp =
+          Files.createTempFile(entryFile.getParent(), entryFile.getFileName().toString(), TEMP);
+      Files.write(temp, entry.toLine().getBytes(StandardCharsets.UTF_8));
+      Files.move(temp, entryFile, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      // It'll just be calculated again next time
+      LOGGER.warn("Error recording digest for " + file, e);
+    }
+  }
+
+  /** Carries the digest of a file over to a byte for byte copy of it. */
+  public void copied(File from, File to) {
+    DigestEntry entry = getEntry(from);
+    if (entry != null && entry.matches(from) && to.isFile() && to.length() == from.length()) {
+      record(to, entry.getDigest());
+    }
+  }
+
+  /**
+   * Checks every entry in the index. Entries for files which no longer exist are removed, and
+   * entries for files which have changed are recalculated.
+   *
+   * @return the number of entries that were removed or recalculated
+   */
+  public int verify() throws IOException {
+    if (!Files.isDirectory(indexRoot)) {
+      return 0;
+    }
+    int changed = 0;
+    try (DirectoryStream<Path> shards = Files.newDirectoryStream(indexRoot)) {
+      for (Path shard : shards) {
+        try (DirectoryStream<Path> entryFiles = Files.newDirectoryStream(shard)) {
+          for (Path entryFile : entryFiles) {
+            if (entryFile.getFileName().toString().endsWith(TEMP)) {
+              continue;
+            }
+            DigestEntry entry = readEntry(entryFile);
+            if (entry == null) {
+              Files.deleteIfExists(entryFile);
+              changed++;
+              continue;
+            }
+
+            File file = new File(entry.getPath());
+            if (!file.isFile()) {
+              entries.invalidate(entry.getPath());
+              Files.deleteIfExists(entryFile);
+              changed++;
+            } else if (!entry.matches(file)) {
+              record(file, FileSystemHelper.md5recurse(file, new byte[Short.MAX_VALUE]));
+              changed++;
+            }
+          }
+        }
+      }
+    }
+    return changed;
+  }
+
+  @Nullable
+  private DigestEntry getEntry(File file) {
+    String path = file.getAbsolutePath();
+    DigestEntry entry = entries.getIfPresent(path);
+    if (entry == null) {
+      Path entryFile = getEntryFile(path);
+      if (Files.exists(entryFile)) {
+        entry = readEntry(entryFile);
+        // Guard against the unlikely case of a hash collision
+        if (entry != null && entry.getPath().equals(path)) {
+          entries.put(path, entry);
+        } else {
+          entry = null;
+        }
+      }
+    }
+    return entry;
+  }
+
+  @Nullable
+  private DigestEntry readEntry(Path entryFile) {
+    try {
+      List<String> lines = Files.readAllLines(entryFile, StandardCharsets.UTF_8);
+      return lines.isEmpty() ? null : DigestEntry.fromLine(lines.get(0));
+    } catch (IOException | RuntimeException e) {
+      LOGGER.warn("Ignoring unreadable digest entry " + entryFile, e);
+      return null;
+    }
+  }
+
+  private Path getEntryFile(String path) {
+    String key = hash(path);
+    return indexRoot.resolve(key.substring(0, 2)).resolve(key);
+  }
+
+  private static String hash(String path) {
+    try {
+      MessageDigest md5 = MessageDigest.getInstance("md5");
+      return Md5.stringify(md5.digest(path.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new Error("Missing MD5 Digest");
+    }
+  }
+
+  private static class DigestEntry {
+    private final String path;
+    private final long size;
+    private final long lastModified;
+    private final String digest;
+
+    protected DigestEntry(String path, long size, long lastModified, String digest) {
+      this.path = path;
+      this.size = size;
+      this.lastModified = lastModified;
+      this.digest = digest;
+    }
+
+    public boolean matches(File file) {
+      return file.length() == size && file.lastModified() == lastModified;
+    }
+
+    public String getPath() {
+      return path;
+    }
+
+    public String getDigest() {
+      return digest;
+    }
+
+    public String toLine() {
+      return size + "\t" + lastModified + "\t" + digest + "\t" + path;
+    }
+
+    public static DigestEntry fromLine(String line) {
+      String[] parts = line.split("\t", 4);
+      return new DigestEntry(
+          parts[3], Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2]);
+    }
+  }
+}
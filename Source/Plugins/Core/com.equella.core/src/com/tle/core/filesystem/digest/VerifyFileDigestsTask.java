@@ -0,0 +1,46 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.filesystem.digest;
+
+import com.tle.core.guice.Bind;
+import com.tle.core.scheduler.ScheduledTask;
+import java.io.IOException;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.apache.log4j.Logger;
+
+/** Removes or recalculates the entries of the {@link FileDigestIndex} that are out of date. */
+@Bind
+@Singleton
+@SuppressWarnings("nls")
+public class VerifyFileDigestsTask implements ScheduledTask {
+  private static final Logger LOGGER = Logger.getLogger(VerifyFileDigestsTask.class);
+
+  @Inject private FileDigestIndex digestIndex;
+
+  @Override
+  public void execute() {
+    try {
+      int changed = digestIndex.verify();
+      LOGGER.info("Verified file digests, " + changed + " entries were out of date");
+    } catch (IOException e) {
+      LOGGER.error("Error verifying file digests", e);
+    }
+  }
+}
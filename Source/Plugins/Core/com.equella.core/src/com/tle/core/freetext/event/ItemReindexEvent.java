@@ -36,6 +36,12 @@ public class ItemReindexEvent extends ApplicationEvent<ItemReindexListener> {
     return filter;
   }
 
+  /** Reindexing the same items twice in a row is pointless. */
+  @Override
+  public Object getCoalesceKey() {
+    return filter.getKey();
+  }
+
   @Override
   public Class<ItemReindexListener> getListener() {
     return ItemReindexListener.class;
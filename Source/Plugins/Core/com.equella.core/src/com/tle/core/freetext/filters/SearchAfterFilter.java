@@ -0,0 +1,80 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.freetext.filters;
+
+import com.dytech.edge.queries.FreeTextQuery;
+import com.tle.common.searching.SearchCursor;
+import java.io.IOException;
+import java.util.Arrays;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.FieldCache.StringIndex;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.OpenBitSet;
+
+/**
+ * Only lets through documents which sort after a {@link SearchCursor}, given a search sorted on a
+ * single string field and then the item ID, both in the same direction. The ordering is worked out
+ * from the field cache ordinals, the same values the sort itself uses, so a page never skips or
+ * repeats a document that was at the cursor position.
+ */
+public class SearchAfterFilter extends Filter {
+  private static final long serialVersionUID = 1L;
+
+  private final String field;
+  private final boolean reverse;
+  private final SearchCursor cursor;
+
+  public SearchAfterFilter(String field, boolean reverse, SearchCursor cursor) {
+    this.field = field;
+    this.reverse = reverse;
+    this.cursor = cursor;
+  }
+
+  @Override
+  public DocIdSet getDocIdSet(IndexReader reader) throws IOException {
+    int max = reader.maxDoc();
+    OpenBitSet good = new OpenBitSet(max);
+    StringIndex index = FieldCache.DEFAULT.getStringIndex(reader, field);
+    long[] ids = FieldCache.DEFAULT.getLongs(reader, FreeTextQuery.FIELD_ID);
+
+    // Ordinals are doubled so that a cursor value which isn't in this segment can sit between two
+    // that are. Ordinal zero is documents without a value, which sort first.
+    int cursorOrd = 0;
+    String value = cursor.getSortValue();
+    if (value != null) {
+      int found = Arrays.binarySearch(index.lookup, 1, index.lookup.length, value);
+      cursorOrd = found >= 0 ? found * 2 : (-found - 1) * 2 - 1;
+    }
+    long key = cursor.getKey();
+
+    int[] order = index.order;
+    for (int doc = 0; doc < max; doc++) {
+      int compare = Integer.compare(order[doc] * 2, cursorOrd);
+      if (compare == 0) {
+        compare = Long.compare(ids[doc], key);
+      }
+      if (reverse ? compare < 0 : compare > 0) {
+        good.fastSet(doc);
+      }
+    }
+    return good;
+  }
+}
@@ -21,14 +21,20 @@ package com.tle.core.freetext.filters;
 import com.dytech.edge.queries.FreeTextQuery;
 import com.tle.common.usermanagement.user.CurrentUser;
 import com.tle.common.usermanagement.user.UserState;
+import com.tle.core.freetext.filters.SecurityFilterCache.TermPostings;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermDocs;
@@ -47,12 +53,17 @@ public class SecurityFilter extends Filter {
   private TermValueComparator comparator = new TermValueComparator();
   private int ownerSizes;
   private boolean systemUser;
+  private String userId;
+  private String profileKey;
+  private transient SecurityFilterCache cache;
 
-  public SecurityFilter(String aclType) {
+  public SecurityFilter(String aclType, SecurityFilterCache cache) {
+    this.cache = cache;
     ownerExprMap = new HashMap<String, Boolean>();
 
     UserState userState = CurrentUser.getUserState();
     systemUser = userState.isSystem();
+    userId = CurrentUser.getUserID();
     Collection<Long> aclExpressions = userState.getCommonAclExpressions();
     Collection<Long> ownerAclExpressions = userState.getOwnerAclExpressions();
     Collection<Long> notOwnerAclExpressions = userState.getNotOwnerAclExpressions();
@@ -83,8 +94,39 @@ public class SecurityFilter extends Filter {
         ownerExprMap.put(aclStr, false);
       }
     }
+
+    profileKey =
+        createProfileKey(aclType, aclExpressions, ownerAclExpressions, notOwnerAclExpressions);
+  }
+
+  /**
+   * Users with the same expressions get the same results, unless owner expressions are involved in
+   * which case the results also depend on which items the user owns.
+   */
+  private String createProfileKey(
+      String aclType,
+      Collection<Long> aclExpressions,
+      Collection<Long> ownerAclExpressions,
+      Collection<Long> notOwnerAclExpressions) {
+    StringBuilder key = new StringBuilder(aclType);
+    appendSorted(key.append("|c:"), aclExpressions); // $NON-NLS-1$
+    appendSorted(key.append("|o:"), ownerAclExpressions); // $NON-NLS-1$
+    appendSorted(key.append("|n:"), notOwnerAclExpressions); // $NON-NLS-1$
+    if (ownerSizes > 0) {
+      key.append("|u:").append(userId); // $NON-NLS-1$
+    }
+    return key.toString();
+  }
+
+  private static void appendSorted(StringBuilder key, Collection<Long> ids) {
+    if (ids != null) {
+      for (Long id : new TreeSet<Long>(ids)) {
+        key.append(id).append(',');
+      }
+    }
   }
 
+  /** The returned bitset may be shared with other searches and must not be modified. */
   public OpenBitSet getResults() {
     return results;
   }
@@ -94,59 +136,23 @@ public class SecurityFilter extends Filter {
   }
 
   @Override
-  public DocIdSet getDocIdSet(IndexReader reader) throws IOException {
+  public DocIdSet getDocIdSet(final IndexReader reader) throws IOException {
     final int max = reader.maxDoc();
-    results = new OpenBitSet(max);
 
     if (!systemUser) {
-      OpenBitSet owned = new OpenBitSet(max);
-      if (ownerSizes > 0) {
-        TermDocs odocs =
-            reader.termDocs(new Term(FreeTextQuery.FIELD_OWNER, CurrentUser.getUserID()));
-        while (odocs.next()) {
-          owned.set(odocs.doc());
-        }
-      }
-
-      Set<Term> allTerms = new TreeSet<Term>(comparator);
-      for (String element : expressions) {
-        FieldIterator iterator = new FieldIterator(reader, element, ""); // $NON-NLS-1$
-        while (iterator.hasNext()) {
-          allTerms.add(iterator.next());
-        }
-      }
-
-      for (Term term : allTerms) {
-        String type = term.text();
-        boolean grant = type.charAt(type.length() - 1) == 'G';
-        TermDocs docs = reader.termDocs(term);
-        Boolean exprType = ownerExprMap.get(term.field());
-        if (exprType == null) {
-          if (grant) {
-            while (docs.next()) {
-              results.set(docs.doc());
-            }
-          } else {
-            while (docs.next()) {
-              results.clear(docs.doc());
-            }
-          }
-        } else {
-          boolean must = exprType.booleanValue();
-          while (docs.next()) {
-            int doc = docs.doc();
-            if (owned.get(doc) == must) {
-              if (grant) {
-                results.set(doc);
-              } else {
-                results.clear(doc);
-              }
-            }
-          }
-        }
-        docs.close();
-      }
+      results =
+          cache.getResults(
+              reader,
+              profileKey,
+              new Callable<OpenBitSet>() {
+                @Override
+                public OpenBitSet call() throws IOException {
+                  return composeResults(reader, max);
+                }
+              });
+      cache.logStats();
     } else {
+      results = new OpenBitSet(max);
       TermDocs docs = reader.termDocs(null);
       while (docs.next()) {
         results.set(docs.doc());
@@ -165,6 +171,65 @@ public class SecurityFilter extends Filter {
     }
   }
 
+  private OpenBitSet composeResults(IndexReader reader, int max) throws IOException {
+    OpenBitSet granted = new OpenBitSet(max);
+    OpenBitSet owned = new OpenBitSet(max);
+    if (ownerSizes > 0) {
+      TermDocs odocs = reader.termDocs(new Term(FreeTextQuery.FIELD_OWNER, userId));
+      while (odocs.next()) {
+        owned.set(odocs.doc());
+      }
+      odocs.close();
+    }
+
+    // Apply the terms of all expressions in the same order the old TreeSet
+    // based walk did, so that lower priority terms override higher ones.
+    List<TermPostings> allTerms = new ArrayList<TermPostings>();
+    Set<String> seen = new HashSet<String>();
+    for (String element : expressions) {
+      if (seen.add(element)) {
+        allTerms.addAll(cache.getPostings(reader, element));
+      }
+    }
+    Collections.sort(
+        allTerms,
+        new Comparator<TermPostings>() {
+          @Override
+          public int compare(TermPostings o1, TermPostings o2) {
+            return comparator.compare(o1.getTerm(), o2.getTerm());
+          }
+        });
+
+    for (TermPostings postings : allTerms) {
+      boolean grant = postings.isGrant();
+      int[] docs = postings.getDocs();
+      Boolean exprType = ownerExprMap.get(postings.getTerm().field());
+      if (exprType == null) {
+        if (grant) {
+          for (int doc : docs) {
+            granted.fastSet(doc);
+          }
+        } else {
+          for (int doc : docs) {
+            granted.fastClear(doc);
+          }
+        }
+      } else {
+        boolean must = exprType.booleanValue();
+        for (int doc : docs) {
+          if (owned.fastGet(doc) == must) {
+            if (grant) {
+              granted.fastSet(doc);
+            } else {
+              granted.fastClear(doc);
+            }
+          }
+        }
+      }
+    }
+    return granted;
+  }
+
   public static class TermValueComparator implements Comparator<Term>, Serializable {
     @Override
     public int compare(Term o1, Term o2) {
@@ -0,0 +1,227 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.freetext.filters;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import com.tle.core.guice.Bind;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.inject.Singleton;
+import org.apache.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.util.OpenBitSet;
+
+/**
+ * Caches the ACL postings and composed security bitsets used by {@link SecurityFilter}. Entries are
+ * keyed on the core cache key of each (segment) reader, so an NRT reopen only has to load the
+ * segments that are new, and segments that have been merged away are dropped along with their
+ * reader. Within a segment the composed bitsets are keyed on the user's ACL profile, which means
+ * users sharing the same set of expressions share the same bitset.
+ */
+@Bind
+@Singleton
+@SuppressWarnings("nls")
+public class SecurityFilterCache {
+  private static final Logger LOGGER = Logger.getLogger(SecurityFilterCache.class);
+
+  @Inject(optional = true)
+  @Named("freetext.security.cache.profiles")
+  private int maxProfilesPerSegment = 1000;
+
+  private final Cache<Object, SegmentCache> segments =
+      CacheBuilder.newBuilder().weakKeys().build();
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong termLoads = new AtomicLong();
+
+  /**
+   * Returns the bitset of documents in the given reader which are granted by the profile. The
+   * returned bitset is shared and must not be modified.
+   *
+   * @param profileKey Uniquely identifies the expressions (and owner if any) of the profile
+   */
+  OpenBitSet getResults(
+      IndexReader reader, String profileKey, final Callable<OpenBitSet> composer) {
+    final SegmentCache segment = getSegment(reader);
+    OpenBitSet cached = segment.profiles.getIfPresent(profileKey);
+    if (cached != null) {
+      hits.incrementAndGet();
+      return cached;
+    }
+    try {
+      return segment.profiles.get(
+          profileKey,
+          new Callable<OpenBitSet>() {
+            @Override
+            public OpenBitSet call() throws Exception {
+              misses.incrementAndGet();
+              return composer.call();
+            }
+          });
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  /**
+   * Returns the grant and revoke postings of every term for the expression field, in the order
+   * they are held in the index.
+   */
+  List<TermPostings> getPostings(final IndexReader reader, final String expression)
+      throws IOException {
+    try {
+      return getSegment(reader)
+          .postings
+          .get(
+              expression,
+              new Callable<List<TermPostings>>() {
+                @Override
+                public List<TermPostings> call() throws IOException {
+                  termLoads.incrementAndGet();
+                  return loadPostings(reader, expression);
+                }
+              });
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  private List<TermPostings> loadPostings(IndexReader reader, String expression)
+      throws IOException {
+    List<TermPostings> termPostings = new ArrayList<TermPostings>();
+    FieldIterator iterator = new FieldIterator(reader, expression, ""); // $NON-NLS-1$
+    while (iterator.hasNext()) {
+      Term term = iterator.next();
+      TermDocs docs = reader.termDocs(term);
+      try {
+        int[] ids = new int[16];
+        int size = 0;
+        while (docs.next()) {
+          if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+          }
+          ids[size++] = docs.doc();
+        }
+        termPostings.add(new TermPostings(term, Arrays.copyOf(ids, size)));
+      } finally {
+        docs.close();
+      }
+    }
+    return termPostings;
+  }
+
+  private SegmentCache getSegment(IndexReader reader) {
+    try {
+      return segments.get(
+          reader.getCoreCacheKey(),
+          new Callable<SegmentCache>() {
+            @Override
+            public SegmentCache call() {
+              return new SegmentCache(maxProfilesPerSegment);
+            }
+          });
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  /** Drops everything, e.g. after the index directory has been deleted. */
+  public void invalidateAll() {
+    segments.invalidateAll();
+  }
+
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  public long getTermLoadCount() {
+    return termLoads.get();
+  }
+
+  public long getSegmentCount() {
+    return segments.size();
+  }
+
+  void logStats() {
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug(
+          "Security filter cache: segments["
+              + getSegmentCount()
+              + "] hits["
+              + getHitCount()
+              + "] misses["
+              + getMissCount()
+              + "] term loads["
+              + getTermLoadCount()
+              + "]");
+    }
+  }
+
+  private static class SegmentCache {
+    private final Cache<String, List<TermPostings>> postings = CacheBuilder.newBuilder().build();
+    private final Cache<String, OpenBitSet> profiles;
+
+    protected SegmentCache(int maxProfiles) {
+      profiles = CacheBuilder.newBuilder().maximumSize(maxProfiles).build();
+    }
+  }
+
+  /** The documents of a single ACL term, e.g. the grants of one expression at one priority. */
+  static class TermPostings {
+    private final Term term;
+    private final boolean grant;
+    private final int[] docs;
+
+    protected TermPostings(Term term, int[] docs) {
+      this.term = term;
+      this.docs = docs;
+      String type = term.text();
+      this.grant = type.charAt(type.length() - 1) == 'G';
+    }
+
+    public Term getTerm() {
+      return term;
+    }
+
+    public boolean isGrant() {
+      return grant;
+    }
+
+    public int[] getDocs() {
+      return docs;
+    }
+  }
+}
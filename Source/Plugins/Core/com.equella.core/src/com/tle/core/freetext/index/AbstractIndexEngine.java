@@ -96,9 +96,6 @@ public abstract class AbstractIndexEngine {
   private NRTManagerReopenThread nrtReopenThread;
   private Timer commiterThread;
 
-  // The index generation we should wait for
-  private long generation = -1;
-
   public void deleteDirectory() {
     try {
       commiterThread.cancel();
@@ -159,21 +156,42 @@ public abstract class AbstractIndexEngine {
         5 * 60 * 1000);
   }
 
-  public void modifyIndex(IndexBuilder builder) {
+  /**
+   * @return The generation which must be searchable for the changes to be visible, or -1 if the
+   *     builder didn't ask for one. Pass it to {@link #waitForGeneration(long)} to read your own
+   *     writes.
+   */
+  public long modifyIndex(IndexBuilder builder) {
     try {
-      long g = -1;
-      try {
-        g = builder.buildIndex(nrtManager, trackingIndexWriter);
-      } finally {
-        generation = Math.max(g, generation);
-      }
+      return builder.buildIndex(nrtManager, trackingIndexWriter);
     } catch (Exception ex) {
       throw new RuntimeException("Error while building index", ex); // $NON-NLS-1$
     }
   }
 
+  /**
+   * Blocks until a searcher which includes the given generation has been opened. Searches never
+   * wait on writers by themselves, so only callers that need to see a particular change (e.g.
+   * waiting for an item to be indexed) should call this.
+   */
+  public void waitForGeneration(long targetGeneration) {
+    if (targetGeneration < 0) {
+      return;
+    }
+    // A generation from before the index was deleted may be ahead of the new writer
+    nrtManager.waitForGeneration(
+        Math.min(targetGeneration, trackingIndexWriter.getGeneration()));
+  }
+
+  /**
+   * Blocks until a searcher which includes every change written so far has been opened. For
+   * callers that need to see a change but don't know its generation.
+   */
+  public void waitForCurrentGeneration() {
+    nrtManager.waitForGeneration(trackingIndexWriter.getGeneration());
+  }
+
   public <RV> RV search(Searcher<RV> s) {
-    nrtManager.waitForGeneration(generation);
     IndexSearcher indexSearcher = nrtManager.acquire();
     try {
       return s.search(indexSearcher);
@@ -0,0 +1,180 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.freetext.index;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import com.tle.core.freetext.filters.XPathFieldIterator;
+import com.tle.core.guice.Bind;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.inject.Singleton;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+
+/**
+ * Holds a doc to term ordinal column for each facet field of each segment, so that counting facets
+ * only has to visit the documents that matched rather than every posting of every term. Columns are
+ * built the first time a field is faceted on and are keyed on the core cache key of the segment
+ * reader, so they are reused until the segment is merged away.
+ */
+@Bind
+@Singleton
+@SuppressWarnings("nls")
+public class FacetColumnCache {
+  @Inject(optional = true)
+  @Named("freetext.facet.cache.fields")
+  private int maxFieldsPerSegment = 100;
+
+  private final Cache<Object, Cache<String, FacetColumn>> segments =
+      CacheBuilder.newBuilder().weakKeys().build();
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong loads = new AtomicLong();
+
+  /**
+   * @param reader A segment reader, i.e. one without sub readers
+   * @param field The facet field, which may contain XPath indexes (e.g. <code>/a[]/b</code>)
+   */
+  public FacetColumn getColumn(final IndexReader reader, final String field) throws IOException {
+    try {
+      final Cache<String, FacetColumn> columns =
+          segments.get(
+              reader.getCoreCacheKey(),
+              new Callable<Cache<String, FacetColumn>>() {
+                @Override
+                public Cache<String, FacetColumn> call() {
+                  return CacheBuilder.newBuilder().maximumSize(maxFieldsPerSegment).build();
+                }
+              });
+      FacetColumn column = columns.getIfPresent(field);
+      if (column != null) {
+        hits.incrementAndGet();
+        return column;
+      }
+      return columns.get(
+          field,
+          new Callable<FacetColumn>() {
+            @Override
+            public FacetColumn call() throws IOException {
+              loads.incrementAndGet();
+              return loadColumn(reader, field);
+            }
+          });
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  private FacetColumn loadColumn(IndexReader reader, String field) throws IOException {
+    final int maxDoc = reader.maxDoc();
+    final List<Term> terms = new ArrayList<Term>();
+    final List<int[]> postings = new ArrayList<int[]>();
+    final int[] docStarts = new int[maxDoc + 1];
+
+    for (Term term : new XPathFieldIterator(reader, field, "")) {
+      TermDocs docs = reader.termDocs(term);
+      try {
+        int[] ids = new int[16];
+        int size = 0;
+        while (docs.next()) {
+          if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+          }
+          int doc = docs.doc();
+          ids[size++] = doc;
+          docStarts[doc + 1]++;
+        }
+        if (size > 0) {
+          terms.add(term);
+          postings.add(Arrays.copyOf(ids, size));
+        }
+      } finally {
+        docs.close();
+      }
+    }
+
+    for (int i = 0; i < maxDoc; i++) {
+      docStarts[i + 1] += docStarts[i];
+    }
+    final int[] ordinals = new int[docStarts[maxDoc]];
+    final int[] next = Arrays.copyOf(docStarts, maxDoc);
+    for (int ord = 0; ord < postings.size(); ord++) {
+      for (int doc : postings.get(ord)) {
+        ordinals[next[doc]++] = ord;
+      }
+    }
+    return new FacetColumn(terms.toArray(new Term[terms.size()]), docStarts, ordinals);
+  }
+
+  /** Drops everything, e.g. after the index directory has been deleted. */
+  public void invalidateAll() {
+    segments.invalidateAll();
+  }
+
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  public long getLoadCount() {
+    return loads.get();
+  }
+
+  /**
+   * The terms of a facet field for a single segment. The ordinals of a document are held in
+   * <code>ordinals[docStarts[doc]]</code> up to <code>ordinals[docStarts[doc + 1]]</code>, and
+   * ordinals are in term order.
+   */
+  public static class FacetColumn {
+    private final Term[] terms;
+    private final int[] docStarts;
+    private final int[] ordinals;
+
+    protected FacetColumn(Term[] terms, int[] docStarts, int[] ordinals) {
+      this.terms = terms;
+      this.docStarts = docStarts;
+      this.ordinals = ordinals;
+    }
+
+    public int getTermCount() {
+      return terms.length;
+    }
+
+    public Term getTerm(int ordinal) {
+      return terms[ordinal];
+    }
+
+    /** Adds one to the count of every term held by the document. */
+    public void count(int doc, int[] counts) {
+      for (int i = docStarts[doc], end = docStarts[doc + 1]; i < end; i++) {
+        counts[ordinals[i]]++;
+      }
+    }
+  }
+}
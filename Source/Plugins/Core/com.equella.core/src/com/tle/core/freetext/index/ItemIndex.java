@@ -27,15 +27,18 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.Ordering;
 import com.tle.annotation.NonNullByDefault;
 import com.tle.annotation.Nullable;
 import com.tle.beans.item.ItemId;
 import com.tle.beans.item.ItemIdKey;
 import com.tle.common.Check;
 import com.tle.common.Pair;
+import com.tle.common.searching.CursorSearchResults;
 import com.tle.common.searching.DateFilter.Format;
 import com.tle.common.searching.Field;
 import com.tle.common.searching.Search;
+import com.tle.common.searching.SearchCursor;
 import com.tle.common.searching.SearchResults;
 import com.tle.common.searching.SimpleSearchResults;
 import com.tle.common.searching.SortField.Type;
@@ -47,8 +50,11 @@ import com.tle.core.freetext.filters.DateFilter;
 import com.tle.core.freetext.filters.InstitutionFilter;
 import com.tle.core.freetext.filters.MustFilter;
 import com.tle.core.freetext.filters.MustNotFilter;
+import com.tle.core.freetext.filters.SearchAfterFilter;
 import com.tle.core.freetext.filters.SecurityFilter;
+import com.tle.core.freetext.filters.SecurityFilterCache;
 import com.tle.core.freetext.filters.XPathFieldIterator;
+import com.tle.core.freetext.index.FacetColumnCache.FacetColumn;
 import com.tle.core.freetext.queries.FreeTextAutocompleteQuery;
 import com.tle.core.freetext.queries.FreeTextBooleanQuery;
 import com.tle.core.freetext.queries.FreeTextDateQuery;
@@ -76,6 +82,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
@@ -100,8 +111,10 @@ import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.ChainedFilter;
 import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.FieldCache;
 import org.apache.lucene.search.FieldCacheRangeFilter;
 import org.apache.lucene.search.FieldComparatorSource;
+import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.Filter;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MultiPhraseQuery;
@@ -121,6 +134,7 @@ import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TotalHitCountCollector;
 import org.apache.lucene.search.WildcardQuery;
 import org.apache.lucene.util.OpenBitSet;
+import org.apache.lucene.util.ReaderUtil;
 import org.apache.lucene.util.Version;
 
 @SuppressWarnings("nls")
@@ -130,6 +144,20 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
   private static final Pattern OR = Pattern.compile("(\\W)or(\\W)"); // $NON-NLS-1$
   private static final Pattern NOT = Pattern.compile("(\\W)not(\\W)"); // $NON-NLS-1$
 
+  // Higher counts first, then term order
+  private static final Ordering<Map.Entry<Term, Integer>> BY_COUNT =
+      new Ordering<Map.Entry<Term, Integer>>() {
+        @Override
+        public int compare(Map.Entry<Term, Integer> left, Map.Entry<Term, Integer> right) {
+          int diff = left.getValue().compareTo(right.getValue());
+          return diff != 0 ? diff : right.getKey().compareTo(left.getKey());
+        }
+      };
+
+  private static final int[] NO_DOCS = new int[0];
+
+  private static final ForkJoinPool MATRIX_POOL = new ForkJoinPool();
+
   private static final Map<String, String> PRIV_MAP =
       ImmutableMap.of(
           "MODERATE_ITEM",
@@ -144,6 +172,8 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
           "ACLL-");
 
   @Inject private FreetextIndex freetextIndex;
+  @Inject private SecurityFilterCache securityFilterCache;
+  @Inject private FacetColumnCache facetColumnCache;
 
   private float titleBoost;
   private float descriptionBoost;
@@ -279,7 +309,8 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
             SecurityFilter deleteablesFilter = null;
             String collectPriv = searchreq.getPrivilegeToCollect();
             if (collectPriv != null) {
-              deleteablesFilter = new SecurityFilter(getPrefixForPrivilege(collectPriv));
+              deleteablesFilter =
+                  new SecurityFilter(getPrefixForPrivilege(collectPriv), securityFilterCache);
               deleteablesFilter.setOnlyCollectResults(true);
               filters.add(deleteablesFilter);
             }
@@ -370,6 +401,77 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
         });
   }
 
+  /**
+   * Returns the page of results which sort after the cursor, rather than skipping over an offset,
+   * so that deep pages cost no more than the first. The search must be sorted on a single string
+   * field; the item ID is added as a tie breaker so every result has a distinct position.
+   *
+   * @param after null for the first page
+   * @param count 1 or greater.
+   */
+  public CursorSearchResults<T> searchAfter(
+      final Search searchreq,
+      @Nullable final SearchCursor after,
+      final int count,
+      final boolean searchAttachment) {
+    final com.tle.common.searching.SortField[] sortfields = searchreq.getSortFields();
+    if (sortfields == null
+        || sortfields.length != 1
+        || sortfields[0].getType() != Type.STRING
+        || count < 1) {
+      throw new IllegalArgumentException(
+          "Cursor searches need a single string sort field and a page size");
+    }
+    return search(
+        new Searcher<CursorSearchResults<T>>() {
+          @Override
+          public CursorSearchResults<T> search(IndexSearcher searcher) throws IOException {
+            long t1 = System.currentTimeMillis();
+
+            String sortField = sortfields[0].getField();
+            boolean reverse = sortfields[0].isReverse() ^ searchreq.isSortReversed();
+            Sort sorter =
+                new Sort(
+                    new SortField(sortField, SortField.STRING, reverse),
+                    new SortField(FreeTextQuery.FIELD_ID, SortField.LONG, reverse));
+
+            Collection<Filter> filters = getFilters(searchreq);
+            if (after != null) {
+              filters.add(new SearchAfterFilter(sortField, reverse, after));
+            }
+            Filter filter =
+                new ChainedFilter(filters.toArray(new Filter[filters.size()]), ChainedFilter.AND);
+
+            Query query = getQuery(searchreq, searcher.getIndexReader(), searchAttachment);
+            TopDocs hits = searcher.search(query, filter, count, sorter);
+            SearchResults<T> page = getResultsFromTopDocs(searcher, hits, 0, null, searchreq);
+
+            SearchCursor next = null;
+            ScoreDoc[] docs = hits.scoreDocs;
+            if (docs.length > 0 && hits.totalHits > docs.length) {
+              Object[] last = ((FieldDoc) docs[docs.length - 1]).fields;
+              next = new SearchCursor((String) last[0], (Long) last[1]);
+            }
+            long t2 = System.currentTimeMillis();
+
+            LOGGER.info(
+                "Query["
+                    + query
+                    + "] After["
+                    + after
+                    + "] Hits["
+                    + hits.totalHits
+                    + "] Returning["
+                    + page.getCount()
+                    + "] Time Elapsed["
+                    + (t2 - t1)
+                    + "ms]");
+
+            return new CursorSearchResults<T>(page.getResults(), hits.totalHits, next);
+          }
+        });
+  }
+
   private Query addUniqueIdClauseToQuery(
       Query query, SearchResults<T> itemResults, IndexReader reader) {
     List<T> results = itemResults.getResults();
@@ -423,7 +525,8 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
             SecurityFilter deleteablesFilter = null;
             String collectPriv = searchreq.getPrivilegeToCollect();
             if (collectPriv != null) {
-              deleteablesFilter = new SecurityFilter(getPrefixForPrivilege(collectPriv));
+              deleteablesFilter =
+                  new SecurityFilter(getPrefixForPrivilege(collectPriv), securityFilterCache);
               deleteablesFilter.setOnlyCollectResults(true);
               filters.add(deleteablesFilter);
             }
@@ -591,6 +694,21 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
    */
   public Multimap<String, Pair<String, Integer>> facetCount(
       @Nullable final Search searchreq, final Collection<String> fields) {
+    return facetCount(searchreq, fields, -1, false);
+  }
+
+  /**
+   * Counts the terms of each field using the cached facet columns of each segment, so only the
+   * matching documents are visited.
+   *
+   * @param maxTerms Only return this many of the most frequent terms per field, in descending
+   *     order of count. Less than one returns all terms in term order.
+   */
+  public Multimap<String, Pair<String, Integer>> facetCount(
+      @Nullable final Search searchreq,
+      final Collection<String> fields,
+      final int maxTerms,
+      final boolean searchAttachments) {
     return search(
         new Searcher<Multimap<String, Pair<String, Integer>>>() {
           @Override
@@ -598,24 +716,44 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
               throws IOException {
             final IndexReader reader = searcher.getIndexReader();
             final OpenBitSet filteredBits =
-                searchRequestToBitSet(searchreq, searcher, reader, false);
+                searchRequestToBitSet(searchreq, searcher, reader, searchAttachments);
+
+            final List<IndexReader> segments = new ArrayList<IndexReader>();
+            ReaderUtil.gatherSubReaders(segments, reader);
 
             final Multimap<String, Pair<String, Integer>> rv = ArrayListMultimap.create();
             for (String field : fields) {
-              for (Term term : new XPathFieldIterator(reader, field, "")) {
-                int count = 0;
-
-                TermDocs docs = reader.termDocs(term);
-                while (docs.next()) {
-                  if (filteredBits.get(docs.doc())) {
-                    count++;
+              final Map<Term, Integer> termCounts = new TreeMap<Term, Integer>();
+              int docBase = 0;
+              for (IndexReader segment : segments) {
+                final int docEnd = docBase + segment.maxDoc();
+                final FacetColumn column = facetColumnCache.getColumn(segment, field);
+                if (column.getTermCount() > 0) {
+                  final int[] counts = new int[column.getTermCount()];
+                  for (int doc = filteredBits.nextSetBit(docBase);
+                      doc >= 0 && doc < docEnd;
+                      doc = filteredBits.nextSetBit(doc + 1)) {
+                    column.count(doc - docBase, counts);
+                  }
+                  for (int ord = 0; ord < counts.length; ord++) {
+                    if (counts[ord] > 0) {
+                      Term term = column.getTerm(ord);
+                      Integer count = termCounts.get(term);
+                      termCounts.put(term, count == null ? counts[ord] : count + counts[ord]);
+                    }
                   }
                 }
-                docs.close();
+                docBase = docEnd;
+              }
 
-                if (count > 0) {
-                  rv.put(field, new Pair<String, Integer>(term.text(), count));
-                }
+              Collection<Map.Entry<Term, Integer>> entries = termCounts.entrySet();
+              if (maxTerms > 0 && entries.size() > maxTerms) {
+                entries = BY_COUNT.greatestOf(entries, maxTerms);
+              } else if (maxTerms > 0) {
+                entries = BY_COUNT.reverse().sortedCopy(entries);
+              }
+              for (Map.Entry<Term, Integer> entry : entries) {
+                rv.put(field, new Pair<String, Integer>(entry.getKey().text(), entry.getValue()));
               }
             }
             return rv;
@@ -628,33 +766,45 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
       final List<String> fields,
       final boolean countOnly,
       final boolean searchAttachments) {
-    return search(
-        new Searcher<MatrixResults>() {
+    final MatrixResults results = new MatrixResults();
+    results.setFields(fields);
+    matrixSearch(searchreq, fields, countOnly, searchAttachments, results::addEntry);
+    return results;
+  }
+
+  /**
+   * Passes each entry of the matrix to the consumer, in the same order as {@link
+   * #matrixSearch(Search, List, boolean, boolean)} would return them. Each term only holds the
+   * sorted ids of the documents that matched the search, and the branches of the first field are
+   * worked out in parallel, with each branch handed to the consumer as soon as it and the branches
+   * before it are done.
+   */
+  public void matrixSearch(
+      @Nullable final Search searchreq,
+      final List<String> fields,
+      final boolean countOnly,
+      final boolean searchAttachments,
+      final Consumer<MatrixResults.MatrixEntry> consumer) {
+    search(
+        new Searcher<Void>() {
           @Override
-          public MatrixResults search(IndexSearcher searcher) throws IOException {
+          public Void search(IndexSearcher searcher) throws IOException {
             IndexReader reader = searcher.getIndexReader();
 
             OpenBitSet filteredBits =
                 searchRequestToBitSet(searchreq, searcher, reader, searchAttachments);
             int maxDoc = reader.maxDoc();
 
-            Map<String, Map<String, List<TermBitSet>>> xpathMap =
-                new HashMap<String, Map<String, List<TermBitSet>>>();
+            Map<String, Map<String, List<TermDocList>>> xpathMap =
+                new HashMap<String, Map<String, List<TermDocList>>>();
 
             List<OpenBitSet> perFieldBitSets = new ArrayList<OpenBitSet>();
-            OpenBitSet allDocs = new OpenBitSet();
+            OpenBitSet allDocs = new OpenBitSet(maxDoc);
             for (String field : fields) {
               boolean hasXpaths = field.indexOf('[') != -1;
               OpenBitSet perFieldBitSet = new OpenBitSet(maxDoc);
               for (Term term : new XPathFieldIterator(reader, field, "")) {
-                OpenBitSet set = new OpenBitSet(maxDoc);
-                TermDocs docs = reader.termDocs(term);
-                while (docs.next()) {
-                  set.set(docs.doc());
-                }
-                docs.close();
-                perFieldBitSet.or(set);
-                allDocs.or(set);
+                int[] docs = getMatchingDocs(reader, term, filteredBits, perFieldBitSet);
                 String xpathKey = "";
                 if (hasXpaths) {
                   String fieldName = term.field();
@@ -663,41 +813,64 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
                     xpathKey = fieldName.substring(0, ind + 1);
                   }
                 }
-                addFieldBitSet(term, set, xpathKey, xpathMap, field);
+                addFieldDocs(new TermDocList(term, docs), xpathKey, xpathMap, field);
               }
-              // Simulate blank Term's for each field, that has at least
-              // one
-              // matching field
-              addFieldBitSet(new Term(field, ""), perFieldBitSet, "", xpathMap, field);
+              allDocs.or(perFieldBitSet);
               perFieldBitSets.add(perFieldBitSet);
             }
-            for (OpenBitSet set : perFieldBitSets) {
-              set.xor(allDocs);
+            // Simulate blank Term's for each field, matching the documents
+            // which have a value for one of the other fields but not this one
+            for (int i = 0; i < fields.size(); i++) {
+              String field = fields.get(i);
+              OpenBitSet blankBits = (OpenBitSet) allDocs.clone();
+              blankBits.andNot(perFieldBitSets.get(i));
+              addFieldDocs(
+                  new TermDocList(new Term(field, ""), toDocs(blankBits)), "", xpathMap, field);
             }
 
-            MatrixResults results = new MatrixResults();
-            results.setFields(fields);
-
-            Map<String, List<TermBitSet>> blankPaths = xpathMap.get("");
-            for (Map<String, List<TermBitSet>> map : xpathMap.values()) {
-              List<List<TermBitSet>> fieldsToRecurse = new ArrayList<List<TermBitSet>>();
+            final ItemKeyColumns keyColumns = countOnly ? null : new ItemKeyColumns(reader);
+            Map<String, List<TermDocList>> blankPaths = xpathMap.get("");
+            for (Map<String, List<TermDocList>> map : xpathMap.values()) {
+              final List<List<TermDocList>> fieldsToRecurse = new ArrayList<List<TermDocList>>();
               for (String field : fields) {
-                List<TermBitSet> list = map.get(field);
+                List<TermDocList> list = map.get(field);
                 if (list == null) {
                   list = blankPaths.get(field);
                 }
                 fieldsToRecurse.add(list);
               }
-              recurseTerms(
-                  fieldsToRecurse,
-                  0,
-                  new String[fields.size()],
-                  filteredBits,
-                  results,
-                  reader,
-                  countOnly);
+
+              List<ForkJoinTask<List<MatrixResults.MatrixEntry>>> branches =
+                  new ArrayList<ForkJoinTask<List<MatrixResults.MatrixEntry>>>();
+              for (final TermDocList branch : fieldsToRecurse.get(0)) {
+                if (branch.docs.length > 0) {
+                  branches.add(
+                      MATRIX_POOL.submit(
+                          new Callable<List<MatrixResults.MatrixEntry>>() {
+                            @Override
+                            public List<MatrixResults.MatrixEntry> call() {
+                              List<MatrixResults.MatrixEntry> entries =
+                                  new ArrayList<MatrixResults.MatrixEntry>();
+                              collectTerm(
+                                  fieldsToRecurse,
+                                  0,
+                                  new String[fields.size()],
+                                  branch.term,
+                                  branch.docs,
+                                  entries,
+                                  keyColumns);
+                              return entries;
+                            }
+                          }));
+                }
+              }
+              for (ForkJoinTask<List<MatrixResults.MatrixEntry>> branch : branches) {
+                for (MatrixResults.MatrixEntry entry : branch.join()) {
+                  consumer.accept(entry);
+                }
+              }
             }
-            return results;
+            return null;
           }
         });
   }
@@ -764,23 +937,80 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
         });
   }
 
-  private void addFieldBitSet(
-      Term term,
-      OpenBitSet set,
+  /**
+   * @return The sorted ids of the documents with the term that are in the filter. They are also
+   *     set in the fieldBits.
+   */
+  private int[] getMatchingDocs(
+      IndexReader reader, Term term, OpenBitSet filteredBits, OpenBitSet fieldBits)
+      throws IOException {
+    int[] ids = new int[16];
+    int size = 0;
+    TermDocs docs = reader.termDocs(term);
+    try {
+      while (docs.next()) {
+        int doc = docs.doc();
+        if (filteredBits.get(doc)) {
+          if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+          }
+          ids[size++] = doc;
+          fieldBits.set(doc);
+        }
+      }
+    } finally {
+      docs.close();
+    }
+    return size == 0 ? NO_DOCS : Arrays.copyOf(ids, size);
+  }
+
+  private static int[] toDocs(OpenBitSet bits) {
+    int[] ids = new int[(int) bits.cardinality()];
+    int size = 0;
+    for (int doc = bits.nextSetBit(0); doc >= 0; doc = bits.nextSetBit(doc + 1)) {
+      ids[size++] = doc;
+    }
+    return ids;
+  }
+
+  private static int[] intersect(int[] left, int[] right) {
+    int[] ids = new int[Math.min(left.length, right.length)];
+    int size = 0;
+    int l = 0;
+    int r = 0;
+    while (l < left.length && r < right.length) {
+      if (left[l] < right[r]) {
+        l++;
+      } else if (left[l] > right[r]) {
+        r++;
+      } else {
+        ids[size++] = left[l];
+        l++;
+        r++;
+      }
+    }
+    return size == ids.length ? ids : Arrays.copyOf(ids, size);
+  }
+
+  private void addFieldDocs(
+      TermDocList termDocs,
       String xpathKey,
-      Map<String, Map<String, List<TermBitSet>>> xpathMap,
+      Map<String, Map<String, List<TermDocList>>> xpathMap,
       String field) {
-    Map<String, List<TermBitSet>> map = xpathMap.get(xpathKey);
+    Map<String, List<TermDocList>> map = xpathMap.get(xpathKey);
     if (map == null) {
-      map = new HashMap<String, List<TermBitSet>>();
+      map = new HashMap<String, List<TermDocList>>();
       xpathMap.put(xpathKey, map);
     }
-    List<TermBitSet> list = map.get(field);
+    List<TermDocList> list = map.get(field);
     if (list == null) {
-      list = new ArrayList<TermBitSet>();
+      list = new ArrayList<TermDocList>();
       map.put(field, list);
     }
-    list.add(new TermBitSet(term, set));
+    // Terms without any matches still claim the field for the xpath
+    if (termDocs.docs.length > 0) {
+      list.add(termDocs);
+    }
   }
 
   private final class ItemIdFieldSelector implements FieldSelector {
@@ -824,72 +1054,88 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
     }
   }
 
-  public static class TermBitSet {
-    Term term;
-    OpenBitSet bitSet;
+  /** The sorted ids of the documents which have the term and matched the search. */
+  private static class TermDocList {
+    final Term term;
+    final int[] docs;
 
-    public TermBitSet(Term term, OpenBitSet bitSet) {
+    protected TermDocList(Term term, int[] docs) {
       this.term = term;
-      this.bitSet = bitSet;
+      this.docs = docs;
     }
   }
 
-  private void recurseTerms(
-      List<List<TermBitSet>> bitSets,
+  /**
+   * Resolves top level doc ids to item keys from the field cache of each segment, rather than
+   * loading the stored document.
+   */
+  private static class ItemKeyColumns {
+    private final int[] docStarts;
+    private final long[][] keys;
+    private final String[][] uniques;
+
+    protected ItemKeyColumns(IndexReader reader) throws IOException {
+      List<IndexReader> segments = new ArrayList<IndexReader>();
+      ReaderUtil.gatherSubReaders(segments, reader);
+      docStarts = new int[segments.size()];
+      keys = new long[segments.size()][];
+      uniques = new String[segments.size()][];
+      int docBase = 0;
+      for (int i = 0; i < segments.size(); i++) {
+        IndexReader segment = segments.get(i);
+        docStarts[i] = docBase;
+        keys[i] = FieldCache.DEFAULT.getLongs(segment, FreeTextQuery.FIELD_ID);
+        uniques[i] = FieldCache.DEFAULT.getStrings(segment, FreeTextQuery.FIELD_UNIQUE);
+        docBase += segment.maxDoc();
+      }
+    }
+
+    public ItemIdKey getKey(int doc) {
+      int segment = ReaderUtil.subIndex(doc, docStarts);
+      int segmentDoc = doc - docStarts[segment];
+      return new ItemIdKey(keys[segment][segmentDoc], new ItemId(uniques[segment][segmentDoc]));
+    }
+  }
+
+  private void collectTerm(
+      List<List<TermDocList>> termDocs,
       int index,
       String[] curValues,
-      OpenBitSet curBits,
-      MatrixResults results,
-      IndexReader reader,
-      boolean countOnly) {
-    List<TermBitSet> termBitSetList = bitSets.get(index);
-    boolean last = index == curValues.length - 1;
-    for (TermBitSet termBitSet : termBitSetList) {
-      OpenBitSet termBits = termBitSet.bitSet;
-      Term term = termBitSet.term;
-      // if we don't intersect there's no point in recursing further in
-      if (curBits.intersects(termBits)) {
-        // Collect current term's value into the value array
-        curValues[index] = term.text();
-        OpenBitSet docBits = (OpenBitSet) curBits.clone();
-        docBits.and(termBits);
-        if (last) {
-          int count;
-          List<ItemIdKey> ids = null;
-          ArrayList<String> vals = new ArrayList<String>(Arrays.asList(curValues));
-          if (!countOnly) {
-            ids = getIdsForBitset(docBits, reader);
-            count = ids.size();
-          } else {
-            count = (int) docBits.cardinality();
-          }
-          results.addEntry(new MatrixResults.MatrixEntry(vals, ids, count));
-        } else {
-          recurseTerms(bitSets, index + 1, curValues, docBits, results, reader, countOnly);
+      Term term,
+      int[] docs,
+      List<MatrixResults.MatrixEntry> entries,
+      @Nullable ItemKeyColumns keyColumns) {
+    // Collect current term's value into the value array
+    curValues[index] = term.text();
+    if (index == curValues.length - 1) {
+      List<ItemIdKey> ids = null;
+      ArrayList<String> vals = new ArrayList<String>(Arrays.asList(curValues));
+      if (keyColumns != null) {
+        ids = new ArrayList<ItemIdKey>(docs.length);
+        for (int doc : docs) {
+          ids.add(keyColumns.getKey(doc));
         }
       }
+      entries.add(new MatrixResults.MatrixEntry(vals, ids, docs.length));
+    } else {
+      recurseTerms(termDocs, index + 1, curValues, docs, entries, keyColumns);
     }
   }
 
-  private List<ItemIdKey> getIdsForBitset(OpenBitSet docBits, IndexReader reader) {
-    int docid = 0;
-    List<ItemIdKey> keys = new ArrayList<ItemIdKey>();
-    while (true) {
-      docid = docBits.nextSetBit(docid);
-      if (docid == -1) {
-        break;
-      }
-      Document doc;
-      try {
-        doc = reader.document(docid);
-      } catch (IOException e) {
-        throw new RuntimeException(e);
+  private void recurseTerms(
+      List<List<TermDocList>> termDocs,
+      int index,
+      String[] curValues,
+      int[] curDocs,
+      List<MatrixResults.MatrixEntry> entries,
+      @Nullable ItemKeyColumns keyColumns) {
+    for (TermDocList termDocList : termDocs.get(index)) {
+      int[] docs = intersect(curDocs, termDocList.docs);
+      // if we don't intersect there's no point in recursing further in
+      if (docs.length > 0) {
+        collectTerm(termDocs, index, curValues, termDocList.term, docs, entries, keyColumns);
       }
-      ItemIdKey key = getKeyForDocument(doc);
-      keys.add(key);
-      docid++;
     }
-    return keys;
   }
 
   /** Takes a search request and prepares a Lucene Query object. */
@@ -1015,7 +1261,7 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
       privPrefix = getPrefixForPrivilege(privilege);
     }
     if (privPrefix != null) {
-      filters.add(new SecurityFilter(privPrefix));
+      filters.add(new SecurityFilter(privPrefix, securityFilterCache));
     }
 
     List<List<Field>> must = request.getMust();
@@ -1375,8 +1621,9 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
     return terms.toArray(new Term[terms.size()]);
   }
 
-  public void indexBatch(final Collection<IndexedItem> batch) {
-    modifyIndex(
+  /** @return The generation to wait for before the batch is searchable, or -1. */
+  public long indexBatch(final Collection<IndexedItem> batch) {
+    return modifyIndex(
         new IndexBuilder() {
           @Override
           public long buildIndex(NRTManager nrtManager, TrackingIndexWriter writer)
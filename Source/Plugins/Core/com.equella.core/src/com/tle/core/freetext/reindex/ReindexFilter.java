@@ -20,6 +20,7 @@ package com.tle.core.freetext.reindex;
 
 import com.tle.core.item.service.ItemService;
 import java.io.Serializable;
+import java.util.Arrays;
 
 /** @author jmaginnis */
 public abstract class ReindexFilter implements Serializable {
@@ -27,6 +28,15 @@ public abstract class ReindexFilter implements Serializable {
     itemService.updateIndexTimes(getWhereClause(), getNames(), getValues());
   }
 
+  /** Filters with equal keys select the same items. */
+  public Object getKey() {
+    return Arrays.asList(
+        getClass().getName(),
+        getWhereClause(),
+        Arrays.asList(getNames()),
+        Arrays.deepToString(getValues()));
+  }
+
   protected abstract String getWhereClause();
 
   protected abstract String[] getNames();
@@ -18,13 +18,16 @@
 
 package com.tle.core.freetext.service;
 
+import com.tle.annotation.Nullable;
 import com.tle.beans.entity.itemdef.ItemDefinition;
 import com.tle.beans.item.ItemIdKey;
 import com.tle.common.searching.Search;
+import com.tle.common.searching.SearchCursor;
 import com.tle.common.searching.SearchResults;
 import com.tle.core.remoting.MatrixResults;
 import com.tle.core.services.item.FreetextResult;
 import com.tle.core.services.item.FreetextSearchResults;
+import com.tle.core.services.item.StdFreetextResults;
 import it.uniroma3.mat.extendedset.wrappers.LongSet;
 import java.util.Collection;
 import java.util.List;
@@ -55,6 +58,22 @@ public interface FreeTextService {
   <T extends FreetextResult> FreetextSearchResults<T> search(
       Search searchReq, int start, int count, boolean searchAttachments);
 
+  /**
+   * Returns the page of results which sort after the cursor, for paging deep into large result
+   * sets. The search must be sorted on a single string field.
+   *
+   * @param after The cursor from the previous page, or null for the first page
+   * @param count The maximum number of results requested
+   * @return The results, with the cursor for the following page (if any) from {@link
+   *     StdFreetextResults#getNextCursor()}
+   */
+  <T extends FreetextResult> StdFreetextResults<T> searchAfter(
+      Search searchReq, @Nullable SearchCursor after, int count);
+
+  /** As {@link #searchAfter(Search, SearchCursor, int)}, choosing whether to search attachments. */
+  <T extends FreetextResult> StdFreetextResults<T> searchAfter(
+      Search searchReq, @Nullable SearchCursor after, int count, boolean searchAttachments);
+
   SearchResults<ItemIdKey> searchIds(Search searchreq, int nStart, int nCount);
 
   LongSet searchIdsBitSet(Search searchreq);
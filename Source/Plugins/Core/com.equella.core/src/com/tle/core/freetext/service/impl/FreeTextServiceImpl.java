@@ -24,6 +24,7 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Multimap;
+import com.tle.annotation.Nullable;
 import com.tle.beans.Institution;
 import com.tle.beans.entity.itemdef.ItemDefinition;
 import com.tle.beans.item.ItemIdKey;
@@ -34,6 +35,7 @@ import com.tle.common.search.ItemIdKeySearchResults;
 import com.tle.common.search.LiveItemSearch;
 import com.tle.common.search.whereparser.WhereParser;
 import com.tle.common.searching.Search;
+import com.tle.common.searching.SearchCursor;
 import com.tle.common.searching.SearchResults;
 import com.tle.core.freetext.event.ItemReindexEvent;
 import com.tle.core.freetext.event.listener.ItemReindexListener;
@@ -68,6 +70,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.Timer;
@@ -174,11 +177,15 @@ public class FreeTextServiceImpl
   public void waitUntilIndexed(ItemIdKey itemIdKey) {
     IndexedItem inditem = getBackgroundIndexer().getIndexedItem(itemIdKey);
     if (inditem == null) {
+      // Not tracked, usually because it has just finished indexing. We don't know which
+      // generations it was written in, so wait for everything written so far.
+      indexer.waitForCurrentGenerations();
       return;
     }
     while (!inditem.isIndexed() && !inditem.isErrored()) {
       inditem = getBackgroundIndexer().getIndexedItem(itemIdKey);
       if (inditem == null) {
+        indexer.waitForCurrentGenerations();
         return;
       }
       synchronized (inditem) {
@@ -186,7 +193,7 @@ public class FreeTextServiceImpl
           continue;
         }
         if (inditem.isIndexed() || inditem.isErrored()) {
-          return;
+          break;
         }
         try {
           inditem.wait();
@@ -202,6 +209,14 @@ public class FreeTextServiceImpl
       }
       throw new RuntimeException(error);
     }
+    // Searches don't wait for writers, so make sure the caller can read
+    // what was just indexed
+    Map<String, Long> generations = inditem.getSearchGenerations();
+    if (generations.isEmpty()) {
+      indexer.waitForCurrentGenerations();
+    } else {
+      indexer.waitForGenerations(generations);
+    }
   }
 
   @Override
@@ -270,6 +285,20 @@ public class FreeTextServiceImpl
     return new StdFreetextResults<T>(itemService, results, searchReq);
   }
 
+  @Override
+  public <T extends FreetextResult> StdFreetextResults<T> searchAfter(
+      Search searchReq, @Nullable SearchCursor after, int count) {
+    SearchResults<T> results = indexer.searchAfter(searchReq, after, count);
+    return new StdFreetextResults<T>(itemService, results, searchReq);
+  }
+
+  @Override
+  public <T extends FreetextResult> StdFreetextResults<T> searchAfter(
+      Search searchReq, @Nullable SearchCursor after, int count, boolean searchAttachments) {
+    SearchResults<T> results = indexer.searchAfter(searchReq, after, count, searchAttachments);
+    return new StdFreetextResults<T>(itemService, results, searchReq);
+  }
+
   @Override
   public SearchResults<ItemIdKey> searchIds(Search searchreq, int nStart, int nCount) {
     SearchResults<FreetextResult> results = indexer.search(searchreq, nStart, nCount);
@@ -224,7 +224,7 @@ public class ImageMagickServiceImpl implements ImageMagickService, ServiceCheckR
 
   @Override
   public Dimension getImageDimensions(FileHandle handle, String filename) throws IOException {
-    return getImageDimensions(fileSystem.getExternalFile(handle, filename));
+    return getImageDimensions(fileSystem.getExternalFileForReading(handle, filename));
   }
 
   @Override
@@ -22,6 +22,7 @@ import com.dytech.edge.common.Constants;
 import com.tle.common.beans.progress.MessageCallback;
 import com.tle.common.i18n.CurrentLocale;
 import java.io.Serializable;
+import java.util.Locale;
 
 public class DefaultMessageCallback implements MessageCallback, Serializable {
   private static final long serialVersionUID = 1L;
@@ -29,7 +30,8 @@ public class DefaultMessageCallback implements MessageCallback, Serializable {
   private int current;
   private long total;
   private String key;
-  private Object[] values = {0, Constants.BLANK, Constants.BLANK};
+  private double rate;
+  private Object[] values = {0, Constants.BLANK, Constants.BLANK, Constants.BLANK};
 
   public DefaultMessageCallback(String key) {
     this.key = key;
@@ -56,6 +58,16 @@ public class DefaultMessageCallback implements MessageCallback, Serializable {
     this.key = key;
   }
 
+  public double getRate() {
+    return rate;
+  }
+
+  /** @param rate Items completed per second, available to messages as {3} */
+  public void setRate(double rate) {
+    this.rate = rate;
+    values[3] = String.format(Locale.ROOT, "%.1f", rate);
+  }
+
   public long getTotal() {
     return total;
   }
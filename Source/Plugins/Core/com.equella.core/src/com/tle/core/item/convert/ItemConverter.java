@@ -22,7 +22,9 @@ import com.dytech.common.io.FileExtensionFilter;
 import com.dytech.common.io.UnicodeReader;
 import com.dytech.edge.common.Constants;
 import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.CharStreams;
 import com.thoughtworks.xstream.XStream;
@@ -37,6 +39,7 @@ import com.tle.beans.entity.itemdef.ItemDefinition;
 import com.tle.beans.item.ForeignItemKey;
 import com.tle.beans.item.Item;
 import com.tle.beans.item.ItemIdKey;
+import com.tle.beans.item.ItemSelect;
 import com.tle.beans.item.ItemXml;
 import com.tle.beans.item.ModerationStatus;
 import com.tle.common.filesystem.FileEntry;
@@ -71,6 +74,7 @@ import com.tle.core.xml.service.impl.XmlServiceImpl;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.net.URL;
@@ -82,6 +86,7 @@ import java.util.Map;
 import java.util.Random;
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 import org.ccil.cowan.tagsoup.AttributesImpl;
 import org.ccil.cowan.tagsoup.Parser;
@@ -95,12 +100,37 @@ public class ItemConverter extends AbstractConverter<ItemConverter.ItemConverter
   private static final String ITEM_XML_FILE = "_ITEM/item.xml";
   private static final String ITEMS_EXPORT_IMPORT_FOLDER = "items";
   private static final String SYSTEM_ITEM_FOLDER = "_ITEM";
+  private static final String EXPORT_CHECKPOINT_FILE = "export-checkpoint.txt";
 
   @Inject private ItemDao itemDao;
   @Inject private ItemLockingDao itemLockingDao;
   @Inject private EntityRegistry registry;
   @Inject private ItemFileService itemFileService;
 
+  // FIXME see EQ-2532. Imports used to be forced onto a single thread, so they stay that way
+  // unless more threads are configured.
+  @com.google.inject.Inject(optional = true)
+  @Named("institution.import.itemThreads")
+  private int importThreads = 1;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("institution.import.itemBatchSize")
+  private int importBatchSize = 50;
+
+  // FIXME see EQ-2532. Exports used to be forced onto a single thread too, so they also stay that
+  // way unless more threads are configured.
+  @com.google.inject.Inject(optional = true)
+  @Named("institution.export.itemThreads")
+  private int exportThreads = 1;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("institution.export.itemBatchSize")
+  private int exportBatchSize = 50;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("institution.export.resume")
+  private boolean exportResume = false;
+
   private final Random random = new Random();
 
   private PluginTracker<ItemExtrasConverter> itemExtrasTracker;
@@ -187,87 +217,27 @@ public class ItemConverter extends AbstractConverter<ItemConverter.ItemConverter
 
     final Map<Object, Object> sharedState = Collections.synchronizedMap(Maps.newHashMap());
     final Collection<PostReadMigrator<ItemConverterInfo>> migrations = getMigrations(params);
-    TransactionThreadPool threadPool = newThreadPool(1);
-    for (final String entry : entries) {
+    final long start = System.currentTimeMillis();
+
+    // Each batch is read and saved in a single transaction, and only flushed at the end
+    TransactionThreadPool threadPool = newThreadPool(importThreads);
+    for (final List<String> batch : Lists.partition(entries, Math.max(1, importBatchSize))) {
       threadPool.doInTransaction(
           new Runnable() {
             @Override
             public void run() {
-              try {
-                final String dataFolderPath = entry.replace(".xml", Constants.BLANK);
-
-                Item item = new Item();
-                DataHolder dh = getXStream().newDataHolder();
-                dh.put(WorkflowNodeSupplier.class, new ItemWorkflowNodeSupplier(item));
-                xmlHelper.readXmlFile(allImportItemsFolder, entry, getXStream(), item, dh);
-                Long origId = item.getId();
-
-                // Fix up some weird cases where Data Created was null
-                // in 4.0 exports. May as well check Date Modified too.
-                Date c = item.getDateCreated();
-                Date m = item.getDateModified();
-                // Add some randomness to make the chance of finding an
-                // old stale
-                // indexed item negligible
-                item.setDateForIndex(new Date(Math.abs(random.nextLong() % 1000L)));
-                if (c == null) {
-                  c = m != null ? m : new Date();
-                  item.setDateCreated(c);
-                }
-
-                if (m == null) {
-                  item.setDateModified(c);
-                }
-
-                // If an item def doesn't have a workflow, then the item
-                // should definitely not have any moderation status.
-                if (item.getItemDefinition().getWorkflow() == null) {
-                  ModerationStatus moderation = item.getModeration();
-                  if (moderation != null) {
-                    moderation.getStatuses().clear();
-                  }
+              for (String entry : batch) {
+                try {
+                  importItem(
+                      allImportItemsFolder, entry, institution, params, sharedState, migrations);
+                } catch (Exception e) {
+                  throw new RuntimeException("Error in " + entry, e);
                 }
-
-                // data folder
-                final SubTemporaryFile importItemFolder =
-                    new SubTemporaryFile(allImportItemsFolder, dataFolderPath);
-                final ItemFile itemFolder = itemFileService.getItemFile(item);
-                if (!params.hasFlag(ConverterParams.NO_ITEMSATTACHMENTS)) {
-                  fileSystemService.commitFiles(importItemFolder, itemFolder);
-                } else {
-                  fileSystemService.copy(importItemFolder, itemFolder);
-                }
-
-                // This needs to happen before the PostReadMigrations
-                changeHardcodedUrls(params, itemFolder);
-
-                ItemConverterInfo info =
-                    new ItemConverterInfo(item, itemFolder, sharedState, params);
-                runMigrations(migrations, info);
-                // just to initialise it
-                item.getNavigationSettings();
-                item.setInstitution(institution);
-                initialiserService.initialiseClones(item);
-
-                storeXml(params, item, itemFolder, institution);
-
-                itemDao.save(item);
-                saveList(item.getComments());
-                saveList(item.getAcceptances());
-                runExtras(
-                    info,
-                    getXStream(),
-                    new SubTemporaryFile(allImportItemsFolder, dataFolderPath + "-extra"),
-                    true);
-                itemDao.flush();
-                itemDao.clear();
-
-                params.getItems().put(origId, item.getId());
-
-                message.incrementCurrent();
-              } catch (Exception e) {
-                throw new RuntimeException("Error in " + entry, e);
               }
+              itemDao.flush();
+              itemDao.clear();
+
+              reportProgress(message, batch.size(), start);
             }
           });
       if (threadPool.hasException()) {
@@ -277,9 +247,93 @@ public class ItemConverter extends AbstractConverter<ItemConverter.ItemConverter
     threadPool.close();
   }
 
+  private void importItem(
+      SubTemporaryFile allImportItemsFolder,
+      String entry,
+      Institution institution,
+      ConverterParams params,
+      Map<Object, Object> sharedState,
+      Collection<PostReadMigrator<ItemConverterInfo>> migrations)
+      throws IOException {
+    final String dataFolderPath = entry.replace(".xml", Constants.BLANK);
+
+    Item item = new Item();
+    DataHolder dh = getXStream().newDataHolder();
+    dh.put(WorkflowNodeSupplier.class, new ItemWorkflowNodeSupplier(item));
+    xmlHelper.readXmlFile(allImportItemsFolder, entry, getXStream(), item, dh);
+    Long origId = item.getId();
+
+    // Fix up some weird cases where Data Created was null
+    // in 4.0 exports. May as well check Date Modified too.
+    Date c = item.getDateCreated();
+    Date m = item.getDateModified();
+    // Add some randomness to make the chance of finding an
+    // old stale
+    // indexed item negligible
+    item.setDateForIndex(new Date(Math.abs(random.nextLong() % 1000L)));
+    if (c == null) {
+      c = m != null ? m : new Date();
+      item.setDateCreated(c);
+    }
+
+    if (m == null) {
+      item.setDateModified(c);
+    }
+
+    // If an item def doesn't have a workflow, then the item
+    // should definitely not have any moderation status.
+    if (item.getItemDefinition().getWorkflow() == null) {
+      ModerationStatus moderation = item.getModeration();
+      if (moderation != null) {
+        moderation.getStatuses().clear();
+      }
+    }
+
+    // data folder
+    final SubTemporaryFile importItemFolder =
+        new SubTemporaryFile(allImportItemsFolder, dataFolderPath);
+    final ItemFile itemFolder = itemFileService.getItemFile(item);
+    if (!params.hasFlag(ConverterParams.NO_ITEMSATTACHMENTS)) {
+      fileSystemService.commitFiles(importItemFolder, itemFolder);
+    } else {
+      fileSystemService.copy(importItemFolder, itemFolder);
+    }
+
+    // This needs to happen before the PostReadMigrations
+    changeHardcodedUrls(params, itemFolder);
+
+    ItemConverterInfo info = new ItemConverterInfo(item, itemFolder, sharedState, params);
+    runMigrations(migrations, info);
+    // just to initialise it
+    item.getNavigationSettings();
+    item.setInstitution(institution);
+    initialiserService.initialiseClones(item);
+
+    storeXml(params, item, itemFolder, institution);
+
+    itemDao.save(item);
+    saveList(item.getComments());
+    saveList(item.getAcceptances());
+    runExtras(
+        info,
+        getXStream(),
+        new SubTemporaryFile(allImportItemsFolder, dataFolderPath + "-extra"),
+        true);
+
+    params.getItems().put(origId, item.getId());
+  }
+
+  private void reportProgress(DefaultMessageCallback message, int completed, long start) {
+    synchronized (message) {
+      message.setCurrent(message.getCurrent() + completed);
+      long elapsed = Math.max(1, System.currentTimeMillis() - start);
+      message.setKey("institutions.converter.items.itemsratemsg");
+      message.setRate(message.getCurrent() * 1000.0 / elapsed);
+    }
+  }
+
   private TransactionThreadPool newThreadPool(int threads) {
-    // FIXME see EQ-2532 come up with a better solution
-    return new TransactionThreadPool(this, 1);
+    return new TransactionThreadPool(this, Math.max(1, threads));
   }
 
   void runExtras(
@@ -436,9 +490,6 @@ public class ItemConverter extends AbstractConverter<ItemConverter.ItemConverter
     final SubTemporaryFile allExportedItemsFolder =
         new SubTemporaryFile(staging, ITEMS_EXPORT_IMPORT_FOLDER);
 
-    // write out the format details
-    xmlHelper.writeExportFormatXmlFile(allExportedItemsFolder, true);
-
     final boolean attachments = !params.hasFlag(ConverterParams.NO_ITEMSATTACHMENTS);
     final DefaultMessageCallback message =
         new DefaultMessageCallback("institutions.converter.generic.calculateitems");
@@ -447,53 +498,82 @@ public class ItemConverter extends AbstractConverter<ItemConverter.ItemConverter
     message.setKey("institutions.converter.items.itemsmsg");
     message.setTotal(ids.size());
 
-    TransactionThreadPool pool = newThreadPool(4);
+    // Only items recorded in the checkpoint of an earlier, interrupted run with the same export
+    // flags, and which haven't been modified since, are kept. Anything else is exported afresh.
+    final Map<Long, Long> exported =
+        exportResume
+            ? readExportCheckpoint(allExportedItemsFolder, attachments)
+            : Maps.<Long, Long>newHashMap();
+    if (exported.isEmpty()) {
+      fileSystemService.removeFile(allExportedItemsFolder);
+      fileSystemService.write(
+          allExportedItemsFolder,
+          EXPORT_CHECKPOINT_FILE,
+          new StringReader(checkpointHeader(attachments) + '\n'),
+          false);
+    }
+    // write out the format details
+    xmlHelper.writeExportFormatXmlFile(allExportedItemsFolder, true);
+
+    final List<Long> itemIds = Lists.newArrayList();
+    for (ItemIdKey id : ids) {
+      itemIds.add(id.getKey());
+    }
+    // Items which have been deleted since the interrupted run must not be in the archive
+    for (Long itemId : Sets.difference(exported.keySet(), Sets.newHashSet(itemIds))) {
+      removeExportedItem(allExportedItemsFolder, itemId);
+    }
+
+    final ItemSelect select = new ItemSelect();
+    select.setDrm(true);
+    select.setModeration(true);
+    select.setItemXml(true);
+    select.setHistory(true);
+    select.setName(true);
+    select.setDescription(true);
+
     final Map<Object, Object> sharedState = Collections.synchronizedMap(Maps.newHashMap());
-    for (final ItemIdKey id : ids) {
+    final long start = System.currentTimeMillis();
+
+    // Each batch is loaded with a single query, so the subselect fetched collections of all of
+    // its items are loaded together as well
+    TransactionThreadPool pool = newThreadPool(exportThreads);
+    for (final List<Long> batch : Lists.partition(itemIds, Math.max(1, exportBatchSize))) {
       pool.doInTransaction(
           new Runnable() {
             @Override
             public void run() {
-              try {
-                final Item item = itemDao.findByItemId(id);
-                final long itemId = item.getId();
-                final ItemFile itemFile = itemFileService.getItemFile(item);
-
-                // base folder (may be shared with other items).
-                final BucketFile bucketFolder = new BucketFile(allExportedItemsFolder, itemId);
-                // data folder (item specific)
-                final SubTemporaryFile exportedItemFolder =
-                    new SubTemporaryFile(bucketFolder, Long.toString(itemId));
-                // _ITEM folder (item specific)
-                final SubTemporaryFile exportedSystemItemFolder =
-                    new SubTemporaryFile(exportedItemFolder, SYSTEM_ITEM_FOLDER);
-
-                ItemConverterInfo info = new ItemConverterInfo(item, itemFile, sharedState, params);
-                if (fileSystemService.fileExists(itemFile)) {
-                  if (attachments) {
-                    fileSystemService.copyToStaging(itemFile, exportedItemFolder, false);
-                  } else {
-                    fileSystemService.copyToStaging(
-                        new SubItemFile(itemFile, SYSTEM_ITEM_FOLDER),
-                        exportedSystemItemFolder,
-                        false);
+              final StringBuilder checkpoint = new StringBuilder();
+              for (Item item : itemDao.getItems(batch, select, institution)) {
+                if (item != null) {
+                  final Date modified = item.getDateModified();
+                  if (modified != null
+                      && Long.valueOf(modified.getTime()).equals(exported.get(item.getId()))) {
+                    continue;
+                  }
+                  try {
+                    if (exportResume) {
+                      // Clears out what an interrupted run may have left of this item
+                      removeExportedItem(allExportedItemsFolder, item.getId());
+                    }
+                    exportItem(
+                        allExportedItemsFolder,
+                        item,
+                        attachments,
+                        institution,
+                        params,
+                        sharedState);
+                  } catch (Exception e) {
+                    throw new RuntimeException("Error in " + item.getItemId(), e);
                   }
+                  checkpoint.append(item.getId()).append(' ');
+                  checkpoint.append(modified != null ? modified.getTime() : -1).append('\n');
                 }
-
-                xmlHelper.writeXmlFile(
-                    bucketFolder, Long.toString(itemId) + ".xml", item, getXStream());
-                runExtras(
-                    info,
-                    getXStream(),
-                    new SubTemporaryFile(bucketFolder, Long.toString(itemId) + "-extra"),
-                    false);
-
-                exportXml(params, item, exportedSystemItemFolder, institution);
-                message.incrementCurrent();
-                itemDao.clear();
-              } catch (Exception e) {
-                throw new RuntimeException("Error in " + id, e);
               }
+              itemDao.clear();
+              appendExportCheckpoint(allExportedItemsFolder, checkpoint.toString());
+
+              reportProgress(message, batch.size(), start);
             }
           });
       if (pool.hasException()) {
@@ -501,6 +581,103 @@ public class ItemConverter extends AbstractConverter<ItemConverter.ItemConverter
       }
     }
     pool.close();
+
+    // Only reached if every item was exported, so the checkpoint is no longer needed and must not
+    // end up in the archive
+    fileSystemService.removeFile(allExportedItemsFolder, EXPORT_CHECKPOINT_FILE);
+  }
+
+  private static String checkpointHeader(boolean attachments) {
+    return "attachments=" + attachments;
+  }
+
+  /**
+   * @return The item IDs and modified dates recorded by an earlier run with the same export flags,
+   *     or an empty map if there is nothing to resume.
+   */
+  private Map<Long, Long> readExportCheckpoint(TemporaryFileHandle folder, boolean attachments)
+      throws IOException {
+    final Map<Long, Long> exported = Maps.newHashMap();
+    if (!fileSystemService.fileExists(folder, EXPORT_CHECKPOINT_FILE)) {
+      return exported;
+    }
+    final List<String> lines;
+    try (InputStream in = fileSystemService.read(folder, EXPORT_CHECKPOINT_FILE)) {
+      lines = CharStreams.readLines(new InputStreamReader(in, Constants.UTF8));
+    }
+    if (lines.isEmpty() || !lines.get(0).equals(checkpointHeader(attachments))) {
+      return exported;
+    }
+    for (String line : lines.subList(1, lines.size())) {
+      final String[] idAndModified = line.split(" ");
+      // A partly written last line is ignored, that item is simply exported again
+      if (idAndModified.length == 2) {
+        try {
+          exported.put(Long.valueOf(idAndModified[0]), Long.valueOf(idAndModified[1]));
+        } catch (NumberFormatException e) {
+          // ignore
+        }
+      }
+    }
+    return exported;
+  }
+
+  private synchronized void appendExportCheckpoint(TemporaryFileHandle folder, String lines) {
+    if (!lines.isEmpty()) {
+      try {
+        fileSystemService.write(folder, EXPORT_CHECKPOINT_FILE, new StringReader(lines), true);
+      } catch (IOException e) {
+        throw Throwables.propagate(e);
+      }
+    }
+  }
+
+  private void removeExportedItem(SubTemporaryFile allExportedItemsFolder, long itemId) {
+    final BucketFile bucketFolder = new BucketFile(allExportedItemsFolder, itemId);
+    final String name = Long.toString(itemId);
+    fileSystemService.removeFile(bucketFolder, name + ".xml");
+    fileSystemService.removeFile(bucketFolder, name);
+    fileSystemService.removeFile(bucketFolder, name + "-extra");
+  }
+
+  private void exportItem(
+      SubTemporaryFile allExportedItemsFolder,
+      Item item,
+      boolean attachments,
+      Institution institution,
+      ConverterParams params,
+      Map<Object, Object> sharedState)
+      throws IOException {
+    final long itemId = item.getId();
+    final ItemFile itemFile = itemFileService.getItemFile(item);
+
+    // base folder (may be shared with other items).
+    final BucketFile bucketFolder = new BucketFile(allExportedItemsFolder, itemId);
+    // data folder (item specific)
+    final SubTemporaryFile exportedItemFolder =
+        new SubTemporaryFile(bucketFolder, Long.toString(itemId));
+    // _ITEM folder (item specific)
+    final SubTemporaryFile exportedSystemItemFolder =
+        new SubTemporaryFile(exportedItemFolder, SYSTEM_ITEM_FOLDER);
+
+    ItemConverterInfo info = new ItemConverterInfo(item, itemFile, sharedState, params);
+    if (fileSystemService.fileExists(itemFile)) {
+      if (attachments) {
+        fileSystemService.copyToStaging(itemFile, exportedItemFolder, false);
+      } else {
+        fileSystemService.copyToStaging(
+            new SubItemFile(itemFile, SYSTEM_ITEM_FOLDER), exportedSystemItemFolder, false);
+      }
+    }
+
+    runExtras(
+        info,
+        getXStream(),
+        new SubTemporaryFile(bucketFolder, Long.toString(itemId) + "-extra"),
+        false);
+    exportXml(params, item, exportedSystemItemFolder, institution);
+
+    xmlHelper.writeXmlFile(bucketFolder, Long.toString(itemId) + ".xml", item, getXStream());
   }
 
   private synchronized XStream getXStream() {
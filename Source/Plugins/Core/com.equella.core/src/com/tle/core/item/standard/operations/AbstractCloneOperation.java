@@ -89,7 +89,7 @@ public abstract class AbstractCloneOperation extends AbstractStandardWorkflowOpe
     ItemFile from = itemFileService.getItemFile(getItem());
     StagingFile staging = stagingService.createStagingArea();
     if (copyAttachments) {
-      fileSystemService.copy(from, staging);
+      fileSystemService.copyLinked(from, staging);
     }
     ItemPack<Item> pack = getItemPack();
     pack.setStagingID(staging.getUuid());
@@ -39,7 +39,7 @@ public abstract class AbstractStartEditOperation extends StartLockOperation {
     if (modify) {
       ItemFile file = itemFileService.getItemFile(getItem());
       StagingFile staging = stagingService.createStagingArea();
-      fileSystemService.copy(file, staging);
+      fileSystemService.copyLinked(file, staging);
       getItemPack().setStagingID(staging.getUuid());
     }
     return false;
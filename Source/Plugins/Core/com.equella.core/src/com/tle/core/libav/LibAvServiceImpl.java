@@ -133,7 +133,7 @@ public class LibAvServiceImpl implements LibAvService {
     }
     List<String> opts = new ArrayList<String>();
     final String thumbFile = FileSystemService.VIDEO_PREVIEW_FOLDER + '/' + filename + ".mp4";
-    final File srcFile = fileSystemService.getExternalFile(handle, filename);
+    final File srcFile = fileSystemService.getExternalFileForReading(handle, filename);
     final File dstFile = fileSystemService.getExternalFile(handle, thumbFile);
     boolean madeDirs = dstFile.getParentFile().mkdirs();
     ObjectNode videoJson = getVideoInfo(srcFile);
@@ -43,7 +43,7 @@ public class MetadataScriptWrapper extends AbstractScriptWrapper implements Meta
     MetadataScriptType mdst =
         new MetadataScriptTypeImpl(
             metadataService.getMetadata(
-                fileSystemService.getExternalFile(
+                fileSystemService.getExternalFileForReading(
                     ((FileHandleScriptTypeImpl) f).getHandle(), f.getName())));
 
     return mdst;
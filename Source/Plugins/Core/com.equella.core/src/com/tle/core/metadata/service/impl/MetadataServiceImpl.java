@@ -66,7 +66,7 @@ public class MetadataServiceImpl implements MetadataService {
   @Override
   public Map<String, Map<String, String>> getMetadata(Attachment a, FileHandle handle) {
     if (Objects.equal(a.getAttachmentType(), AttachmentType.FILE)) {
-      return getMetadata(fileSystemService.getExternalFile(handle, a.getUrl()));
+      return getMetadata(fileSystemService.getExternalFileForReading(handle, a.getUrl()));
     }
     return Maps.newHashMap();
   }
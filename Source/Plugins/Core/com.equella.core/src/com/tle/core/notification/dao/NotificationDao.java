@@ -33,6 +33,20 @@ public interface NotificationDao extends GenericInstitutionalDao<Notification, L
 
   Notification getExistingNotification(String uuid, String reason, String user);
 
+  /**
+   * Adds a notification for each of the users, or marks their existing notification for the same
+   * item and reason as unprocessed again. There can only be one of these per user.
+   *
+   * @param users Must not contain duplicates
+   */
+  void addNotifications(
+      String itemKey,
+      String itemOnlyId,
+      String reason,
+      Collection<String> users,
+      boolean batched,
+      Date date);
+
   List<Notification> getNotificationsForItem(ItemId itemId, Institution institution);
 
   void deleteAllForInstitution(Institution institution);
@@ -49,15 +63,21 @@ public interface NotificationDao extends GenericInstitutionalDao<Notification, L
 
   boolean userIdChanged(ItemKey itemKey, String fromUserId, String toUserId);
 
-  NotifiedUser getUserToNotify(Date notAfter, String attemptId, boolean batched);
+  List<NotifiedUser> getUsersToNotify(
+      Date notAfter, String attemptId, boolean batched, int maximum);
 
   int updateLastAttempt(String user, boolean batched, Date date, String attemptId);
 
+  int updateLastAttempt(Collection<String> users, boolean batched, Date date, String attemptId);
+
   List<Notification> getNewestNotificationsForUser(
       int maximum, String user, Collection<String> reasons, String attemptId);
 
   Map<String, Integer> getReasonCounts(String user, String attemptId);
 
+  /** @return The reason counts of each user with unprocessed notifications */
+  Map<String, Map<String, Integer>> getReasonCounts(Collection<String> users, String attemptId);
+
   int markProcessed(String user, Collection<String> reasons, String attemptId);
 
   int deleteUnindexed(String user, Collection<String> reasons, String attemptId);
@@ -18,12 +18,15 @@
 
 package com.tle.core.notification.dao;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.tle.beans.Institution;
 import com.tle.beans.item.ItemId;
 import com.tle.beans.item.ItemKey;
 import com.tle.common.Check;
 import com.tle.common.institution.CurrentInstitution;
+import com.tle.core.dao.helpers.CollectionPartitioner;
 import com.tle.core.guice.Bind;
 import com.tle.core.hibernate.dao.GenericInstitionalDaoImpl;
 import com.tle.core.notification.beans.Notification;
@@ -33,6 +36,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import javax.inject.Singleton;
 import org.hibernate.HibernateException;
 import org.hibernate.Query;
@@ -51,6 +55,7 @@ public class NotificationDaoImpl extends GenericInstitionalDaoImpl<Notification,
   private static final String REASONS = "reasons";
   private static final String NOTEID = "noteid";
   private static final String USER = "user";
+  private static final String USERS = "users";
   private static final String INST = "inst";
   private static final String ITEMID = "itemid";
   private static final String REASON = "reason";
@@ -82,6 +87,72 @@ public class NotificationDaoImpl extends GenericInstitionalDaoImpl<Notification,
     return notifications.get(0);
   }
 
+  @Override
+  @SuppressWarnings("unchecked")
+  @Transactional(propagation = Propagation.MANDATORY)
+  public void addNotifications(
+      final String itemKey,
+      final String itemOnlyId,
+      final String reason,
+      Collection<String> users,
+      final boolean batched,
+      final Date date) {
+    if (users.isEmpty()) {
+      return;
+    }
+    final Institution institution = CurrentInstitution.get();
+    getHibernateTemplate()
+        .execute(
+            new CollectionPartitioner<String, Notification>(users) {
+              @Override
+              public List<Notification> doQuery(Session session, Collection<String> chunk) {
+                Query query =
+                    session.createQuery(
+                        "select userTo from Notification where itemid = :itemkey "
+                            + "and reason = :reason and institution = :inst "
+                            + "and userTo in (:users)");
+                query.setParameter(ITEMKEY, itemKey);
+                query.setParameter(REASON, reason);
+                query.setParameter(INST, institution);
+                query.setParameterList(USERS, chunk);
+                Set<String> existing = Sets.newHashSet((List<String>) query.list());
+
+                if (!existing.isEmpty()) {
+                  Query update =
+                      session.createQuery(
+                          "update Notification set processed = false, batched = :batched, "
+                              + "date = :date where itemid = :itemkey and reason = :reason "
+                              + "and institution = :inst and userTo in (:users)");
+                  update.setParameter("batched", batched);
+                  update.setParameter("date", date);
+                  update.setParameter(ITEMKEY, itemKey);
+                  update.setParameter(REASON, reason);
+                  update.setParameter(INST, institution);
+                  update.setParameterList(USERS, existing);
+                  update.executeUpdate();
+                }
+
+                List<Notification> added = Lists.newArrayList();
+                for (String user : chunk) {
+                  if (!existing.contains(user)) {
+                    Notification notification = new Notification();
+                    notification.setInstitution(institution);
+                    notification.setItemid(itemKey);
+                    notification.setItemidOnly(itemOnlyId);
+                    notification.setReason(reason);
+                    notification.setUserTo(user);
+                    notification.setProcessed(false);
+                    notification.setBatched(batched);
+                    notification.setDate(date);
+                    session.save(notification);
+                    added.add(notification);
+                  }
+                }
+                return added;
+              }
+            });
+  }
+
   @Override
   @Transactional(propagation = Propagation.MANDATORY)
   public List<Notification> getNotificationsForItem(ItemId itemId, Institution institution) {
@@ -233,10 +304,11 @@ public class NotificationDaoImpl extends GenericInstitionalDaoImpl<Notification,
   }
 
   @Override
+  @SuppressWarnings("unchecked")
   @Transactional(propagation = Propagation.MANDATORY)
-  public NotifiedUser getUserToNotify(
-      final Date notAfter, final String attemptId, final boolean batched) {
-    return (NotifiedUser)
+  public List<NotifiedUser> getUsersToNotify(
+      final Date notAfter, final String attemptId, final boolean batched, final int maximum) {
+    return (List<NotifiedUser>)
         getHibernateTemplate()
             .execute(
                 new HibernateCallback() {
@@ -250,12 +322,12 @@ public class NotificationDaoImpl extends GenericInstitionalDaoImpl<Notification,
                     query.setParameter("date", notAfter);
                     query.setParameter("batched", batched);
                     query.setParameter(ATTEMPT, attemptId);
-                    query.setMaxResults(1);
-                    Object[] vals = (Object[]) query.uniqueResult();
-                    if (vals == null) {
-                      return null;
+                    query.setMaxResults(maximum);
+                    List<NotifiedUser> users = Lists.newArrayList();
+                    for (Object[] vals : (List<Object[]>) query.list()) {
+                      users.add(new NotifiedUser((String) vals[0], ((Number) vals[1]).longValue()));
                     }
-                    return new NotifiedUser((String) vals[0], ((Number) vals[1]).longValue());
+                    return users;
                   }
                 });
   }
@@ -323,6 +395,79 @@ public class NotificationDaoImpl extends GenericInstitionalDaoImpl<Notification,
                 });
   }
 
+  @Override
+  @SuppressWarnings("unchecked")
+  @Transactional(propagation = Propagation.MANDATORY)
+  public Map<String, Map<String, Integer>> getReasonCounts(
+      Collection<String> users, final String attemptId) {
+    final Map<String, Map<String, Integer>> userMap = Maps.newHashMap();
+    if (users.isEmpty()) {
+      return userMap;
+    }
+    getHibernateTemplate()
+        .execute(
+            new CollectionPartitioner<String, Object[]>(users) {
+              @Override
+              public List<Object[]> doQuery(Session session, Collection<String> chunk) {
+                Query query =
+                    session.createQuery(
+                        "select userTo, reason, count(reason) from Notification "
+                            + "where attemptId = :attempt and processed = false "
+                            + "and userTo in (:users) and institution = :inst "
+                            + "group by userTo, reason");
+                query.setParameter(ATTEMPT, attemptId);
+                query.setParameterList(USERS, chunk);
+                query.setParameter(INST, CurrentInstitution.get());
+                List<Object[]> counts = query.list();
+                for (Object[] count : counts) {
+                  String user = (String) count[0];
+                  Map<String, Integer> reasonMap = userMap.get(user);
+                  if (reasonMap == null) {
+                    reasonMap = Maps.newHashMap();
+                    userMap.put(user, reasonMap);
+                  }
+                  reasonMap.put((String) count[1], ((Number) count[2]).intValue());
+                }
+                return counts;
+              }
+            });
+    return userMap;
+  }
+
+  @Override
+  @Transactional(propagation = Propagation.MANDATORY)
+  public int updateLastAttempt(
+      Collection<String> users, final boolean batched, final Date date, final String attemptId) {
+    if (users.isEmpty()) {
+      return 0;
+    }
+    List<Integer> updated =
+        (List<Integer>)
+            getHibernateTemplate()
+                .execute(
+                    new CollectionPartitioner<String, Integer>(users) {
+                      @Override
+                      public List<Integer> doQuery(Session session, Collection<String> chunk) {
+                        Query query =
+                            session.createQuery(
+                                "update Notification set lastAttempt = :date, attemptId = :attempt "
+                                    + "where institution = :inst and userTo in (:users) "
+                                    + "and processed = false and batched = :batched");
+                        query.setParameter("date", date);
+                        query.setParameter(ATTEMPT, attemptId);
+                        query.setParameter(INST, CurrentInstitution.get());
+                        query.setParameterList(USERS, chunk);
+                        query.setParameter("batched", batched);
+                        return Collections.singletonList(query.executeUpdate());
+                      }
+                    });
+    int total = 0;
+    for (Integer count : updated) {
+      total += count;
+    }
+    return total;
+  }
+
   @Override
   @Transactional(propagation = Propagation.MANDATORY)
   public int updateLastAttempt(String user, boolean batched, Date date, String attemptId) {
@@ -18,8 +18,11 @@
 
 package com.tle.core.notification.service;
 
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
 import com.tle.beans.Institution;
 import com.tle.beans.item.ItemId;
 import com.tle.beans.item.ItemKey;
@@ -56,6 +59,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
@@ -77,6 +81,8 @@ import org.springframework.transaction.annotation.Transactional;
 @Bind(NotificationService.class)
 public class NotificationServiceImpl implements NotificationService {
   private static final int MAX_EMAIL_NOTIFICATIONS = 30;
+  private static final int USERS_PER_BATCH = 100;
+  private static final int MAX_PENDING_EMAILS = 200;
   private static final long RETRY_MILLIS = TimeUnit.HOURS.toMillis(2);
 
   private static final Log LOGGER = LogFactory.getLog(NotificationService.class);
@@ -136,17 +142,30 @@ public class NotificationServiceImpl implements NotificationService {
   @Transactional
   public void addNotifications(
       ItemKey itemId, String reason, Collection<String> users, boolean batched) {
-    for (String user : users) {
-      addNotification(itemId, reason, user, batched);
-    }
+    addNotifications(
+        itemId.toString(), ItemId.fromKey(itemId).toString(), reason, users, batched);
   }
 
   @Override
   @Transactional
   public void addNotifications(
       String uuid, String reason, Collection<String> userUuids, boolean batched) {
-    for (String userUuid : userUuids) {
-      addNotification(uuid, uuid, reason, userUuid, batched);
+    addNotifications(uuid, uuid, reason, userUuids, batched);
+  }
+
+  private void addNotifications(
+      String uuid, String itemOnlyId, String reason, Collection<String> users, boolean batched) {
+    Set<String> userSet = Sets.newLinkedHashSet();
+    for (String user : users) {
+      if (!Check.isEmpty(user)) {
+        userSet.add(user);
+      }
+    }
+    try {
+      dao.addNotifications(uuid, itemOnlyId, reason, userSet, batched, new Date());
+    } catch (ConstraintViolationException ex) {
+      // Safely ignore - two notifications were trying to be created at
+      // the same time for the same user, reason, item and institution.
     }
   }
 
@@ -189,14 +208,17 @@ public class NotificationServiceImpl implements NotificationService {
           schemaId,
           new Callable<Void>() {
             @Override
-            public Void call() {
-
-              while (processFirstUser(
+            public Void call() throws InterruptedException {
+              while (processUsers(
                   notBefore, processTime, completionService, emailCounter, attemptId, batched)) {
                 Future<EmailResult<EmailKey>> result;
                 while ((result = completionService.poll()) != null) {
                   processResult(result, emailCounter);
                 }
+                // Don't queue up more emails than the emailers can keep up with
+                while (emailCounter.intValue() > MAX_PENDING_EMAILS) {
+                  processResult(completionService.take(), emailCounter);
+                }
               }
               return null;
             }
@@ -249,48 +271,78 @@ public class NotificationServiceImpl implements NotificationService {
   }
 
   @Transactional
-  protected boolean processFirstUser(
+  protected boolean processUsers(
       Date notAfter,
       final Date processTime,
       ExecutorCompletionService<EmailResult<EmailKey>> completionService,
       AtomicInteger emailCounter,
       final String attemptId,
       final boolean batched) {
-    NotifiedUser userToNotify = dao.getUserToNotify(notAfter, attemptId, batched);
-    if (userToNotify != null) {
-      final String user = userToNotify.getUser();
-      Institution institution = institutionService.getInstitution(userToNotify.getInstId());
-      try {
-        Iterable<Callable<EmailResult<EmailKey>>> emailer =
-            runAsUser.execute(
-                institution,
-                user,
-                new NotificationEmailer(batched, processTime, attemptId, dao, emailService));
-        for (Callable<EmailResult<EmailKey>> em : emailer) {
-          emailCounter.incrementAndGet();
-          completionService.submit(em);
-        }
-      } catch (UserException ue) {
-        runAs.executeAsSystem(
-            institution,
-            new Runnable() {
-              @Override
-              public void run() {
-                dao.updateLastAttempt(user, batched, processTime, attemptId);
-                Map<String, Integer> reasonCounts = dao.getReasonCounts(user, attemptId);
-                List<String> processed = Lists.newArrayList();
-                List<String> deletes = Lists.newArrayList();
-                for (Entry<String, Integer> reasonCount : reasonCounts.entrySet()) {
-                  String reason = reasonCount.getKey();
-                  (getExtensionForType(reason).isIndexed(reason) ? processed : deletes).add(reason);
+    List<NotifiedUser> usersToNotify =
+        dao.getUsersToNotify(notAfter, attemptId, batched, USERS_PER_BATCH);
+
+    ListMultimap<Long, String> usersByInst = ArrayListMultimap.create();
+    for (NotifiedUser userToNotify : usersToNotify) {
+      usersByInst.put(userToNotify.getInstId(), userToNotify.getUser());
+    }
+    for (final Entry<Long, Collection<String>> entry : usersByInst.asMap().entrySet()) {
+      final Institution institution = institutionService.getInstitution(entry.getKey());
+      final Collection<String> users = entry.getValue();
+      Map<String, Map<String, Integer>> reasonCounts =
+          runAs.executeAsSystem(
+              institution,
+              new Callable<Map<String, Map<String, Integer>>>() {
+                @Override
+                public Map<String, Map<String, Integer>> call() {
+                  dao.updateLastAttempt(users, batched, processTime, attemptId);
+                  return dao.getReasonCounts(users, attemptId);
                 }
-                dao.deleteUnindexed(user, deletes, attemptId);
-                dao.markProcessed(user, processed, attemptId);
-              }
-            });
+              });
+
+      for (String user : users) {
+        Map<String, Integer> userReasons = reasonCounts.get(user);
+        if (userReasons != null) {
+          processUser(
+              institution, user, userReasons, completionService, emailCounter, attemptId);
+        }
+      }
+    }
+    return !usersToNotify.isEmpty();
+  }
+
+  private void processUser(
+      Institution institution,
+      final String user,
+      final Map<String, Integer> reasonCounts,
+      ExecutorCompletionService<EmailResult<EmailKey>> completionService,
+      AtomicInteger emailCounter,
+      final String attemptId) {
+    try {
+      Iterable<Callable<EmailResult<EmailKey>>> emailer =
+          runAsUser.execute(
+              institution,
+              user,
+              new NotificationEmailer(attemptId, reasonCounts, dao, emailService));
+      for (Callable<EmailResult<EmailKey>> em : emailer) {
+        emailCounter.incrementAndGet();
+        completionService.submit(em);
       }
+    } catch (UserException ue) {
+      runAs.executeAsSystem(
+          institution,
+          new Runnable() {
+            @Override
+            public void run() {
+              List<String> processed = Lists.newArrayList();
+              List<String> deletes = Lists.newArrayList();
+              for (String reason : reasonCounts.keySet()) {
+                (getExtensionForType(reason).isIndexed(reason) ? processed : deletes).add(reason);
+              }
+              dao.deleteUnindexed(user, deletes, attemptId);
+              dao.markProcessed(user, processed, attemptId);
+            }
+          });
     }
-    return userToNotify != null;
   }
 
   @Override
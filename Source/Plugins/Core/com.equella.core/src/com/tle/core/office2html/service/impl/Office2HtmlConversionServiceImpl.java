@@ -150,7 +150,7 @@ public class Office2HtmlConversionServiceImpl implements Office2HtmlConversionSe
 
     ConversionFile targetHandle = new ConversionFile(itemHandle);
     String targetFile = file + '.' + extension;
-    File source = fileSystemService.getExternalFile(itemHandle, file);
+    File source = fileSystemService.getExternalFileForReading(itemHandle, file);
     File target = fileSystemService.getExternalFile(targetHandle, targetFile);
 
     if (!target.exists() || source.lastModified() > target.lastModified()) {
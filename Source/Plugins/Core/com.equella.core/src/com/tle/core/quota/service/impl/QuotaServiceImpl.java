@@ -153,9 +153,16 @@ public class QuotaServiceImpl implements QuotaService {
     long totes = 0;
     for (NameValue filestore : fileSystemService.listFilestores()) {
       final String filestoreId = filestore.getValue();
-      totes +=
-          getFileSize(
-              new FakeInstitutionFile(inst, filestoreId.equals("default") ? null : filestoreId));
+      try {
+        // Shared files are only stored once, so only count them once
+        totes +=
+            fileSystemService.storedLength(
+                new FakeInstitutionFile(inst, filestoreId.equals("default") ? null : filestoreId),
+                null);
+      } catch (IOException e) {
+        // Should never happen
+        throw new RuntimeException(e);
+      }
     }
     return totes;
   }
@@ -64,6 +64,13 @@ public interface FileSystemService extends RemoteFileSystemService {
    */
   File getExternalFile(FileHandle handle, String path);
 
+  /**
+   * As {@link #getExternalFile(FileHandle, String)} but for callers which only read the file. A
+   * file that is hard linked to another copy is returned as is rather than being copied first, so
+   * the returned file must never be written to.
+   */
+  File getExternalFileForReading(FileHandle handle, String path);
+
   /**
    * Builds a flat file listing of the folder represented by the path. Does not recurse
    * subdirectories
@@ -192,6 +199,14 @@ public interface FileSystemService extends RemoteFileSystemService {
 
   FileInfo copy(FileHandle source, FileHandle destination);
 
+  /**
+   * Like {@link #copy(FileHandle, FileHandle)}, but where the filestore supports it the files are
+   * hard linked rather than copied, so the time taken doesn't depend on the size of the files. A
+   * linked file is replaced with a private copy before it is written to through this service, so
+   * changes to one side never show through to the other.
+   */
+  FileInfo copyLinked(FileHandle source, FileHandle destination);
+
   void copyToStaging(
       FileHandle handle,
       String filename,
@@ -211,6 +226,12 @@ public interface FileSystemService extends RemoteFileSystemService {
 
   long recursivefileLength(FileHandle handle, String filename) throws IOException;
 
+  /**
+   * Like {@link #recursivefileLength(FileHandle, String)}, but files that are hard linked to each
+   * other (e.g. deduplicated or shared between item versions) are only counted once.
+   */
+  long storedLength(FileHandle handle, String filename) throws IOException;
+
   long lastModified(FileHandle handle, String filename);
 
   long mostRecentModification(FileHandle handle, String dirname);
@@ -40,6 +40,8 @@ import com.tle.common.institution.CurrentInstitution;
 import com.tle.common.quota.settings.QuotaSettings;
 import com.tle.core.events.services.EventService;
 import com.tle.core.filesystem.InstitutionFile;
+import com.tle.core.filesystem.dedup.ContentStore;
+import com.tle.core.filesystem.digest.FileDigestIndex;
 import com.tle.core.guice.Bind;
 import com.tle.core.healthcheck.listeners.ServiceCheckRequestListener;
 import com.tle.core.healthcheck.listeners.ServiceCheckResponseListener.CheckServiceResponseEvent;
@@ -57,9 +59,15 @@ import java.io.*;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.AccessDeniedException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
@@ -82,11 +90,15 @@ public class FileSystemServiceImpl implements FileSystemService, ServiceCheckReq
   private static final String DIGEST_MD5 = "md5";
   private static final String KEY_PFX =
       AbstractPluginService.getMyPluginId(FileSystemServiceImpl.class) + ".";
+  private static final boolean UNIX_ATTRIBUTES =
+      FileSystems.getDefault().supportedFileAttributeViews().contains("unix");
 
   @Inject private ConfigurationService configService;
   @Inject private EventService eventService;
   @Inject private ZookeeperService zkService;
   @Inject private Map<String, Filestore> filestores;
+  @Inject private FileDigestIndex digestIndex;
+  @Inject private ContentStore contentStore;
 
   @com.google.inject.Inject(optional = true)
   @Named("filestore.advanced")
@@ -96,6 +108,10 @@ public class FileSystemServiceImpl implements FileSystemService, ServiceCheckReq
   @Named("filestore.zipExtractCharset")
   private String charset;
 
+  @com.google.inject.Inject(optional = true)
+  @Named("filestore.stagingHardLinks")
+  private boolean stagingHardLinks = true;
+
   @Inject
   @Named("filestore.root")
   private File rootDir;
@@ -115,6 +131,19 @@ public class FileSystemServiceImpl implements FileSystemService, ServiceCheckReq
 
   @Override
   public File getExternalFile(FileHandle handle, String path) {
+    File file = getFile(handle, path);
+    // We can't tell whether the caller is going to write to it, and a file linked into staging or
+    // shared through the content store must never be changed in place.
+    try {
+      unshare(file, true);
+    } catch (IOException e) {
+      throw new FileSystemException("Error copying linked file " + file, e);
+    }
+    return file;
+  }
+
+  @Override
+  public File getExternalFileForReading(FileHandle handle, String path) {
     return getFile(handle, path);
   }
 
@@ -283,15 +312,20 @@ public class FileSystemServiceImpl implements FileSystemService, ServiceCheckReq
       }
     }
 
+    final long byteCount;
     try (OutputStream out = getOutputStream(file, append)) {
-      long byteCount = copyStream(content, out, md5);
+      byteCount = copyStream(content, out, md5);
+    }
 
-      String md5Hex = null;
-      if (md5 != null) {
-        md5Hex = Md5.stringify(md5.digest());
-      }
-      return new FileInfo(byteCount, filename, md5Hex);
+    String md5Hex = null;
+    if (md5 != null) {
+      md5Hex = Md5.stringify(md5.digest());
+    }
+    // Recorded once the stream is closed so the index never points at a partly written file
+    if (md5Hex != null && !append) {
+      digestIndex.record(file, md5Hex);
     }
+    return new FileInfo(byteCount, filename, md5Hex);
   }
 
   @Override
@@ -463,6 +497,15 @@ public class FileSystemServiceImpl implements FileSystemService, ServiceCheckReq
       LOGGER.debug("Deleting trash [" + trash + "]");
       FileUtils.delete(trash.toPath(), null);
     }
+
+    if (contentStore.isEnabled()) {
+      try {
+        contentStore.deduplicate(to);
+      } catch (IOException e) {
+        // The files are committed, they just aren't sharing storage
+        LOGGER.warn("Error deduplicating [" + to + "]", e);
+      }
+    }
     LOGGER.debug("Done committing files from [" + staging + "] to [" + to + "]");
   }
 
@@ -566,7 +609,11 @@ public class FileSystemServiceImpl implements FileSystemService, ServiceCheckReq
     if (LOGGER.isDebugEnabled()) {
       LOGGER.debug("copy: from " + from + " to " + to);
     }
-    return new FileInfo(doCopy(from, to, false), to.getName());
+    FileInfo info = new FileInfo(doCopy(from, to, false), to.getName());
+    if (from.isFile()) {
+      digestIndex.copied(from, to);
+    }
+    return info;
   }
 
   /*
@@ -588,6 +635,130 @@ public class FileSystemServiceImpl implements FileSystemService, ServiceCheckReq
     return new FileInfo(0, to.getName());
   }
 
+  @Override
+  public FileInfo copyLinked(FileHandle source, FileHandle destination) {
+    if (!stagingHardLinks || !UNIX_ATTRIBUTES) {
+      return copy(source, destination);
+    }
+
+    File from = getFile(source);
+    File to = getFile(destination);
+    if (!from.exists()) {
+      LOGGER.info("Source '" + source.getAbsolutePath() + "' does not exist");
+      return new FileInfo(0, to.getName());
+    }
+
+    try {
+      LinkingFileVisitor linker = new LinkingFileVisitor(from.toPath(), to.toPath());
+      Files.walkFileTree(from.toPath(), linker);
+      return new FileInfo(linker.getBytes(), to.getName());
+    } catch (IOException ioe) {
+      throw new FileSystemException("Error linking " + from + " to " + to, ioe);
+    }
+  }
+
+  /**
+   * Hard links each file into the destination tree, falling back to copying (for the rest of the
+   * tree) as soon as a link can't be made, e.g. when the destination is on another filestore.
+   */
+  private static class LinkingFileVisitor extends SimpleFileVisitor<Path> {
+    private final Path from;
+    private final Path to;
+    private boolean linking = true;
+    private long bytes;
+
+    protected LinkingFileVisitor(Path from, Path to) {
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+        throws IOException {
+      Files.createDirectories(to.resolve(from.relativize(dir)));
+      return FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+      Path target = to.resolve(from.relativize(file));
+      if (linking) {
+        try {
+          Files.deleteIfExists(target);
+          Files.createLink(target, file);
+        } catch (IOException | UnsupportedOperationException e) {
+          LOGGER.info("Couldn't link " + file + ", copying instead: " + e.getMessage());
+          linking = false;
+        }
+      }
+      if (!linking) {
+        Files.copy(
+            file, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+      }
+      bytes += attrs.size();
+      return FileVisitResult.CONTINUE;
+    }
+
+    public long getBytes() {
+      return bytes;
+    }
+  }
+
+  /**
+   * Makes sure a file about to be written in place isn't shared with a hard linked copy from
+   * {@link #copyLinked(FileHandle, FileHandle)}. If the contents are needed (e.g. appending) the
+   * file is replaced with a private copy, otherwise it's just removed.
+   */
+  private static void unshare(File file, boolean keepContents) throws IOException {
+    if (!UNIX_ATTRIBUTES) {
+      return;
+    }
+    Path path = file.toPath();
+    if (!Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)) {
+      return;
+    }
+    int links;
+    try {
+      links =
+          ((Number) Files.getAttribute(path, "unix:nlink", LinkOption.NOFOLLOW_LINKS)).intValue();
+    } catch (UnsupportedOperationException e) {
+      return;
+    }
+    if (links <= 1) {
+      return;
+    }
+
+    if (keepContents) {
+      Path copy = Files.createTempFile(path.getParent(), ".", ".unshare");
+      try {
+        Files.copy(
+            path, copy, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        Files.move(copy, path, StandardCopyOption.REPLACE_EXISTING);
+      } finally {
+        Files.deleteIfExists(copy);
+      }
+    } else {
+      Files.delete(path);
+    }
+  }
+
+  /** Unshares each file in the destination tree which a copy of the source tree would overwrite. */
+  private static void unshareTargets(File from, File to) throws IOException {
+    if (!UNIX_ATTRIBUTES || !to.exists()) {
+      return;
+    }
+    if (from.isDirectory()) {
+      File[] files = from.listFiles();
+      if (files != null) {
+        for (File file : files) {
+          unshareTargets(file, new File(to, file.getName()));
+        }
+      }
+    } else {
+      unshare(to, false);
+    }
+  }
+
   /*
    * (non-Javadoc)
    * @see
@@ -628,6 +799,7 @@ public class FileSystemServiceImpl implements FileSystemService, ServiceCheckReq
 
   private long doCopy(File from, File to, boolean ignoreInternalFiles) {
     try {
+      unshareTargets(from, to);
       return FileSystemHelper.copy(from, to, ignoreInternalFiles, false);
     } catch (IOException ioe) {
       throw new FileSystemException("Error copying " + from + " to " + to, ioe);
@@ -640,6 +812,7 @@ public class FileSystemServiceImpl implements FileSystemService, ServiceCheckReq
 
   private OutputStream getOutputStream(File file, boolean append) throws IOException {
     file.getParentFile().mkdirs(); // NOSONAR - see mkdirs comment above
+    unshare(file, append);
     return new BufferedOutputStream(new FileOutputStream(file, append && file.exists()));
   }
 
@@ -695,6 +868,35 @@ public class FileSystemServiceImpl implements FileSystemService, ServiceCheckReq
     return FileSystemHelper.recursiveFileLength(getFile(handle, filename));
   }
 
+  @Override
+  public long storedLength(FileHandle handle, String filename) throws IOException {
+    File file = getFile(handle, filename);
+    if (!UNIX_ATTRIBUTES || !file.exists()) {
+      return FileSystemHelper.recursiveFileLength(file);
+    }
+
+    final Set<Object> seen = new HashSet<Object>();
+    final long[] length = new long[1];
+    Files.walkFileTree(
+        file.toPath(),
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
+            Object key = attrs.fileKey();
+            if (key == null || seen.add(key)) {
+              length[0] += attrs.size();
+            }
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFileFailed(Path path, IOException exc) {
+            return FileVisitResult.CONTINUE;
+          }
+        });
+    return length[0];
+  }
+
   /*
    * (non-Javadoc)
    * @see
@@ -925,6 +1127,7 @@ public class FileSystemServiceImpl implements FileSystemService, ServiceCheckReq
       } else {
         File tfile = new File(target);
         tfile.getParentFile().mkdirs();
+        unshare(tfile, false);
 
         try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tfile))) {
           ByteStreams.copy(extractor.getStream(), out);
@@ -1106,7 +1309,7 @@ public class FileSystemServiceImpl implements FileSystemService, ServiceCheckReq
   }
 
   private FileContentStream getContentStream(File file, String mimeType) {
-    return new FileContentStream(file, file.getName(), mimeType);
+    return new FileContentStream(file, file.getName(), mimeType, digestIndex);
   }
 
   @Override
@@ -18,11 +18,14 @@
 
 package com.tle.core.services.item;
 
+import com.tle.annotation.Nullable;
 import com.tle.beans.item.Item;
 import com.tle.beans.item.ItemIdKey;
 import com.tle.beans.item.ItemKey;
 import com.tle.beans.item.ItemSelect;
+import com.tle.common.searching.CursorSearchResults;
 import com.tle.common.searching.Search;
+import com.tle.common.searching.SearchCursor;
 import com.tle.common.searching.SearchResults;
 import com.tle.core.item.service.ItemService;
 import java.util.ArrayList;
@@ -98,6 +101,18 @@ public class StdFreetextResults<T extends FreetextResult> implements FreetextSea
     return getResults().get(index);
   }
 
+  /**
+   * @return The cursor for the following page when these are the results of a cursor search,
+   *     otherwise null
+   */
+  @Nullable
+  public SearchCursor getNextCursor() {
+    if (results instanceof CursorSearchResults) {
+      return ((CursorSearchResults<T>) results).getNextCursor();
+    }
+    return null;
+  }
+
   @Override
   public String getErrorMessage() {
     return null;
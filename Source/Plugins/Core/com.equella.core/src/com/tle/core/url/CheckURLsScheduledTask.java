@@ -18,9 +18,9 @@
 
 package com.tle.core.url;
 
+import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.collect.Multimap;
-import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.inject.Singleton;
 import com.tle.beans.Institution;
@@ -36,18 +36,26 @@ import com.tle.core.url.URLEvent.URLEventType;
 import com.tle.core.url.dao.URLCheckerDao;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
 import javax.inject.Inject;
+import javax.inject.Named;
 
 /** @author Nicholas Read */
 @Bind
 @Singleton
 public class CheckURLsScheduledTask implements ScheduledTask {
   private static final int MAX_CONCURRENT_CHECKS = 200;
+  private static final int UPDATE_BATCH_SIZE = 100;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("urlChecker.checksPerHost")
+  private int maxChecksPerHost = 2;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("urlChecker.hostDelayMillis")
+  private long hostDelayMillis = 500;
 
   @Inject private SchemaDataSourceService schemaDataSourceService;
   @Inject private URLCheckerDao dao;
@@ -78,50 +86,44 @@ public class CheckURLsScheduledTask implements ScheduledTask {
     }
   }
 
-  private void executeForInstitutions(Collection<Institution> insts)
-      throws InterruptedException, ExecutionException {
-    Iterator<ReferencedURL> bi = new ReferencedURLIterator();
-
-    // Asynchronously check a maximum number of URLs at any given time. As
-    // they complete, remove them from the working set and fill it back up
-    // with more.
-    Set<ListenableFuture<ReferencedURL>> workingset =
-        Sets.newHashSetWithExpectedSize(MAX_CONCURRENT_CHECKS);
-    while (bi.hasNext() || !workingset.isEmpty()) {
-      // Remove completed URLs.
-      for (Iterator<ListenableFuture<ReferencedURL>> iter = workingset.iterator();
-          iter.hasNext(); ) {
-        ListenableFuture<ReferencedURL> f = iter.next();
-        if (f.isDone()) {
-          iter.remove();
-
-          ReferencedURL rurl = f.get();
-          dao.updateWithTransaction(rurl);
-
-          // Send event if exactly at the warning or disabled level.
-          URLEventType eventType = null;
-          if (rurl.getTries() == policy.getTriesUntilWarning()) {
-            eventType = URLEventType.URL_WARNING;
-          } else if (rurl.getTries() == policy.getTriesUntilDisabled()) {
-            eventType = URLEventType.URL_DISABLED;
+  private void executeForInstitutions(final Collection<Institution> insts)
+      throws InterruptedException {
+    // Checks are started as others complete, a limited number at a time for each host so that a
+    // single site isn't swamped when many URLs point to it
+    URLCheckDispatcher dispatcher =
+        new URLCheckDispatcher(
+            MAX_CONCURRENT_CHECKS, maxChecksPerHost, hostDelayMillis, UPDATE_BATCH_SIZE);
+    dispatcher.run(
+        new ReferencedURLIterator(),
+        new Function<ReferencedURL, ListenableFuture<ReferencedURL>>() {
+          @Override
+          public ListenableFuture<ReferencedURL> apply(ReferencedURL rurl) {
+            return service.checkUrl(rurl);
           }
+        },
+        new URLCheckDispatcher.BatchHandler() {
+          @Override
+          public void handle(List<ReferencedURL> checked) {
+            dao.updateAllWithTransaction(checked);
 
-          if (eventType != null) {
-            // Send event to all institutions
-            eventService.publishApplicationEvent(insts, new URLEvent(eventType, rurl.getUrl()));
-          }
-        }
-      }
-
-      // Fill up the working set with maximum allowed.
-      while (bi.hasNext() && workingset.size() < MAX_CONCURRENT_CHECKS) {
-        workingset.add(service.checkUrl(bi.next()));
-      }
+            for (ReferencedURL rurl : checked) {
+              // Send event if exactly at the warning or disabled level.
+              URLEventType eventType = null;
+              if (rurl.getTries() == policy.getTriesUntilWarning()) {
+                eventType = URLEventType.URL_WARNING;
+              } else if (rurl.getTries() == policy.getTriesUntilDisabled()) {
+                eventType = URLEventType.URL_DISABLED;
+              }
 
-      // Now sleep for a couple of seconds before trying again, at least
-      // some URLs should already be complete.
-      Thread.sleep(TimeUnit.SECONDS.toMillis(2));
-    }
+              if (eventType != null) {
+                // Send event to all institutions
+                eventService.publishApplicationEvent(
+                    insts, new URLEvent(eventType, rurl.getUrl()));
+              }
+            }
+          }
+        });
+    dispatcher.logStatistics();
   }
 
   private class ReferencedURLIterator extends BatchingIterator<ReferencedURL> {
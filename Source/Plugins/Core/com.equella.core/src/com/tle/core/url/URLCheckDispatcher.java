@@ -0,0 +1,303 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.url;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.tle.annotation.NonNullByDefault;
+import com.tle.annotation.Nullable;
+import com.tle.beans.ReferencedURL;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Runs URL checks while limiting the number of checks in flight, both in total and for each host,
+ * and spacing out the checks made against each host. The dispatching thread sleeps until a check
+ * completes or a host becomes available again. Completed checks are handed back in batches so
+ * they can be saved together.
+ *
+ * <p>Not thread safe, a dispatcher is used by a single run of the checker.
+ */
+@NonNullByDefault
+@SuppressWarnings("nls")
+class URLCheckDispatcher {
+  private static final Log LOGGER = LogFactory.getLog(URLCheckDispatcher.class);
+
+  /** The maximum number of URLs read ahead of the checks, to find URLs for idle hosts */
+  private static final int MAX_BUFFERED = 1000;
+
+  private static final long IDLE_WAIT = TimeUnit.SECONDS.toMillis(1);
+
+  interface BatchHandler {
+    void handle(List<ReferencedURL> checked);
+  }
+
+  private final int maxChecks;
+  private final int maxHostChecks;
+  private final long hostDelay;
+  private final int batchSize;
+
+  private final Map<String, Host> hosts = Maps.newHashMap();
+  private final Set<Host> waiting = new LinkedHashSet<Host>();
+  private final BlockingQueue<Completed> completed = new LinkedBlockingQueue<Completed>();
+
+  private int inFlight;
+  private int buffered;
+  private long checkedCount;
+  private long startTime;
+  private long endTime;
+
+  /**
+   * @param maxChecks The maximum number of checks in flight
+   * @param maxHostChecks The maximum number of checks in flight for a single host
+   * @param hostDelay Milliseconds between starting two checks against the same host
+   * @param batchSize The number of checked URLs to hand to the {@link BatchHandler} at once
+   */
+  URLCheckDispatcher(int maxChecks, int maxHostChecks, long hostDelay, int batchSize) {
+    this.maxChecks = Math.max(1, maxChecks);
+    this.maxHostChecks = Math.max(1, maxHostChecks);
+    this.hostDelay = Math.max(0, hostDelay);
+    this.batchSize = Math.max(1, batchSize);
+  }
+
+  /**
+   * Checks all the URLs and returns once every check has completed and been handed to the handler.
+   *
+   * @param checker Starts the check of a URL. The future should not fail, a failed future means
+   *     the URL is not updated.
+   */
+  void run(
+      Iterator<ReferencedURL> urls,
+      Function<ReferencedURL, ListenableFuture<ReferencedURL>> checker,
+      BatchHandler handler)
+      throws InterruptedException {
+    startTime = System.nanoTime();
+    List<ReferencedURL> batch = Lists.newArrayListWithCapacity(batchSize);
+    while (urls.hasNext() || buffered > 0 || inFlight > 0) {
+      while (buffered < MAX_BUFFERED && urls.hasNext()) {
+        ReferencedURL rurl = urls.next();
+        Host host = getHost(rurl.getUrl());
+        host.pending.add(rurl);
+        waiting.add(host);
+        buffered++;
+      }
+
+      long wait = dispatch(checker);
+
+      Completed done = completed.poll(wait, TimeUnit.MILLISECONDS);
+      while (done != null) {
+        inFlight--;
+        done.host.finished(done.nanos);
+        checkedCount++;
+        if (done.result != null) {
+          batch.add(done.result);
+          if (batch.size() >= batchSize) {
+            handler.handle(batch);
+            batch = Lists.newArrayListWithCapacity(batchSize);
+          }
+        }
+        done = completed.poll();
+      }
+    }
+    if (!batch.isEmpty()) {
+      handler.handle(batch);
+    }
+    endTime = System.nanoTime();
+  }
+
+  /** @return Milliseconds to wait for a completed check before dispatching again */
+  private long dispatch(Function<ReferencedURL, ListenableFuture<ReferencedURL>> checker) {
+    long wait = IDLE_WAIT;
+    final long now = System.currentTimeMillis();
+    for (Iterator<Host> iter = waiting.iterator(); iter.hasNext() && inFlight < maxChecks; ) {
+      Host host = iter.next();
+      if (host.active >= maxHostChecks) {
+        continue;
+      }
+      if (host.nextStart > now) {
+        wait = Math.min(wait, host.nextStart - now);
+        continue;
+      }
+
+      start(host, host.pending.poll(), checker);
+      host.nextStart = now + hostDelay;
+      if (host.pending.isEmpty()) {
+        iter.remove();
+      } else if (hostDelay == 0) {
+        wait = 0;
+      } else {
+        wait = Math.min(wait, hostDelay);
+      }
+    }
+    return Math.max(1, wait);
+  }
+
+  private void start(
+      final Host host,
+      final ReferencedURL rurl,
+      Function<ReferencedURL, ListenableFuture<ReferencedURL>> checker) {
+    host.active++;
+    inFlight++;
+    buffered--;
+
+    final long started = System.nanoTime();
+    ListenableFuture<ReferencedURL> future;
+    try {
+      future = checker.apply(rurl);
+    } catch (RuntimeException e) {
+      future = Futures.immediateFailedFuture(e);
+    }
+    Futures.addCallback(
+        future,
+        new FutureCallback<ReferencedURL>() {
+          @Override
+          public void onSuccess(ReferencedURL result) {
+            completed.add(new Completed(host, result, System.nanoTime() - started));
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            LOGGER.warn("Error checking " + rurl.getUrl(), t);
+            completed.add(new Completed(host, null, System.nanoTime() - started));
+          }
+        },
+        MoreExecutors.directExecutor());
+  }
+
+  private Host getHost(String url) {
+    String name = "";
+    try {
+      String h = new URI(url).getHost();
+      if (h != null) {
+        name = h.toLowerCase(Locale.ENGLISH);
+      }
+    } catch (URISyntaxException e) {
+      // Checked (and failed) along with the others without a host
+    }
+
+    Host host = hosts.get(name);
+    if (host == null) {
+      host = new Host(name);
+      hosts.put(name, host);
+    }
+    return host;
+  }
+
+  long getCheckedCount() {
+    return checkedCount;
+  }
+
+  double getUrlsPerSecond() {
+    long end = endTime != 0 ? endTime : System.nanoTime();
+    double seconds = Math.max(1, end - startTime) / (double) TimeUnit.SECONDS.toNanos(1);
+    return checkedCount / seconds;
+  }
+
+  /** @return Mean milliseconds taken to check a URL, by host */
+  Map<String, Long> getHostLatencies() {
+    Map<String, Long> latencies = Maps.newHashMap();
+    for (Host host : hosts.values()) {
+      if (host.count > 0) {
+        latencies.put(host.name, TimeUnit.NANOSECONDS.toMillis(host.totalNanos / host.count));
+      }
+    }
+    return latencies;
+  }
+
+  void logStatistics() {
+    if (LOGGER.isInfoEnabled()) {
+      LOGGER.info(
+          "Checked "
+              + checkedCount
+              + " URLs on "
+              + hosts.size()
+              + " hosts at "
+              + String.format("%.1f", getUrlsPerSecond())
+              + " URLs per second");
+    }
+    if (LOGGER.isDebugEnabled()) {
+      for (Host host : hosts.values()) {
+        if (host.count > 0) {
+          LOGGER.debug(
+              "Host "
+                  + host.name
+                  + ": checks["
+                  + host.count
+                  + "] mean ms["
+                  + TimeUnit.NANOSECONDS.toMillis(host.totalNanos / host.count)
+                  + "] max ms["
+                  + TimeUnit.NANOSECONDS.toMillis(host.maxNanos)
+                  + "]");
+        }
+      }
+    }
+  }
+
+  private static class Host {
+    private final String name;
+    private final Deque<ReferencedURL> pending = new ArrayDeque<ReferencedURL>();
+    private int active;
+    private long nextStart;
+
+    private long count;
+    private long totalNanos;
+    private long maxNanos;
+
+    protected Host(String name) {
+      this.name = name;
+    }
+
+    protected void finished(long nanos) {
+      active--;
+      count++;
+      totalNanos += nanos;
+      maxNanos = Math.max(maxNanos, nanos);
+    }
+  }
+
+  private static class Completed {
+    private final Host host;
+    @Nullable private final ReferencedURL result;
+    private final long nanos;
+
+    protected Completed(Host host, @Nullable ReferencedURL result, long nanos) {
+      this.host = host;
+      this.result = result;
+      this.nanos = nanos;
+    }
+  }
+}
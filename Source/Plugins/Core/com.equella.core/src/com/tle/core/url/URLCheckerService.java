@@ -19,6 +19,7 @@
 package com.tle.core.url;
 
 import static java.net.HttpURLConnection.HTTP_MULT_CHOICE;
+import static java.net.HttpURLConnection.HTTP_NOT_MODIFIED;
 import static java.net.HttpURLConnection.HTTP_OK;
 import static java.net.HttpURLConnection.HTTP_PAYMENT_REQUIRED;
 import static java.net.HttpURLConnection.HTTP_UNAUTHORIZED;
@@ -56,6 +57,7 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.jboss.resteasy.util.DateUtil;
 
 @NonNullByDefault
 @Bind
@@ -252,6 +254,12 @@ public class URLCheckerService {
   /** @return second value will be true if it failed and needs trying with a GET request. */
   private ListenableFuture<Pair<ReferencedURL, Boolean>> checkUrl(
       final ReferencedURL rurl, final boolean head) {
+    // A URL that worked last time only needs to tell us it hasn't changed since
+    final boolean conditional =
+        head
+            && rurl.isSuccess()
+            && rurl.getLastChecked() != null
+            && rurl.getLastChecked().getTime() > 0;
     AsyncHandler<Pair<ReferencedURL, Boolean>> handler =
         new AsyncHandler<Pair<ReferencedURL, Boolean>>() {
           boolean retryWithGet = false;
@@ -273,6 +281,15 @@ public class URLCheckerService {
             // need to explicitly check for redirection codes here.
             // Retry with GET on anything other than 2xx
             // http://jira.pearsoncmg.com/jira/browse/EQ-561
+            if (conditional && code == HTTP_NOT_MODIFIED) {
+              if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Not modified " + url);
+              }
+              rurl.setLastChecked(new Date());
+              rurl.setMessage(null);
+              rurl.setTries(0);
+              return STATE.ABORT;
+            }
             if (head && (code < HTTP_OK || code >= HTTP_MULT_CHOICE)) {
               // Technically we should only need to look out for
               // HTTP_BAD_METHOD and retry with a GET, but apparently not
@@ -359,6 +376,9 @@ public class URLCheckerService {
       if (isURL(rurl.getUrl())) {
         LOGGER.debug("Valid URL: " + rurl.getUrl());
         requestBuilder = new RequestBuilder(head ? "HEAD" : "GET").setUrl(rurl.getUrl());
+        if (conditional) {
+          requestBuilder.addHeader("If-Modified-Since", DateUtil.formatDate(rurl.getLastChecked()));
+        }
       } else {
         LOGGER.debug("Invalid URL: " + rurl.getUrl());
         throw new IllegalArgumentException("Invalid URL");
@@ -28,4 +28,6 @@ public interface URLCheckerDao extends GenericDao<ReferencedURL, Long> {
   Collection<ReferencedURL> getRecheckingBatch(long startId, int batchSize);
 
   void updateWithTransaction(ReferencedURL rurl);
+
+  void updateAllWithTransaction(Collection<ReferencedURL> rurls);
 }
@@ -18,9 +18,14 @@
 
 package com.tle.core.usermanagement.standard;
 
-import static com.tle.plugins.ump.UserDirectoryUtils.makeCache;
-
 import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multimaps;
+import com.google.common.collect.SetMultimap;
 import com.tle.beans.ump.UserManagementSettings;
 import com.tle.beans.usermanagement.standard.LDAPSettings;
 import com.tle.common.Check;
@@ -39,10 +44,10 @@ import com.tle.plugins.ump.UserDirectoryUtils;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import javax.inject.Inject;
 import org.apache.log4j.Logger;
 
@@ -51,7 +56,29 @@ import org.apache.log4j.Logger;
 public class LDAPUserPlugin extends AbstractUserDirectory {
   private static final Logger LOGGER = Logger.getLogger(LDAPUserPlugin.class);
 
-  private final Cache<String, List<String>> initGroupsCache = makeCache();
+  /** The users with cached groups, keyed on each of the groups (including nested ones) */
+  private final SetMultimap<String, String> usersByGroup =
+      Multimaps.synchronizedSetMultimap(HashMultimap.<String, String>create());
+
+  private final Cache<String, List<String>> initGroupsCache =
+      CacheBuilder.newBuilder()
+          .expireAfterWrite(10, TimeUnit.MINUTES)
+          .maximumSize(5000)
+          .removalListener(
+              new RemovalListener<String, List<String>>() {
+                @Override
+                public void onRemoval(RemovalNotification<String, List<String>> notification) {
+                  // Not soft values, since a collected value would leave its user indexed
+                  // under its groups with no way of knowing which ones.
+                  List<String> groups = notification.getValue();
+                  if (groups != null) {
+                    for (String groupId : groups) {
+                      usersByGroup.remove(groupId, notification.getKey());
+                    }
+                  }
+                }
+              })
+          .build();
 
   @Inject private LDAPService ldapService;
   @Inject private EncryptionService encryptionService;
@@ -101,6 +128,9 @@ public class LDAPUserPlugin extends AbstractUserDirectory {
 
       cgs = Collections.unmodifiableList(cgs);
       initGroupsCache.put(userId, cgs);
+      for (String groupId : cgs) {
+        usersByGroup.put(groupId, userId);
+      }
     }
     state.getUsersGroups().addAll(cgs);
 
@@ -173,19 +203,16 @@ public class LDAPUserPlugin extends AbstractUserDirectory {
 
   @Override
   public void purgeFromCaches(String id) {
-    if (initGroupsCache.asMap().containsKey(id)) {
-      initGroupsCache.invalidate(id);
-    } else {
-      // in case user was deleted from a group
-      Iterator<Entry<String, List<String>>> it = initGroupsCache.asMap().entrySet().iterator();
-      while (it.hasNext() && initGroupsCache.size() > 0) {
-        Entry<String, List<String>> cacheValues = it.next();
-        for (String groupId : cacheValues.getValue()) {
-          if (groupId.equals(id)) {
-            initGroupsCache.invalidate(cacheValues.getKey());
-          }
-        }
-      }
+    initGroupsCache.invalidate(id);
+
+    // in case user was deleted from a group
+    Set<String> users;
+    synchronized (usersByGroup) {
+      users = ImmutableSet.copyOf(usersByGroup.get(id));
+    }
+    initGroupsCache.invalidateAll(users);
+    if (ldap != null) {
+      ldap.getGroupSearch().purgeFromCaches(id);
     }
   }
 }
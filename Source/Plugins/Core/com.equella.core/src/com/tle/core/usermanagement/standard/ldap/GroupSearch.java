@@ -50,6 +50,11 @@ public abstract class GroupSearch {
 
   public abstract GroupBean getParentGroupForGroup(DirContext ctx, String groupID);
 
+  /** Forgets anything cached about the group. */
+  public void purgeFromCaches(String groupID) {
+    // Nothing cached by default
+  }
+
   public List<GroupBean> getGroupsFromNames(DirContext ctx, Collection<Name> ldapgroupnames) {
     List<GroupBean> alist = new ArrayList<GroupBean>();
 
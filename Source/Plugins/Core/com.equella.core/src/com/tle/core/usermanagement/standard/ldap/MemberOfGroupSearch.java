@@ -18,7 +18,11 @@
 
 package com.tle.core.usermanagement.standard.ldap;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.tle.annotation.Nullable;
 import com.tle.common.Check;
 import com.tle.common.usermanagement.user.valuebean.GroupBean;
 import com.tle.common.usermanagement.user.valuebean.UserBean;
@@ -37,7 +41,9 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import javax.naming.Name;
 import javax.naming.NameParser;
 import javax.naming.NamingEnumeration;
@@ -53,12 +59,28 @@ import org.apache.commons.logging.LogFactory;
 public class MemberOfGroupSearch extends GroupSearch {
   private static final Log LOGGER = LogFactory.getLog(MemberOfGroupSearch.class);
 
+  /** The number of groups searched for as members of their parents in a single search */
+  private static final int MEMBERS_PER_SEARCH = 50;
+
   private final String memberField;
   private final String memberOfField;
   private final String memberUserField;
 
   private final String[] memberUserAttributes;
 
+  /**
+   * The groups seen when resolving the groups of users, keyed on full name. Shared between users so
+   * that the nesting above a group only has to be searched for once while it's cached.
+   */
+  private final Cache<Name, GroupNode> groupGraph =
+      CacheBuilder.newBuilder()
+          .expireAfterWrite(10, TimeUnit.MINUTES)
+          .maximumSize(5000)
+          .softValues()
+          .build();
+
+  private final Map<String, Name> namesById = Maps.newConcurrentMap();
+
   public MemberOfGroupSearch(
       String memberField, String memberOfField, String memberUserField, LDAP ldap) {
     super(ldap);
@@ -124,19 +146,24 @@ public class MemberOfGroupSearch extends GroupSearch {
           ldap.searchAllBases(
               ctx, getMemberFilter(getUserUid(res)), new SubgroupResultHitsCollector(), true);
 
-      // Add known groups, then collect all parents for all above results
-      Set<SubgroupResultHitsCollector.SubgroupResult> allGroups =
-          new HashSet<SubgroupResultHitsCollector.SubgroupResult>(immediateGroups);
+      Map<Name, GroupNode> allGroups = Maps.newLinkedHashMap();
+      List<Name> level = Lists.newArrayList();
       for (SubgroupResultHitsCollector.SubgroupResult sgr : immediateGroups) {
-        collectAllParentGroups(allGroups, ctx, sgr);
+        if (allGroups.put(sgr.name, cacheNode(sgr)) == null) {
+          level.add(sgr.name);
+        }
+      }
+
+      // Walk up the nesting one level at a time
+      while (!level.isEmpty()) {
+        level = collectParentGroups(ctx, level, allGroups);
       }
 
       // Convert to GroupBeans and return
       List<GroupBean> groupBeans = new ArrayList<GroupBean>(allGroups.size());
-      for (SubgroupResultHitsCollector.SubgroupResult sgr : allGroups) {
-        GroupBean gb = sgr.getGroupBean();
-        if (gb != null) {
-          groupBeans.add(gb);
+      for (GroupNode node : allGroups.values()) {
+        if (node.bean != null) {
+          groupBeans.add(node.bean);
         }
       }
       return groupBeans;
@@ -236,18 +263,115 @@ public class MemberOfGroupSearch extends GroupSearch {
     }
   }
 
-  private void collectAllParentGroups(
-      Set<SubgroupResultHitsCollector.SubgroupResult> results,
-      DirContext ctx,
-      SubgroupResultHitsCollector.SubgroupResult sgr) {
-    List<SubgroupResultHitsCollector.SubgroupResult> parents = sgr.getParentGroups();
-    if (parents != null) {
-      for (SubgroupResultHitsCollector.SubgroupResult parent : parents) {
-        if (parent != null && results.add(parent)) {
-          collectAllParentGroups(results, ctx, parent);
+  /**
+   * Finds the groups directly containing the given groups. Parents already in the group graph are
+   * taken from there, the remainder are found with one search for each chunk of groups.
+   *
+   * @return The parent groups that weren't already in {@code found}
+   */
+  private List<Name> collectParentGroups(
+      DirContext ctx, List<Name> groups, Map<Name, GroupNode> found) {
+    List<Name> next = Lists.newArrayList();
+    List<Name> unresolved = Lists.newArrayList();
+    Set<Name> missingParents = new HashSet<Name>();
+    for (Name group : groups) {
+      Set<Name> parents = found.get(group).parents;
+      boolean resolved = parents != null;
+      if (resolved) {
+        for (Name parent : parents) {
+          if (!found.containsKey(parent)) {
+            GroupNode node = groupGraph.getIfPresent(parent);
+            if (node != null) {
+              found.put(parent, node);
+              next.add(parent);
+            } else {
+              missingParents.add(parent);
+              resolved = false;
+            }
+          }
+        }
+      }
+      if (!resolved) {
+        unresolved.add(group);
+      }
+    }
+
+    for (List<Name> chunk : Lists.partition(unresolved, MEMBERS_PER_SEARCH)) {
+      OrFilter members = new OrFilter();
+      for (Name group : chunk) {
+        members.addFilter(new SingleFilter(memberField, group.toString()));
+      }
+      Filter filter =
+          new AndFilter(new SingleFilter(LDAP.OBJECTCLASS, ldap.getGroupObject()), members);
+      for (SubgroupResultHitsCollector.SubgroupResult sgr :
+          ldap.searchAllBases(ctx, filter, new SubgroupResultHitsCollector(), true)) {
+        missingParents.remove(sgr.name);
+        if (!found.containsKey(sgr.name)) {
+          found.put(sgr.name, cacheNode(sgr));
+          next.add(sgr.name);
         }
       }
     }
+
+    // memberOf can point outside of the search bases
+    for (Name parent : missingParents) {
+      if (!found.containsKey(parent)) {
+        SubgroupResultHitsCollector collector = new SubgroupResultHitsCollector();
+        collector.setup(ctx, ldap);
+        found.put(
+            parent,
+            cacheNode(
+                collector
+                .new SubgroupResult(
+                    parent, ldap.getAttributes(ctx, parent, collector.getReturnAttributes()))));
+        next.add(parent);
+      }
+    }
+    return next;
+  }
+
+  private GroupNode cacheNode(SubgroupResultHitsCollector.SubgroupResult sgr) {
+    Set<Name> parents = null;
+    if (!Check.isEmpty(memberOfField)) {
+      parents = new HashSet<Name>();
+      Attribute attribute = sgr.attributes.get(memberOfField);
+      if (attribute != null) {
+        try {
+          NamingEnumeration<?> atts = attribute.getAll();
+          while (atts.hasMoreElements()) {
+            parents.add(LDAP.parse(atts.nextElement().toString()));
+          }
+        } catch (NamingException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }
+
+    GroupNode node = new GroupNode(sgr.getGroupBean(), parents);
+    groupGraph.put(sgr.name, node);
+    if (node.bean != null) {
+      namesById.put(node.bean.getUniqueID(), sgr.name);
+    }
+    return node;
+  }
+
+  @Override
+  public void purgeFromCaches(String groupID) {
+    Name name = namesById.remove(groupID);
+    if (name != null) {
+      groupGraph.invalidate(name);
+    }
+  }
+
+  /** A group and the groups that directly contain it, if known. */
+  private static class GroupNode {
+    @Nullable private final GroupBean bean;
+    @Nullable private final Set<Name> parents;
+
+    protected GroupNode(@Nullable GroupBean bean, @Nullable Set<Name> parents) {
+      this.bean = bean;
+      this.parents = parents == null ? null : Collections.unmodifiableSet(parents);
+    }
   }
 
   private Collection<Name> getLDAPGroupNames(DirContext ctx, Attributes useratt) {
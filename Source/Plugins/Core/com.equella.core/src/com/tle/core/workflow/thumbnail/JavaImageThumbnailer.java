@@ -0,0 +1,246 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.workflow.thumbnail;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import com.tle.annotation.Nullable;
+import com.tle.core.guice.Bind;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Set;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.inject.Singleton;
+import org.apache.log4j.Logger;
+
+/**
+ * Produces the gallery preview, gallery thumbnail and standard thumbnail of common web image
+ * formats from a single in-JVM decode, rather than forking ImageMagick for each size (and again to
+ * identify the image). The sizing mirrors the ImageMagick options used by {@code ThumbingCallable}
+ * and {@code ImageMagickService.generateStandardThumbnail}. Anything that can't be decoded here
+ * (e.g. CMYK JPEGs or very large images) is left to ImageMagick.
+ */
+@Bind
+@Singleton
+@SuppressWarnings("nls")
+public class JavaImageThumbnailer {
+  private static final Logger LOGGER = Logger.getLogger(JavaImageThumbnailer.class);
+
+  private static final Set<String> MIME_TYPES =
+      ImmutableSet.of("image/jpeg", "image/pjpeg", "image/png", "image/gif");
+
+  private static final int PREVIEW_SIZE = 500;
+  private static final int GALLERY_THUMB_SIZE = 135;
+  private static final int THUMB_WIDTH = 88;
+  private static final int THUMB_HEIGHT = 66;
+  private static final float JPEG_QUALITY = 0.9f;
+  // ImageMagick's blank check thresholds at 99%
+  private static final int BLANK_THRESHOLD = 253;
+
+  @Inject(optional = true)
+  @Named("thumbnailing.inMemory.enabled")
+  private boolean enabled = true;
+
+  @Inject(optional = true)
+  @Named("thumbnailing.inMemory.maxPixels")
+  private long maxPixels = 40000000L;
+
+  public boolean supports(String mimeType) {
+    return enabled && MIME_TYPES.contains(mimeType);
+  }
+
+  /**
+   * Writes each of the non-null destinations from a single decode of the source. Thumbnails which
+   * turn out to be blank (white) are not written.
+   *
+   * @return false if the source couldn't be decoded, in which case nothing has been written
+   */
+  public boolean generateThumbnails(
+      File src, @Nullable File preview, @Nullable File galleryThumb, @Nullable File thumb)
+      throws IOException {
+    final BufferedImage image = read(src);
+    if (image == null) {
+      return false;
+    }
+
+    BufferedImage previewImage = image;
+    if (image.getWidth() > PREVIEW_SIZE || image.getHeight() > PREVIEW_SIZE) {
+      previewImage = fit(image, PREVIEW_SIZE, PREVIEW_SIZE);
+    }
+    if (preview != null) {
+      write(flatten(previewImage), preview);
+    }
+    if (galleryThumb != null) {
+      write(flatten(fit(previewImage, GALLERY_THUMB_SIZE, GALLERY_THUMB_SIZE)), galleryThumb);
+    }
+    if (thumb != null) {
+      write(cover(image, THUMB_WIDTH, THUMB_HEIGHT), thumb);
+    }
+    return true;
+  }
+
+  @Nullable
+  private BufferedImage read(File src) throws IOException {
+    try (ImageInputStream in = ImageIO.createImageInputStream(src)) {
+      if (in == null) {
+        return null;
+      }
+      final Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+      if (!readers.hasNext()) {
+        return null;
+      }
+      final ImageReader reader = readers.next();
+      try {
+        reader.setInput(in, true, true);
+        if ((long) reader.getWidth(0) * reader.getHeight(0) > maxPixels) {
+          LOGGER.debug("Leaving " + src.getName() + " to ImageMagick as it is too large");
+          return null;
+        }
+        return reader.read(0);
+      } catch (IOException | RuntimeException e) {
+        LOGGER.debug("Leaving " + src.getName() + " to ImageMagick: " + e.getMessage());
+        return null;
+      } finally {
+        reader.dispose();
+      }
+    }
+  }
+
+  /** Shrinks the image to fit in the box, keeping the aspect ratio. Equivalent to WxH&gt; */
+  private BufferedImage fit(BufferedImage image, int width, int height) {
+    final double scale =
+        Math.min((double) width / image.getWidth(), (double) height / image.getHeight());
+    if (scale >= 1) {
+      return image;
+    }
+    return scale(
+        image,
+        Math.max(1, (int) Math.round(image.getWidth() * scale)),
+        Math.max(1, (int) Math.round(image.getHeight() * scale)));
+  }
+
+  /**
+   * Scales the image to cover the box, then crops it to the box about the centre on a white
+   * background. Images smaller than the box are centred without scaling.
+   */
+  private BufferedImage cover(BufferedImage image, int width, int height) {
+    BufferedImage scaled = image;
+    if (image.getWidth() > width || image.getHeight() > height) {
+      final double scale =
+          Math.max((double) width / image.getWidth(), (double) height / image.getHeight());
+      scaled =
+          scale(
+              image,
+              Math.max(width, (int) Math.round(image.getWidth() * scale)),
+              Math.max(height, (int) Math.round(image.getHeight() * scale)));
+    }
+    final BufferedImage canvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    final Graphics2D g = canvas.createGraphics();
+    try {
+      g.setColor(Color.WHITE);
+      g.fillRect(0, 0, width, height);
+      g.drawImage(
+          scaled, (width - scaled.getWidth()) / 2, (height - scaled.getHeight()) / 2, null);
+    } finally {
+      g.dispose();
+    }
+    return canvas;
+  }
+
+  /** Scales in halving steps, which gives a much better result than a single bilinear pass. */
+  private BufferedImage scale(BufferedImage image, int width, int height) {
+    BufferedImage current = image;
+    int w = image.getWidth();
+    int h = image.getHeight();
+    do {
+      w = Math.max(width, w / 2);
+      h = Math.max(height, h / 2);
+      final BufferedImage next = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+      final Graphics2D g = next.createGraphics();
+      try {
+        g.setRenderingHint(
+            RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.drawImage(current, 0, 0, w, h, null);
+      } finally {
+        g.dispose();
+      }
+      current = next;
+    } while (w != width || h != height);
+    return current;
+  }
+
+  /** JPEGs can't hold transparency, so draw on to white. */
+  private BufferedImage flatten(BufferedImage image) {
+    final BufferedImage rgb =
+        new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+    final Graphics2D g = rgb.createGraphics();
+    try {
+      g.setColor(Color.WHITE);
+      g.fillRect(0, 0, image.getWidth(), image.getHeight());
+      g.drawImage(image, 0, 0, null);
+    } finally {
+      g.dispose();
+    }
+    return rgb;
+  }
+
+  private void write(BufferedImage image, File dest) throws IOException {
+    if (isBlank(image)) {
+      LOGGER.debug("Not writing presumed blank thumbnail " + dest.getName());
+      return;
+    }
+    final ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+    try (ImageOutputStream out = ImageIO.createImageOutputStream(dest)) {
+      final ImageWriteParam param = writer.getDefaultWriteParam();
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      param.setCompressionQuality(JPEG_QUALITY);
+      writer.setOutput(out);
+      writer.write(null, new IIOImage(image, null, null), param);
+    } finally {
+      writer.dispose();
+    }
+  }
+
+  private boolean isBlank(BufferedImage image) {
+    for (int y = 0; y < image.getHeight(); y++) {
+      for (int x = 0; x < image.getWidth(); x++) {
+        final int rgb = image.getRGB(x, y);
+        if (((rgb >> 16) & 0xff) < BLANK_THRESHOLD
+            || ((rgb >> 8) & 0xff) < BLANK_THRESHOLD
+            || (rgb & 0xff) < BLANK_THRESHOLD) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+}
@@ -36,6 +36,7 @@ import com.tle.core.item.service.ItemFileService;
 import com.tle.core.mimetypes.MimeTypeService;
 import com.tle.core.plugins.PluginTracker;
 import com.tle.core.services.FileSystemService;
+import com.tle.core.workflow.thumbnail.JavaImageThumbnailer;
 import com.tle.core.workflow.thumbnail.ThumbnailGenerator;
 import com.tle.core.workflow.thumbnail.ThumbnailQueueFile;
 import com.tle.core.workflow.thumbnail.ThumbnailType;
@@ -63,6 +64,7 @@ public class ThumbingCallable implements Callable<ThumbingCallableResult> {
   @Inject private MimeTypeService mimeTypeService;
   @Inject private StagingService stagingService;
   @Inject private PluginTracker<ThumbnailGenerator> thumbnailTracker;
+  @Inject private JavaImageThumbnailer javaThumbnailer;
 
   private final Institution institution;
   private final String requestUuid;
@@ -141,33 +143,19 @@ public class ThumbingCallable implements Callable<ThumbingCallableResult> {
         throw new InterruptedException();
       }
       final int flags = thumbnailRequest.getThumbnailTypes();
-      if (ThumbnailType.TYPE_GALLERY_PREVIEW.enabled(flags)) {
-        final Dimension dimensions =
-            thumbGen.getImageDimensions(
-                fileSystemService.getExternalFile(thumbQueueFile, filename));
-        final ThumbnailOptions options;
-        if (dimensions == null || (dimensions.getHeight() > 500 || dimensions.getWidth() > 500)) {
-          options = buildGalleryOptions(500, 500);
-        } else {
-          options = new ThumbnailOptions();
-          options.setNoSize(true);
-        }
-        genThumb(thumbQueueFile, result, galleryPreview, options, filename);
-      }
-
-      if (Thread.interrupted()) {
-        throw new InterruptedException();
-      }
-      if (ThumbnailType.TYPE_GALLERY_THUMB.enabled(flags)) {
-        final ThumbnailOptions options = buildGalleryOptions(135, 135);
-        genThumb(thumbQueueFile, result, galleryThumb, options, galleryPreview, filename);
-      }
-
-      if (Thread.interrupted()) {
-        throw new InterruptedException();
-      }
-      if (ThumbnailType.TYPE_STANDARD_THUMB.enabled(flags)) {
-        genThumb(thumbQueueFile, result, thumbFile, null, galleryPreview, galleryThumb, filename);
+      if (generateInMemory(
+          thumbQueueFile, result, flags, filename, galleryPreview, galleryThumb, thumbFile)) {
+        LOGGER.debug("Generated thumbnails in memory for " + filename);
+      } else {
+        genThumbs(
+            thumbQueueFile,
+            result,
+            flags,
+            thumbGen,
+            filename,
+            galleryPreview,
+            galleryThumb,
+            thumbFile);
       }
 
       // Thumbs finished. Copy the produced ones to the destination
@@ -214,6 +202,102 @@ public class ThumbingCallable implements Callable<ThumbingCallableResult> {
     return result;
   }
 
+  /**
+   * Decodes the source once and produces all the requested thumbnails from it, if the source is
+   * an image that can be handled in memory.
+   *
+   * @return false if the thumbnails need to be generated by the thumbnail generator instead
+   */
+  private boolean generateInMemory(
+      ThumbnailQueueFile thumbQueueFile,
+      ThumbingCallableResult result,
+      int flags,
+      String filename,
+      String galleryPreview,
+      String galleryThumb,
+      String thumbFile)
+      throws IOException {
+    if (!javaThumbnailer.supports(mimeTypeService.getMimeTypeForFilename(filename))) {
+      return false;
+    }
+    final File previewDest =
+        getDestination(thumbQueueFile, galleryPreview, ThumbnailType.TYPE_GALLERY_PREVIEW, flags);
+    final File galleryThumbDest =
+        getDestination(thumbQueueFile, galleryThumb, ThumbnailType.TYPE_GALLERY_THUMB, flags);
+    final File thumbDest =
+        getDestination(thumbQueueFile, thumbFile, ThumbnailType.TYPE_STANDARD_THUMB, flags);
+    if (!javaThumbnailer.generateThumbnails(
+        fileSystemService.getExternalFileForReading(thumbQueueFile, filename),
+        previewDest,
+        galleryThumbDest,
+        thumbDest)) {
+      return false;
+    }
+    addIfBuilt(result, galleryPreview, previewDest);
+    addIfBuilt(result, galleryThumb, galleryThumbDest);
+    addIfBuilt(result, thumbFile, thumbDest);
+    return true;
+  }
+
+  @Nullable
+  private File getDestination(
+      ThumbnailQueueFile thumbQueueFile, String destinationFilename, ThumbnailType type, int flags)
+      throws IOException {
+    if (!type.enabled(flags)) {
+      return null;
+    }
+    final File dstFile = fileSystemService.getExternalFile(thumbQueueFile, destinationFilename);
+    deleteExistingFile(thumbQueueFile, dstFile);
+    return dstFile;
+  }
+
+  private void addIfBuilt(
+      ThumbingCallableResult result, String destinationFilename, @Nullable File dstFile) {
+    if (dstFile != null && dstFile.exists()) {
+      result.addThumbnail(destinationFilename);
+    }
+  }
+
+  private void genThumbs(
+      ThumbnailQueueFile thumbQueueFile,
+      ThumbingCallableResult result,
+      int flags,
+      ThumbnailGenerator thumbGen,
+      String filename,
+      String galleryPreview,
+      String galleryThumb,
+      String thumbFile)
+      throws Exception {
+    if (ThumbnailType.TYPE_GALLERY_PREVIEW.enabled(flags)) {
+      final Dimension dimensions =
+          thumbGen.getImageDimensions(
+              fileSystemService.getExternalFileForReading(thumbQueueFile, filename));
+      final ThumbnailOptions options;
+      if (dimensions == null || (dimensions.getHeight() > 500 || dimensions.getWidth() > 500)) {
+        options = buildGalleryOptions(500, 500);
+      } else {
+        options = new ThumbnailOptions();
+        options.setNoSize(true);
+      }
+      genThumb(thumbQueueFile, result, galleryPreview, options, filename);
+    }
+
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+    if (ThumbnailType.TYPE_GALLERY_THUMB.enabled(flags)) {
+      final ThumbnailOptions options = buildGalleryOptions(135, 135);
+      genThumb(thumbQueueFile, result, galleryThumb, options, galleryPreview, filename);
+    }
+
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+    if (ThumbnailType.TYPE_STANDARD_THUMB.enabled(flags)) {
+      genThumb(thumbQueueFile, result, thumbFile, null, galleryPreview, galleryThumb, filename);
+    }
+  }
+
   /**
    * @param result
    * @param thumbGen
@@ -238,10 +322,12 @@ public class ThumbingCallable implements Callable<ThumbingCallableResult> {
         final ThumbnailGenerator thumbGen = getThumbnailGenerator(source);
         if (options == null) {
           thumbGen.generateThumbnail(
-              fileSystemService.getExternalFile(thumbQueueFile, source), dstFile);
+              fileSystemService.getExternalFileForReading(thumbQueueFile, source), dstFile);
         } else {
           thumbGen.generateThumbnailAdvanced(
-              fileSystemService.getExternalFile(thumbQueueFile, source), dstFile, options);
+              fileSystemService.getExternalFileForReading(thumbQueueFile, source),
+              dstFile,
+              options);
         }
 
         if (dstFile.exists()) {
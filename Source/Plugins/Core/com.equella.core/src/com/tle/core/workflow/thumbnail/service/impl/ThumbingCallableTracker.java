@@ -19,28 +19,40 @@
 package com.tle.core.workflow.thumbnail.service.impl;
 
 import com.google.inject.assistedinject.Assisted;
+import com.google.inject.name.Named;
 import com.tle.beans.Institution;
 import com.tle.beans.item.ItemId;
-import com.tle.common.BlockingThreadPoolExecutor;
 import com.tle.common.NamedThreadFactory;
 import com.tle.core.guice.Bind;
 import com.tle.core.guice.BindFactory;
 import com.tle.core.institution.RunAsInstitution;
 import com.tle.core.workflow.thumbnail.service.ThumbnailRequestService;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
-import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import org.apache.log4j.Logger;
 
-/** @author Aaron */
+/**
+ * Runs thumbnail requests on a fixed number of threads. Requests for files in staging (usually a
+ * user waiting on them in a wizard) are run ahead of everything else, such as bulk imports and
+ * re-thumbnailing, which have to wait for a free slot before they can be queued. Only a limited
+ * number of staging requests can be ahead at once, so bulk uploads into staging through REST or
+ * SOAP are queued like any other bulk work once those are taken.
+ *
+ * @author Aaron
+ */
 @SuppressWarnings("nls")
 @Bind
 @Singleton
@@ -51,28 +63,41 @@ import org.apache.log4j.Logger;
   @Inject private ThumbingCallableFactory callableFactory;
   @Inject private RunAsInstitution runAs;
 
-  private CompletionService<ThumbingCallableResult> completionService;
+  @com.google.inject.Inject(optional = true)
+  @Named("thumbnailing.threads")
+  private int threads = 2;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("thumbnailing.queueSize")
+  private int queueSize = 2;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("thumbnailing.interactiveQueueSize")
+  private int interactiveQueueSize = 10;
+
+  private final BlockingQueue<ThumbingTask> completed = new LinkedBlockingQueue<ThumbingTask>();
+  private final AtomicLong sequence = new AtomicLong();
+  private final AtomicLong requestsCompleted = new AtomicLong();
+  private final AtomicLong thumbnailsBuilt = new AtomicLong();
+  private final AtomicLong busyNanos = new AtomicLong();
+  private ThreadPoolExecutor executor;
+  private Semaphore bulkSlots;
+  private Semaphore interactiveSlots;
 
   @PostConstruct
   public void init() {
-    final ThreadPoolExecutor executor =
-        new BlockingThreadPoolExecutor(
-            2,
-            2,
+    final int poolSize = Math.max(1, threads);
+    executor =
+        new ThreadPoolExecutor(
+            poolSize,
+            poolSize,
             5,
             TimeUnit.MINUTES,
-            2,
-            TimeUnit.MINUTES,
-            new NamedThreadFactory("ThumbnailServiceExecutor"),
-            new Callable<Boolean>() {
-              @Override
-              public Boolean call() {
-                // Wait forever
-                LOGGER.trace("Waited 2 minutes to queue a thumb job, waiting again.");
-                return true;
-              }
-            });
-    completionService = new ExecutorCompletionService<ThumbingCallableResult>(executor);
+            new PriorityBlockingQueue<Runnable>(),
+            new NamedThreadFactory("ThumbnailServiceExecutor"));
+    executor.allowCoreThreadTimeOut(true);
+    bulkSlots = new Semaphore(poolSize + Math.max(0, queueSize));
+    interactiveSlots = new Semaphore(Math.max(0, interactiveQueueSize));
 
     new Thread() {
       @Override
@@ -87,20 +112,52 @@ import org.apache.log4j.Logger;
       Institution institution, String requestUuid, ItemId itemId, String serialHandle) {
     final ThumbingCallable callable =
         callableFactory.getRunnable(institution, requestUuid, itemId, serialHandle);
-    final Future<ThumbingCallableResult> future = completionService.submit(callable);
-    return future;
+    final boolean interactive =
+        serialHandle.startsWith("staging:") && interactiveSlots.tryAcquire();
+    if (!interactive) {
+      try {
+        while (!bulkSlots.tryAcquire(2, TimeUnit.MINUTES)) {
+          LOGGER.trace("Waited 2 minutes to queue a thumb job, waiting again.");
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("Interrupted waiting to queue thumbnail request", e);
+      }
+    }
+    final ThumbingTask task = new ThumbingTask(callable, interactive, sequence.incrementAndGet());
+    executor.execute(task);
+    return task;
+  }
+
+  /** @return Thumbnails built per second of thumbnailing thread time */
+  public double getThumbnailsPerSecond() {
+    final long nanos = busyNanos.get();
+    return nanos == 0 ? 0 : thumbnailsBuilt.get() / (nanos / 1000000000.0);
+  }
+
+  public long getRequestsCompleted() {
+    return requestsCompleted.get();
+  }
+
+  public long getThumbnailsBuilt() {
+    return thumbnailsBuilt.get();
+  }
+
+  public int getQueueLength() {
+    return executor.getQueue().size();
   }
 
   public void watchCompleted() {
     while (true) {
       try {
-        final Future<ThumbingCallableResult> future = completionService.take();
+        final ThumbingTask future = completed.take();
         String thumbnailRequestUuid = null;
         Institution institution = null;
         try {
           final ThumbingCallableResult taskInfo = future.get();
           institution = taskInfo.getInstitution();
           thumbnailRequestUuid = taskInfo.getRequestUuid();
+          recordCompleted(future, taskInfo);
         } catch (CancellationException cancelled) {
           LOGGER.debug("Thread cancelled");
         } catch (ExecutionException e) {
@@ -127,6 +184,78 @@ import org.apache.log4j.Logger;
     }
   }
 
+  private void recordCompleted(ThumbingTask task, ThumbingCallableResult taskInfo) {
+    final long requests = requestsCompleted.incrementAndGet();
+    thumbnailsBuilt.addAndGet(taskInfo.getBuiltThumbnails().size());
+    busyNanos.addAndGet(task.runNanos);
+    if (LOGGER.isDebugEnabled() && requests % 100 == 0) {
+      LOGGER.debug(
+          "Completed "
+              + requests
+              + " thumbnail requests at "
+              + String.format("%.1f", getThumbnailsPerSecond())
+              + " thumbnails/s per thread, "
+              + getQueueLength()
+              + " queued");
+    }
+  }
+
+  /**
+   * Orders interactive requests ahead of bulk ones, and otherwise first come first served. Hands
+   * itself to the finisher thread once done.
+   */
+  private class ThumbingTask extends FutureTask<ThumbingCallableResult>
+      implements Comparable<ThumbingTask> {
+    private final boolean interactive;
+    private final long order;
+    private volatile long startNanos;
+    private volatile long runNanos;
+
+    protected ThumbingTask(ThumbingCallable callable, boolean interactive, long order) {
+      super(callable);
+      this.interactive = interactive;
+      this.order = order;
+    }
+
+    @Override
+    public void run() {
+      startNanos = System.nanoTime();
+      super.run();
+    }
+
+    // The run time has to be known before the result is set, as that hands the task to the
+    // finisher thread via done()
+    @Override
+    protected void set(ThumbingCallableResult result) {
+      runNanos = System.nanoTime() - startNanos;
+      super.set(result);
+    }
+
+    @Override
+    protected void setException(Throwable t) {
+      runNanos = System.nanoTime() - startNanos;
+      super.setException(t);
+    }
+
+    @Override
+    protected void done() {
+      if (interactive) {
+        interactiveSlots.release();
+      } else {
+        bulkSlots.release();
+      }
+      completed.add(this);
+    }
+
+    @Override
+    public int compareTo(ThumbingTask other) {
+      if (interactive != other.interactive) {
+        return interactive ? -1 : 1;
+      }
+      return Long.compare(order, other.order);
+    }
+  }
+
   @BindFactory
   public interface ThumbingCallableFactory {
     ThumbingCallable getRunnable(
@@ -22,6 +22,7 @@ import com.google.common.collect.Lists;
 import com.google.inject.Provider;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
+import com.google.inject.name.Named;
 import com.tle.beans.Institution;
 import com.tle.beans.item.ItemIdKey;
 import com.tle.common.Check;
@@ -38,11 +39,13 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
 import java.util.Stack;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.inject.Inject;
 import org.apache.log4j.Logger;
 
@@ -53,12 +56,8 @@ public class BackgroundIndexerImpl implements BackgroundIndexer {
 
   private static final Logger LOGGER = Logger.getLogger(BackgroundIndexerImpl.class);
 
-  private static final int MAXTHREADS = 4;
-  private static final int REAL_MAXTHREADS = MAXTHREADS * 2;
-  private static final int MAXBATCH = 50;
-
-  private static final long WAITTIME = TimeUnit.SECONDS.toMillis(2);
   private static final long CHECKTIME = TimeUnit.SECONDS.toMillis(15);
+  private static final long OVERDUE_CHECKTIME = TimeUnit.SECONDS.toMillis(1);
   private static final long INTERRUPT_MILLIS = TimeUnit.MINUTES.toMillis(2);
 
   @Inject private IndexedItemFactory indexedItemFactory;
@@ -66,6 +65,28 @@ public class BackgroundIndexerImpl implements BackgroundIndexer {
   @Inject private Provider<IndexerThread> indexerThreadProvider;
   @Inject private FreetextIndex freetextIndex;
 
+  /**
+   * The number of items extracted concurrently. When there is a backlog of waiting items (or
+   * items are overdue) this grows up to {@link #maxThreads}.
+   */
+  @com.google.inject.Inject(optional = true)
+  @Named("freetext.indexer.threads")
+  private int baseThreads = 4;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("freetext.indexer.maxThreads")
+  private int maxThreads = Math.max(8, Runtime.getRuntime().availableProcessors());
+
+  /** Items are added to the index once this many bytes of documents are ready */
+  @com.google.inject.Inject(optional = true)
+  @Named("freetext.indexer.batchBytes")
+  private long batchBytes = 16L * 1024 * 1024;
+
+  /** ...or this many items, e.g. when they are all deletions */
+  @com.google.inject.Inject(optional = true)
+  @Named("freetext.indexer.batchSize")
+  private int maxBatch = 500;
+
   private Object listLock = new Object();
   private Object threadingLock = new Object();
 
@@ -84,6 +105,11 @@ public class BackgroundIndexerImpl implements BackgroundIndexer {
 
   private int indexerThreads;
   private long nextCheck;
+  private long indexedListBytes;
+
+  private final StageStats prepareStats = new StageStats("prepare");
+  private final StageStats extractStats = new StageStats("extract");
+  private final StageStats addStats = new StageStats("add");
 
   private int docsDone;
   private int docsDoneSinceLast;
@@ -118,10 +144,11 @@ public class BackgroundIndexerImpl implements BackgroundIndexer {
         wakeup = false;
         boolean wait = processEvent();
         if (wait && !wakeup) {
+          long waitTime = getWaitTime(System.currentTimeMillis());
           try {
             synchronized (this) {
-              if (!wakeup) {
-                wait(WAITTIME);
+              if (!wakeup && !dead) {
+                wait(waitTime);
               }
             }
           } catch (InterruptedException e) {
@@ -150,6 +177,49 @@ public class BackgroundIndexerImpl implements BackgroundIndexer {
     return wait;
   }
 
+  /**
+   * Works out how long the event loop can sleep for, rather than polling. Anything that queues or
+   * finishes an item wakes the loop up, so it only needs to wake for the next deadline (of an
+   * item or the status check). Returns 0, i.e. wait until woken, when there is nothing to do.
+   */
+  private long getWaitTime(long now) {
+    long next = Long.MAX_VALUE;
+    boolean busy;
+    synchronized (listLock) {
+      busy = !waitingList.isEmpty() || !indexedList.isEmpty();
+      if (!waitingList.isEmpty()) {
+        next = earliest(next, waitingList.element().getExpectedReturnTime(), now);
+      }
+      if (!indexedList.isEmpty()) {
+        next = earliest(next, indexedList.element().getExpectedReturnTime(), now);
+      }
+    }
+    synchronized (threadingLock) {
+      busy |= indexerThreads > 0;
+      for (IndexerThread thread : inuseThreads) {
+        IndexedItem indexedItem = thread.getIndexedItem();
+        if (indexedItem != null) {
+          long deadline = indexedItem.getExpectedReturnTime();
+          if (deadline <= now && !indexedItem.isOnIndexList()) {
+            // Overdue, so keep checking for it to be "fast" indexed (see checkSlowIndexes)
+            next = Math.min(next, now + OVERDUE_CHECKTIME);
+          } else {
+            next = earliest(next, deadline, now);
+          }
+        }
+      }
+    }
+    if (busy) {
+      next = earliest(next, nextCheck, now);
+    }
+    return next == Long.MAX_VALUE ? 0 : Math.max(1, next - now);
+  }
+
+  /** Deadlines that have already passed are ignored, they're dealt with when something changes */
+  private static long earliest(long current, long deadline, long now) {
+    return deadline > now && deadline < current ? deadline : current;
+  }
+
   @Override
   public void synchronizeFull(final Collection<Institution> institutions) {
     schemaService.executeWithSchema(
@@ -198,22 +268,25 @@ public class BackgroundIndexerImpl implements BackgroundIndexer {
         return true;
       }
       boolean overdue = now >= indexedList.element().getExpectedReturnTime();
-      if (indexedList.size() >= MAXBATCH || indexerThreads == 0 || overdue) {
+      boolean full = indexedList.size() >= maxBatch || indexedListBytes >= batchBytes;
+      if (full || indexerThreads == 0 || overdue) {
         int num = 0;
-        if (overdue) {
-          for (IndexedItem indItem : indexedList) {
-            if (now < indItem.getExpectedReturnTime()) {
-              break;
-            }
-            num++;
+        long bytes = 0;
+        for (IndexedItem indItem : indexedList) {
+          if (num > 0
+              && (overdue
+                  ? now < indItem.getExpectedReturnTime()
+                  : num >= maxBatch || bytes >= batchBytes)) {
+            break;
           }
-        } else {
-          num = Math.min(MAXBATCH, indexedList.size());
+          bytes += indItem.getDocumentSize();
+          num++;
         }
 
         List<IndexedItem> indexBatch = indexedList.subList(0, num);
         for (IndexedItem item : indexBatch) {
           item.setOnIndexList(false);
+          indexedListBytes -= item.getDocumentSize();
         }
         batch = Lists.newArrayList(indexBatch);
         indexBatch.clear();
@@ -222,17 +295,23 @@ public class BackgroundIndexerImpl implements BackgroundIndexer {
       }
     }
 
+    Map<String, Long> generations = Collections.emptyMap();
+    long start = System.nanoTime();
     try {
       LOGGER.info("Indexing batch of " + batch.size() + " items");
-      freetextIndex.indexBatch(batch);
+      generations = freetextIndex.indexBatch(batch);
     } catch (Exception e) {
       LOGGER.error("Serious Error indexing a batch", e);
     }
+    addStats.record(batch.size(), System.nanoTime() - start);
     synchronized (listLock) {
       for (IndexedItem indexedItem : batch) {
         if (indexedItem.isFinishedAllIndexing()) {
           indexingMap.remove(indexedItem.getId());
         }
+        if (indexedItem.isNewSearcherRequired()) {
+          indexedItem.setSearchGenerations(generations);
+        }
         indexedItem.setIndexed(true);
       }
       return false;
@@ -244,8 +323,9 @@ public class BackgroundIndexerImpl implements BackgroundIndexer {
     List<IndexedItem> batch = null;
     synchronized (listLock) {
       if (!waitingList.isEmpty()
-          && indexerThreads < REAL_MAXTHREADS
-          && (indexerThreads < MAXTHREADS
+          && indexerThreads < maxThreads
+          && (indexerThreads < baseThreads
+              || waitingList.size() > indexerThreads * BATCH_PREPARE
               || now >= waitingList.element().getExpectedReturnTime())) {
         item = waitingList.get(0);
         if (!item.isPrepared()) {
@@ -268,7 +348,11 @@ public class BackgroundIndexerImpl implements BackgroundIndexer {
       if (item.isNoLongerCurrent()) {
         return false;
       }
-      waitingList.remove(item);
+      if (waitingList.peek() == item) {
+        waitingList.removeFirst();
+      } else {
+        waitingList.remove(item);
+      }
       FullIdKey idKey = item.getId();
       waitingMap.remove(idKey);
       if (item.isAdd()) {
@@ -291,11 +375,14 @@ public class BackgroundIndexerImpl implements BackgroundIndexer {
 
   @SuppressWarnings("nls")
   private void populateItemBatch(List<IndexedItem> batch) {
+    long start = System.nanoTime();
     try {
       freetextIndex.prepareItemsForIndexing(batch);
+      prepareStats.record(batch.size(), System.nanoTime() - start);
     } catch (Exception t) {
       LOGGER.error("Failed to prepare batch for indexing, trying 1", t);
       freetextIndex.prepareItemsForIndexing(batch.subList(0, 1));
+      prepareStats.record(1, System.nanoTime() - start);
     }
   }
 
@@ -315,6 +402,7 @@ public class BackgroundIndexerImpl implements BackgroundIndexer {
               + " errors, "
               + deletions
               + " docs in Index but not in database");
+      LOGGER.info("Stages: " + prepareStats + ", " + extractStats + ", " + addStats);
       synchronized (threadingLock) {
         Iterator<IndexerThread> iter = inuseThreads.iterator();
         while (iter.hasNext()) {
@@ -417,6 +505,7 @@ public class BackgroundIndexerImpl implements BackgroundIndexer {
           indexingMap.remove(id);
           if (existing.isOnIndexList()) {
             indexedList.remove(existing);
+            indexedListBytes -= existing.getDocumentSize();
           }
         }
 
@@ -440,18 +529,26 @@ public class BackgroundIndexerImpl implements BackgroundIndexer {
 
   private void addToIndexedList(IndexedItem item) {
     item.setOnIndexList(true);
+    // Overdue items can still be being indexed, so their documents can't be looked at yet
+    item.setDocumentSize(item.isFinishedAllIndexing() ? item.estimateDocumentSize() : 0);
+    indexedListBytes += item.getDocumentSize();
     priorityInsert(indexedList, item);
   }
 
+  /**
+   * Inserts after the last item due no later than this one. Searches from the end, since new items
+   * are nearly always due after those already queued, and LinkedList.get(i) is O(n).
+   */
   private void priorityInsert(LinkedList<IndexedItem> list, IndexedItem item) {
     long retTime = item.getExpectedReturnTime();
-    int i;
-    for (i = 0; i < list.size(); i++) {
-      if (retTime <= list.get(i).getExpectedReturnTime()) {
+    ListIterator<IndexedItem> iter = list.listIterator(list.size());
+    while (iter.hasPrevious()) {
+      if (iter.previous().getExpectedReturnTime() < retTime) {
+        iter.next();
         break;
       }
     }
-    list.add(i, item);
+    iter.add(item);
   }
 
   /*
@@ -495,6 +592,8 @@ public class BackgroundIndexerImpl implements BackgroundIndexer {
   }
 
   public void threadFinished(IndexerThread thread) {
+    long elapsed = System.currentTimeMillis() - thread.getStarted();
+    extractStats.record(1, TimeUnit.MILLISECONDS.toNanos(elapsed));
     synchronized (threadingLock) {
       indexerThreads--;
       docsDone++;
@@ -521,6 +620,7 @@ public class BackgroundIndexerImpl implements BackgroundIndexer {
     synchronized (this) {
       LOGGER.debug("dead=true");
       dead = true;
+      notifyAll();
     }
 
     for (IndexerThread t : freeThreads) {
@@ -551,6 +651,60 @@ public class BackgroundIndexerImpl implements BackgroundIndexer {
     return indexedItemFactory.create(key, CurrentInstitution.get());
   }
 
+  public StageStats getPrepareStats() {
+    return prepareStats;
+  }
+
+  public StageStats getExtractStats() {
+    return extractStats;
+  }
+
+  public StageStats getAddStats() {
+    return addStats;
+  }
+
+  /** Throughput and latency of one stage of indexing: preparing, extracting or adding items. */
+  public static class StageStats {
+    private final String name;
+    private final AtomicLong items = new AtomicLong();
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong nanos = new AtomicLong();
+
+    public StageStats(String name) {
+      this.name = name;
+    }
+
+    void record(int count, long elapsedNanos) {
+      items.addAndGet(count);
+      runs.incrementAndGet();
+      nanos.addAndGet(elapsedNanos);
+    }
+
+    public long getItems() {
+      return items.get();
+    }
+
+    /** @return Items per second of time spent in this stage */
+    public double getItemsPerSecond() {
+      long total = nanos.get();
+      return total == 0 ? 0 : items.get() / (total / 1000000000.0);
+    }
+
+    /** @return Average milliseconds per run of the stage, i.e. per batch or item */
+    public double getAverageMillis() {
+      long count = runs.get();
+      return count == 0 ? 0 : nanos.get() / 1000000.0 / count;
+    }
+
+    @SuppressWarnings("nls")
+    @Override
+    public String toString() {
+      return String.format(
+          "%s %d items at %.1f/s (%.1fms avg)",
+          name, getItems(), getItemsPerSecond(), getAverageMillis());
+    }
+  }
+
   @BindFactory
   public interface BackgroundIndexerFactory {
     BackgroundIndexerImpl create(long schemaId);
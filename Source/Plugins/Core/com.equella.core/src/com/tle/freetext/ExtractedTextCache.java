@@ -0,0 +1,251 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.freetext;
+
+import com.dytech.devlib.Md5;
+import com.google.common.io.CharStreams;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import com.tle.annotation.Nullable;
+import com.tle.core.TextExtracterExtension;
+import com.tle.core.guice.Bind;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.inject.Singleton;
+import org.apache.log4j.Logger;
+
+/**
+ * A local disk cache of the text extracted from attachment files, so that reindexing an item whose
+ * files haven't changed doesn't have to parse them again. Entries are keyed on the digest of the
+ * file contents along with the extracter and the limits the text was extracted with. The cache is
+ * bounded in size, and the least recently used entries are removed when it grows too large.
+ */
+@Bind
+@Singleton
+@SuppressWarnings("nls")
+public class ExtractedTextCache {
+  private static final Logger LOGGER = Logger.getLogger(ExtractedTextCache.class);
+  private static final String CACHE_FOLDER = "ExtractedText";
+  private static final String TEMP = ".tmp";
+  /** When the cache is full, evict entries until it is down to this fraction of the limit. */
+  private static final double EVICT_TO = 0.8;
+
+  @Inject(optional = true)
+  @Named("textExtracter.cache.enabled")
+  private boolean enabled = true;
+
+  @Inject(optional = true)
+  @Named("textExtracter.cache.maxSizeMb")
+  private long maxSizeMb = 2048;
+
+  private final Path cacheRoot;
+  private final Object evictLock = new Object();
+  private volatile long currentSize = -1;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  @Inject
+  public ExtractedTextCache(@Named("freetext.index.location") File indexPath) {
+    this.cacheRoot = new File(indexPath, CACHE_FOLDER).toPath();
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public String createKey(
+      String fileDigest, TextExtracterExtension extracter, int maxSize, long parseDurationCap) {
+    String key =
+        fileDigest
+            + '|'
+            + extracter.getClass().getName()
+            + '|'
+            + extracter.getExtracterVersion()
+            + '|'
+            + maxSize
+            + '|'
+            + parseDurationCap;
+    try {
+      MessageDigest md5 = MessageDigest.getInstance("md5");
+      return Md5.stringify(md5.digest(key.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new Error("Missing MD5 Digest");
+    }
+  }
+
+  /** @return the previously extracted text or null if it isn't cached */
+  @Nullable
+  public String get(String key) {
+    Path entry = getEntryFile(key);
+    if (!Files.exists(entry)) {
+      misses.incrementAndGet();
+      return null;
+    }
+    try (Reader reader =
+        new InputStreamReader(
+            new GZIPInputStream(Files.newInputStream(entry)), StandardCharsets.UTF_8)) {
+      String text = CharStreams.toString(reader);
+      // Used as the access time for eviction
+      Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+      hits.incrementAndGet();
+      return text;
+    } catch (IOException e) {
+      LOGGER.warn("Error reading extracted text cache entry " + entry, e);
+      misses.incrementAndGet();
+      return null;
+    }
+  }
+
+  public void put(String key, String text) {
+    Path entry = getEntryFile(key);
+    try {
+      Files.createDirectories(entry.getParent());
+      Path temp = Files.createTempFile(entry.getParent(), key, TEMP);
+      try (Writer writer =
+          new OutputStreamWriter(
+              new GZIPOutputStream(Files.newOutputStream(temp)), StandardCharsets.UTF_8)) {
+        writer.write(text);
+      }
+      long size = Files.size(temp);
+      Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+      addToSize(size);
+    } catch (IOException e) {
+      LOGGER.warn("Error writing extracted text cache entry " + entry, e);
+    }
+  }
+
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  private void addToSize(long size) throws IOException {
+    synchronized (evictLock) {
+      if (currentSize < 0) {
+        currentSize = 0;
+        for (CacheEntry entry : listEntries()) {
+          currentSize += entry.size;
+        }
+      } else {
+        currentSize += size;
+      }
+
+      long maxSize = maxSizeMb * 1024 * 1024;
+      if (currentSize > maxSize) {
+        evict((long) (maxSize * EVICT_TO));
+      }
+    }
+  }
+
+  private void evict(long targetSize) throws IOException {
+    List<CacheEntry> entries = listEntries();
+    Collections.sort(
+        entries,
+        new Comparator<CacheEntry>() {
+          @Override
+          public int compare(CacheEntry e1, CacheEntry e2) {
+            return Long.compare(e1.lastUsed, e2.lastUsed);
+          }
+        });
+
+    long size = 0;
+    for (CacheEntry entry : entries) {
+      size += entry.size;
+    }
+
+    int evicted = 0;
+    for (CacheEntry entry : entries) {
+      if (size <= targetSize) {
+        break;
+      }
+      Files.deleteIfExists(entry.path);
+      size -= entry.size;
+      evicted++;
+    }
+    currentSize = size;
+    LOGGER.info(
+        "Evicted "
+            + evicted
+            + " entries from the extracted text cache ("
+            + hits.get()
+            + " hits, "
+            + misses.get()
+            + " misses so far)");
+  }
+
+  private List<CacheEntry> listEntries() throws IOException {
+    List<CacheEntry> entries = new ArrayList<CacheEntry>();
+    if (!Files.isDirectory(cacheRoot)) {
+      return entries;
+    }
+    try (DirectoryStream<Path> shards = Files.newDirectoryStream(cacheRoot)) {
+      for (Path shard : shards) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(shard)) {
+          for (Path file : files) {
+            if (!file.getFileName().toString().endsWith(TEMP)) {
+              entries.add(
+                  new CacheEntry(
+                      file, Files.size(file), Files.getLastModifiedTime(file).toMillis()));
+            }
+          }
+        }
+      }
+    }
+    return entries;
+  }
+
+  private Path getEntryFile(String key) {
+    return cacheRoot.resolve(key.substring(0, 2)).resolve(key);
+  }
+
+  private static class CacheEntry {
+    final Path path;
+    final long size;
+    final long lastUsed;
+
+    CacheEntry(Path path, long size, long lastUsed) {
+      this.path = path;
+      this.size = size;
+      this.lastUsed = lastUsed;
+    }
+  }
+}
@@ -19,8 +19,11 @@
 package com.tle.freetext;
 
 import com.google.common.collect.Multimap;
+import com.tle.annotation.Nullable;
 import com.tle.common.Pair;
+import com.tle.common.searching.CursorSearchResults;
 import com.tle.common.searching.Search;
+import com.tle.common.searching.SearchCursor;
 import com.tle.common.searching.SearchResults;
 import com.tle.common.settings.standard.SearchSettings;
 import com.tle.core.freetext.index.ItemIndex;
@@ -31,12 +34,23 @@ import it.uniroma3.mat.extendedset.wrappers.LongSet;
 import java.io.File;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /** @author Nicholas Read */
 public interface FreetextIndex {
   void deleteIndexes();
 
-  void indexBatch(List<IndexedItem> batch);
+  /**
+   * @return The generation of each index (keyed on index id) which must be searchable before the
+   *     batch can be seen by searches. Indexes that weren't asked for a new searcher are left out.
+   */
+  Map<String, Long> indexBatch(List<IndexedItem> batch);
+
+  /** Blocks until searches can see the generations returned by {@link #indexBatch(List)}. */
+  void waitForGenerations(Map<String, Long> generations);
+
+  /** Blocks until searches can see everything written to the indexes so far. */
+  void waitForCurrentGenerations();
 
   SearchSettings getSearchSettings();
 
@@ -62,6 +76,17 @@ public interface FreetextIndex {
   <T extends FreetextResult> SearchResults<T> search(
       Search searchReq, int start, int count, boolean searchAttachments);
 
+  /**
+   * Returns the page of results following the cursor. See {@link ItemIndex#searchAfter}.
+   *
+   * @param after null for the first page
+   */
+  <T extends FreetextResult> CursorSearchResults<T> searchAfter(
+      Search searchReq, @Nullable SearchCursor after, int count);
+
+  <T extends FreetextResult> CursorSearchResults<T> searchAfter(
+      Search searchReq, @Nullable SearchCursor after, int count, boolean searchAttachments);
+
   LongSet searchBitSet(Search searchReq);
 
   int count(Search searchReq);
@@ -69,6 +94,14 @@ public interface FreetextIndex {
   /** @return Collection of value/count pairs */
   Multimap<String, Pair<String, Integer>> facetCount(Search search, Collection<String> fields);
 
+  /**
+   * @param maxTerms The number of most frequent values to return per field, or less than one for
+   *     all of them
+   * @return Collection of value/count pairs, highest counts first when limited
+   */
+  Multimap<String, Pair<String, Integer>> facetCount(
+      Search search, Collection<String> fields, int maxTerms, boolean searchAttachments);
+
   MatrixResults matrixSearch(
       Search searchRequest, List<String> fields, boolean countOnly, boolean searchAttachments);
 
@@ -24,17 +24,19 @@ import com.dytech.edge.exceptions.SearchingException;
 import com.google.common.collect.Multimap;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
+import com.tle.annotation.Nullable;
 import com.tle.beans.Institution;
 import com.tle.beans.item.Item;
 import com.tle.beans.item.ItemPack;
 import com.tle.beans.item.ItemSelect;
 import com.tle.common.Pair;
 import com.tle.common.i18n.CurrentLocale;
+import com.tle.common.searching.CursorSearchResults;
 import com.tle.common.searching.Search;
+import com.tle.common.searching.SearchCursor;
 import com.tle.common.searching.SearchResults;
 import com.tle.common.settings.standard.SearchSettings;
 import com.tle.core.events.services.EventService;
-import com.tle.core.freetext.index.AbstractIndexEngine.IndexBuilder;
 import com.tle.core.freetext.index.ItemIndex;
 import com.tle.core.freetext.indexer.IndexingExtension;
 import com.tle.core.guice.Bind;
@@ -62,14 +64,14 @@ import it.uniroma3.mat.extendedset.wrappers.LongSet;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import javax.inject.Singleton;
 import org.apache.log4j.Logger;
 import org.apache.lucene.search.BooleanQuery;
-import org.apache.lucene.search.NRTManager;
-import org.apache.lucene.search.NRTManager.TrackingIndexWriter;
 import org.springframework.transaction.annotation.Transactional;
 
 /** @author jmaginnis */
@@ -115,7 +117,7 @@ public class FreetextIndexImpl
   private PluginTracker<IndexingExtension> indexingTracker;
   private PluginTracker<ItemIndex<? extends FreetextResult>> indexTracker;
 
-  private boolean indexesHaveBeenInited;
+  private volatile Map<String, ItemIndex<? extends FreetextResult>> indexerMap;
 
   @Inject
   public FreetextIndexImpl(@Named("freetext.index.location") File indexPath) {
@@ -174,6 +176,28 @@ public class FreetextIndexImpl
     }
   }
 
+  @Override
+  public <T extends FreetextResult> CursorSearchResults<T> searchAfter(
+      Search searchReq, @Nullable SearchCursor after, int count) {
+    return searchAfter(searchReq, after, count, isSearchAttachment());
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public <T extends FreetextResult> CursorSearchResults<T> searchAfter(
+      Search searchReq, @Nullable SearchCursor after, int count, boolean searchAttachments) {
+    try {
+      return (CursorSearchResults<T>)
+          getIndexer(searchReq.getSearchType())
+              .searchAfter(searchReq, after, count, searchAttachments);
+    } catch (SearchingException ex) {
+      if (!ex.isLogged()) {
+        LOGGER.error(ex);
+      }
+      throw ex;
+    }
+  }
+
   @Override
   public LongSet searchBitSet(Search searchReq) {
     try {
@@ -216,28 +240,25 @@ public class FreetextIndexImpl
     for (ItemIndex<? extends FreetextResult> index : indexers.values()) {
       index.deleteDirectory();
     }
-    indexesHaveBeenInited = false;
-  }
-
-  private synchronized Map<String, ItemIndex<? extends FreetextResult>> getIndexerMap() {
-    Map<String, ItemIndex<? extends FreetextResult>> indexerMap = indexTracker.getBeanMap();
-    if (!indexesHaveBeenInited) {
-      // This simply exists in order to reset the indices for the first
-      // time.
-      IndexBuilder resetBuilder =
-          new IndexBuilder() {
-            @Override
-            public long buildIndex(NRTManager nrtManager, TrackingIndexWriter writer)
-                throws Exception {
-              return nrtManager.getCurrentSearchingGen();
-            }
-          };
-      for (ItemIndex<? extends FreetextResult> itemIndex : indexerMap.values()) {
-        itemIndex.modifyIndex(resetBuilder);
+    indexerMap = null;
+  }
+
+  /**
+   * Searches come through here, so once the map has been loaded it is read without taking any
+   * locks.
+   */
+  private Map<String, ItemIndex<? extends FreetextResult>> getIndexerMap() {
+    Map<String, ItemIndex<? extends FreetextResult>> indexers = indexerMap;
+    if (indexers == null) {
+      synchronized (this) {
+        indexers = indexerMap;
+        if (indexers == null) {
+          indexers = Collections.unmodifiableMap(indexTracker.getBeanMap());
+          indexerMap = indexers;
+        }
       }
-      indexesHaveBeenInited = true;
     }
-    return indexerMap;
+    return indexers;
   }
 
   @Override
@@ -246,6 +267,13 @@ public class FreetextIndexImpl
     return getIndexer(Search.INDEX_ITEM).facetCount(search, fields);
   }
 
+  @Override
+  public Multimap<String, Pair<String, Integer>> facetCount(
+      Search search, Collection<String> fields, int maxTerms, boolean searchAttachments) {
+    return getIndexer(Search.INDEX_ITEM)
+        .facetCount(search, fields, maxTerms, searchAttachments);
+  }
+
   @Override
   public MatrixResults matrixSearch(
       Search search, List<String> fields, boolean countOnly, boolean searchAttachments) {
@@ -262,10 +290,33 @@ public class FreetextIndexImpl
   }
 
   @Override
-  public void indexBatch(List<IndexedItem> batch) {
-    Collection<ItemIndex<?>> allIndexes = getAllIndexes();
-    for (ItemIndex<?> itemIndex : allIndexes) {
-      itemIndex.indexBatch(batch);
+  public Map<String, Long> indexBatch(List<IndexedItem> batch) {
+    Map<String, Long> generations = new HashMap<String, Long>();
+    for (Map.Entry<String, ItemIndex<? extends FreetextResult>> entry :
+        getIndexerMap().entrySet()) {
+      long generation = entry.getValue().indexBatch(batch);
+      if (generation >= 0) {
+        generations.put(entry.getKey(), generation);
+      }
+    }
+    return generations;
+  }
+
+  @Override
+  public void waitForGenerations(Map<String, Long> generations) {
+    Map<String, ItemIndex<? extends FreetextResult>> indexers = getIndexerMap();
+    for (Map.Entry<String, Long> entry : generations.entrySet()) {
+      ItemIndex<? extends FreetextResult> index = indexers.get(entry.getKey());
+      if (index != null) {
+        index.waitForGeneration(entry.getValue());
+      }
+    }
+  }
+
+  @Override
+  public void waitForCurrentGenerations() {
+    for (ItemIndex<? extends FreetextResult> index : getIndexerMap().values()) {
+      index.waitForCurrentGeneration();
     }
   }
 
@@ -33,6 +33,7 @@ import com.tle.core.freetext.indexer.AbstractIndexingExtension;
 import com.tle.core.freetext.indexer.StandardIndexer;
 import com.tle.core.security.TLEAclManager;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -69,9 +70,11 @@ public class IndexedItem {
   private boolean indexed;
   private boolean noLongerCurrent;
   private boolean newSearcherRequired;
+  private Map<String, Long> searchGenerations = Collections.emptyMap();
   private Throwable error;
   private boolean deadlineAfterStart = true;
   private long timeAfterStart = TimeUnit.SECONDS.toMillis(10);
+  private long documentSize;
 
   private final Map<Object, Object> attributes = new HashMap<Object, Object>();
   private final Institution institution;
@@ -166,6 +169,37 @@ public class IndexedItem {
     this.timeAfterStart = timeAfterStart;
   }
 
+  /** A rough size in bytes of the documents built for this item, used to size index batches. */
+  public long estimateDocumentSize() {
+    long size = estimateSize(itemdoc);
+    for (List<Document> docs : indexDocMap.values()) {
+      for (Document doc : docs) {
+        size += estimateSize(doc);
+      }
+    }
+    return size;
+  }
+
+  private static long estimateSize(Document doc) {
+    long size = 0;
+    for (Fieldable field : doc.getFields()) {
+      if (field.isBinary()) {
+        size += field.getBinaryLength();
+      } else if (field.stringValue() != null) {
+        size += 2L * field.stringValue().length();
+      }
+    }
+    return size;
+  }
+
+  public long getDocumentSize() {
+    return documentSize;
+  }
+
+  public void setDocumentSize(long documentSize) {
+    this.documentSize = documentSize;
+  }
+
   public boolean isNewSearcherRequired() {
     return newSearcherRequired;
   }
@@ -174,6 +208,15 @@ public class IndexedItem {
     this.newSearcherRequired = b;
   }
 
+  /** The index generations which must be searchable before this item can be seen. */
+  public synchronized Map<String, Long> getSearchGenerations() {
+    return searchGenerations;
+  }
+
+  public synchronized void setSearchGenerations(Map<String, Long> searchGenerations) {
+    this.searchGenerations = searchGenerations;
+  }
+
   public synchronized void setError(Throwable t) {
     error = t;
     notifyAll();
@@ -33,6 +33,7 @@ import com.tle.common.settings.standard.SearchSettings;
 import com.tle.core.TextExtracterExtension;
 import com.tle.core.cloudproviders.CloudProviderService;
 import com.tle.core.filesystem.ItemFile;
+import com.tle.core.filesystem.digest.FileDigestIndex;
 import com.tle.core.freetext.indexer.AbstractIndexingExtension;
 import com.tle.core.guice.Bind;
 import com.tle.core.item.dao.AttachmentDao;
@@ -44,6 +45,7 @@ import com.tle.core.util.ims.beans.IMSResource;
 import com.tle.ims.service.IMSService;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
@@ -78,6 +80,8 @@ public class TextExtracter {
   @Inject private ItemFileService itemFileService;
   @Inject private MimeTypeService mimeService;
   @Inject private IMSService imsService;
+  @Inject private ExtractedTextCache textCache;
+  @Inject private FileDigestIndex digestIndex;
 
   @Inject(optional = true)
   @Named("textExtracter.indexAttachments")
@@ -130,10 +134,7 @@ public class TextExtracter {
 
                 final List<TextExtracterExtension> extractors = getExtractors(mimeEntry);
                 if (!extractors.isEmpty()) {
-                  try (InputStream input =
-                      fileSystemService.read(itemFileService.getItemFile(item), filename)) {
-                    extractTextFromStream(extractors, input, mimeEntry, sbuf);
-                  }
+                  extractTextFromFile(extractors, item, filename, mimeEntry, sbuf);
                 }
                 break;
               }
@@ -294,10 +295,7 @@ public class TextExtracter {
     final MimeEntry mimeEntry = mimeService.getEntryForFilename(filename);
     final List<TextExtracterExtension> extractors = getExtractors(mimeEntry);
     if (!extractors.isEmpty()) {
-      try (InputStream input =
-          fileSystemService.read(itemFileService.getItemFile(item), filename)) {
-        extractTextFromStream(extractors, input, mimeEntry, sbuf);
-      }
+      extractTextFromFile(extractors, item, filename, mimeEntry, sbuf);
     }
   }
 
@@ -327,6 +325,48 @@ public class TextExtracter {
     return mimeService.getTextExtractersForMimeEntry(mimeEntry);
   }
 
+  /**
+   * Extracts the text of an item file, or reuses the text previously extracted from a file with the
+   * same contents.
+   */
+  private void extractTextFromFile(
+      List<TextExtracterExtension> extracters,
+      Item item,
+      String filename,
+      MimeEntry mimeEntry,
+      StringBuilder outputText)
+      throws Exception {
+    final ItemFile itemFile = itemFileService.getItemFile(item);
+
+    String cacheKey = null;
+    if (textCache.isEnabled()) {
+      File file = fileSystemService.getExternalFileForReading(itemFile, filename);
+      if (file.isFile()) {
+        cacheKey =
+            textCache.createKey(
+                digestIndex.getDigest(file), extracters.get(0), SUMMARY_SIZE, parseDurationCap);
+        String cached = textCache.get(cacheKey);
+        if (cached != null) {
+          outputText.append(cached);
+          return;
+        }
+      }
+    }
+
+    // Extract into a separate buffer, so the text only depends on the file
+    // and not on what has already been gathered for the attachment.
+    final StringBuilder fileText = new StringBuilder();
+    try (InputStream input = fileSystemService.read(itemFile, filename)) {
+      extractTextFromStream(extracters, input, mimeEntry, fileText);
+    }
+    // Some extracters swallow their failures and produce no text, so empty text isn't cached
+    // in case the next attempt succeeds.
+    if (cacheKey != null && fileText.toString().trim().length() > 0) {
+      textCache.put(cacheKey, fileText.toString());
+    }
+    outputText.append(fileText);
+  }
+
   private void extractTextFromStream(
       List<TextExtracterExtension> extracters,
       InputStream inp,
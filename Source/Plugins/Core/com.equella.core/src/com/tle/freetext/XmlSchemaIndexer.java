@@ -26,7 +26,7 @@ import com.tle.common.util.Dates;
 import com.tle.common.util.UtcDate;
 import com.tle.core.freetext.indexer.AbstractIndexingExtension;
 import com.tle.freetext.htmlfilter.HTMLFilter;
-import java.io.ByteArrayInputStream;
+import java.io.StringReader;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -49,14 +49,15 @@ public class XmlSchemaIndexer {
   public void indexOneValue(
       SchemaNode schemaNode, String itemNamePath, String fullPath, String xpath, String value) {
     if (schemaNode.isFieldIndexed()) {
-      try {
-        // See if it is a date
-        UtcDate d = new UtcDate(value, Dates.ISO);
-        value = d.format(Dates.ISO);
-      } catch (ParseException ex) {
-        // Ignore
-      } catch (NumberFormatException nfe) {
-        // Ignore
+      if (isPossibleDate(value)) {
+        try {
+          UtcDate d = new UtcDate(value, Dates.ISO);
+          value = d.format(Dates.ISO);
+        } catch (ParseException ex) {
+          // Ignore
+        } catch (NumberFormatException nfe) {
+          // Ignore
+        }
       }
       pathsIndexed.add(fullPath);
       indexedFields.add(AbstractIndexingExtension.indexed(xpath + XPATH_EXT, value));
@@ -76,9 +77,7 @@ public class XmlSchemaIndexer {
       if (type.equals("html") && value.length() > 0) // $NON-NLS-1$
       {
         try {
-          ByteArrayInputStream bais =
-              new ByteArrayInputStream(value.getBytes("UTF-8")); // $NON-NLS-1$
-          value = new HTMLFilter(bais).getSummary(16384);
+          value = new HTMLFilter(new StringReader(value)).getSummary(16384);
         } catch (Exception e) {
           LOGGER.warn(e);
           value = ""; // $NON-NLS-1$
@@ -98,6 +97,17 @@ public class XmlSchemaIndexer {
     }
   }
 
+  /**
+   * A cheap check that the value has the literals of an ISO date (yyyy-MM-dd'T'HH:mm:ss) in the
+   * right order. Nearly all metadata values aren't dates, and trying to parse each of them means
+   * creating and throwing a ParseException for every one. Anything the date parser could accept
+   * passes this check.
+   */
+  private static boolean isPossibleDate(String value) {
+    int t = value.indexOf('T');
+    return t > 0 && value.lastIndexOf('-', t) > 0 && value.indexOf(':', t) > t;
+  }
+
   public void indexChildNodes(
       SchemaNode parentNode, String itemNamePath, String fullPath, String xpath, PropBagEx xml) {
     List<SchemaNode> childNodes = parentNode.getChildNodes();
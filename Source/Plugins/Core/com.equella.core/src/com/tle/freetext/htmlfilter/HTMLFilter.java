@@ -33,6 +33,10 @@ public class HTMLFilter {
     m_input = new UnicodeReader(inp, "UTF-8");
   }
 
+  public HTMLFilter(Reader reader) {
+    m_input = reader;
+  }
+
   public String getSummary(int nSize) throws IOException {
     StringBuilder out = new StringBuilder();
     StringBuilder tag = new StringBuilder();
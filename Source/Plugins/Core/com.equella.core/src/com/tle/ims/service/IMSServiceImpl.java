@@ -112,6 +112,10 @@ public class IMSServiceImpl implements IMSService {
     return fileSystemService.getExternalFile(handle, path);
   }
 
+  private File getFileForReading(FileHandle handle, String path) {
+    return fileSystemService.getExternalFileForReading(handle, path);
+  }
+
   private TLEXStream getXstream() {
     return TLEXStream.instance();
   }
@@ -192,7 +196,8 @@ public class IMSServiceImpl implements IMSService {
     // Check if combined manifest file exists.
     File newManifest = getFile(handle, filepath);
     File origManifest =
-        getFile(handle, PathUtils.filePath(packageExtractedFolder, IMSUtilities.IMS_MANIFEST));
+        getFileForReading(
+            handle, PathUtils.filePath(packageExtractedFolder, IMSUtilities.IMS_MANIFEST));
 
     // Generate the manifest if need be
     if (!newManifest.exists()
@@ -232,11 +237,12 @@ public class IMSServiceImpl implements IMSService {
     }
 
     // packageName already has the IMS folder part
-    File zipFile = getFile(handle, packagePath);
+    // Only ever written when it doesn't exist yet, so it can't be a hard link
+    File zipFile = getFileForReading(handle, packagePath);
     if (!zipFile.exists()) {
       // Otherwise create the zip file:
       final String packageName = PathUtils.getFilenameFromFilepath(packagePath);
-      final File dir = getFile(handle, packageName);
+      final File dir = getFileForReading(handle, packageName);
       if (!dir.exists() || !dir.isDirectory()) {
         throw new FileSystemException("Cannot find package source at " + packageName);
       }
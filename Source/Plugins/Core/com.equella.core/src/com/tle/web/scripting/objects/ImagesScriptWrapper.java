@@ -49,7 +49,7 @@ public class ImagesScriptWrapper extends AbstractScriptWrapper implements Images
   @Override
   public void resize(String path, int newWidth, int newHeight, String newPath) throws IOException {
     imageMagick.sample(
-        fileSystem.getExternalFile(handle, path),
+        fileSystem.getExternalFileForReading(handle, path),
         fileSystem.getExternalFile(handle, newPath),
         Integer.toString(newWidth),
         Integer.toString(newHeight));
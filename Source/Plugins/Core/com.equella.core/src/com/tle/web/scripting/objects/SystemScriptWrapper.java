@@ -80,13 +80,14 @@ public class SystemScriptWrapper implements SystemScriptObject {
         AttachmentScriptTypeImpl attachmentType = ((AttachmentScriptTypeImpl) param);
         strParam =
             fileSystem
-                .getExternalFile(attachmentType.getStagingFile(), attachmentType.getUrl())
+                .getExternalFileForReading(
+                    attachmentType.getStagingFile(), attachmentType.getUrl())
                 .getAbsolutePath();
       } else if (param instanceof FileHandleScriptType) {
         FileHandleScriptTypeImpl fileType = ((FileHandleScriptTypeImpl) param);
         strParam =
             fileSystem
-                .getExternalFile(fileType.getHandle(), fileType.getFilepath())
+                .getExternalFileForReading(fileType.getHandle(), fileType.getFilepath())
                 .getAbsolutePath();
       }
 
@@ -0,0 +1,87 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.web.sections.equella;
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import com.tle.common.NamedThreadFactory;
+import com.tle.core.application.StartupBean;
+import com.tle.core.guice.Bind;
+import com.tle.web.sections.registry.TreeRegistry;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.inject.Singleton;
+import org.apache.log4j.Logger;
+
+/**
+ * Optionally builds every section tree before Tomcat starts accepting requests, so that the first
+ * users after a restart don't pay for tree construction. Disabled unless {@code
+ * sections.warmup.enabled} is set.
+ */
+@Bind
+@Singleton
+@SuppressWarnings("nls")
+public class SectionTreeWarmup implements StartupBean {
+  private static final Logger LOGGER = Logger.getLogger(SectionTreeWarmup.class);
+
+  @Inject(optional = true)
+  @Named("sections.warmup.enabled")
+  private boolean enabled = false;
+
+  @Inject(optional = true)
+  @Named("sections.warmup.threads")
+  private int threads = 4;
+
+  @javax.inject.Inject private TreeRegistry treeRegistry;
+
+  @Override
+  public void startup() {
+    if (!enabled) {
+      return;
+    }
+    long start = System.currentTimeMillis();
+    Map<String, Long> timings;
+    ExecutorService executor =
+        Executors.newFixedThreadPool(
+            Math.max(1, threads), new NamedThreadFactory("SectionTreeWarmup"));
+    try {
+      timings = treeRegistry.buildAllTrees(executor);
+    } finally {
+      executor.shutdown();
+    }
+
+    int failed = 0;
+    for (Map.Entry<String, Long> entry : timings.entrySet()) {
+      if (entry.getValue() < 0) {
+        // TreeRegistry has already logged why
+        failed++;
+      } else if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug("Built section tree " + entry.getKey() + " in " + entry.getValue() + "ms");
+      }
+    }
+    LOGGER.info(
+        "Built "
+            + (timings.size() - failed)
+            + " section trees in "
+            + (System.currentTimeMillis() - start)
+            + "ms"
+            + (failed > 0 ? ", " + failed + " failed to build" : ""));
+  }
+}
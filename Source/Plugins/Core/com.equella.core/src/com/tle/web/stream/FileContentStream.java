@@ -19,6 +19,7 @@
 package com.tle.web.stream;
 
 import com.tle.common.filesystem.FileSystemHelper;
+import com.tle.core.filesystem.digest.FileDigestIndex;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -26,12 +27,20 @@ import java.io.InputStream;
 
 public class FileContentStream extends AbstractContentStream {
   private final File file;
+  private final FileDigestIndex digestIndex;
   private FileInputStream inp;
   private String etag;
 
   public FileContentStream(File file, String filename, String mimeType) {
+    this(file, filename, mimeType, null);
+  }
+
+  /** @param digestIndex Optional index used to avoid re-reading the file to calculate the ETag */
+  public FileContentStream(
+      File file, String filename, String mimeType, FileDigestIndex digestIndex) {
     super(filename, mimeType);
     this.file = file;
+    this.digestIndex = digestIndex;
   }
 
   @Override
@@ -48,7 +57,10 @@ public class FileContentStream extends AbstractContentStream {
   public String calculateETag() {
     if (etag == null) {
       try {
-        etag = FileSystemHelper.md5recurse(file, new byte[Short.MAX_VALUE]);
+        etag =
+            digestIndex != null
+                ? digestIndex.getDigest(file)
+                : FileSystemHelper.md5recurse(file, new byte[Short.MAX_VALUE]);
       } catch (IOException e) {
         throw new RuntimeException(e);
       }
@@ -105,7 +105,7 @@ public class ConvertToImageViewer extends AbstractResourceViewer implements View
       thumbnailOptions.setNoSize(true);
       thumbnailOptions.setSkipBlankCheck(true);
       imageMagickService.generateThumbnailAdvanced(
-          fileSystemService.getExternalFile(fileHandle, resource.getFilepath()),
+          fileSystemService.getExternalFileForReading(fileHandle, resource.getFilepath()),
           dest,
           thumbnailOptions);
     }
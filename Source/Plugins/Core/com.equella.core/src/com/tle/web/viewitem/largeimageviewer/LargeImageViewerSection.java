@@ -330,7 +330,7 @@ public class LargeImageViewerSection
       if (!rotatedFile.exists()) {
         // image magick rotate on demand!
         File sourceFile =
-            fileSystemService.getExternalFile(
+            fileSystemService.getExternalFileForReading(
                 resource.getViewableItem().getFileHandle(), resource.getFilepath());
         largeImageViewer.rotateImage(sourceFile, rotatedFile, angle);
       }
@@ -366,7 +366,7 @@ public class LargeImageViewerSection
 
   private void startTileProcessor(ViewItemResource resource, FileHandle tileBaseHandle) {
     final File originalImage =
-        fileSystemService.getExternalFile(
+        fileSystemService.getExternalFileForReading(
             resource.getViewableItem().getFileHandle(), resource.getFilepath());
     final File destFolder = fileSystemService.getExternalFile(tileBaseHandle, null);
 
@@ -58,7 +58,7 @@ public class StartTilingOperation extends AbstractStandardWorkflowOperation {
               if (isViewerEnabledForAttachment(fa)) {
                 final ItemFile itemFile = itemFileService.getItemFile(item);
                 final File originalImage =
-                    fileSystemService.getExternalFile(itemFile, fa.getFilename());
+                    fileSystemService.getExternalFileForReading(itemFile, fa.getFilename());
                 final File destFolder =
                     fileSystemService.getExternalFile(
                         largeImageViewer.getTileBaseHandle(itemFile, fa.getUrl()), null);
@@ -0,0 +1,99 @@
+package com.tle.core.freetext.index;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.NRTManager;
+import org.apache.lucene.search.NRTManager.TrackingIndexWriter;
+import org.apache.lucene.search.TermQuery;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Searches use whatever reader is open, which is only reopened in the background every few
+ * seconds. Indexing an item and then searching for it straight away relies on waiting for the
+ * write's generation first.
+ */
+@SuppressWarnings("nls")
+public class ReadYourWritesTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private TestIndexEngine engine;
+
+  @Before
+  public void setUp() throws IOException {
+    engine = new TestIndexEngine();
+    engine.setIndexPath(folder.newFolder("index"));
+    engine.afterPropertiesSet();
+  }
+
+  @Test
+  public void testSearchAfterWaitingForWriteGeneration() {
+    long generation = engine.modifyIndex(addItem("1"));
+
+    engine.waitForGeneration(generation);
+    assertEquals(1, count("1"));
+  }
+
+  @Test
+  public void testSearchAfterWaitingForCurrentGeneration() {
+    // As when the item is no longer tracked by the background indexer, and its generation is lost
+    engine.modifyIndex(addItem("2"));
+
+    engine.waitForCurrentGeneration();
+    assertEquals(1, count("2"));
+  }
+
+  @Test
+  public void testSearchSeesEveryItemWritten() {
+    for (int i = 0; i < 5; i++) {
+      engine.modifyIndex(addItem("item" + i));
+      engine.waitForCurrentGeneration();
+      assertEquals(1, count("item" + i));
+    }
+  }
+
+  private static AbstractIndexEngine.IndexBuilder addItem(final String id) {
+    return new AbstractIndexEngine.IndexBuilder() {
+      @Override
+      public long buildIndex(NRTManager nrtManager, TrackingIndexWriter writer)
+          throws IOException {
+        Document doc = new Document();
+        doc.add(new Field("id", id, Field.Store.YES, Field.Index.NOT_ANALYZED));
+        return writer.addDocument(doc);
+      }
+    };
+  }
+
+  private int count(final String id) {
+    return engine.search(
+        new AbstractIndexEngine.Searcher<Integer>() {
+          @Override
+          public Integer search(IndexSearcher searcher) throws IOException {
+            return searcher.search(new TermQuery(new Term("id", id)), 10).totalHits;
+          }
+        });
+  }
+
+  private static class TestIndexEngine extends AbstractIndexEngine {
+    @Override
+    protected Map<String, Analyzer> getAnalyzerFieldMap(
+        Analyzer autoComplete, Analyzer nonStemmed) {
+      return Collections.emptyMap();
+    }
+
+    @Override
+    public void checkHealth() {
+      // nothing
+    }
+  }
+}
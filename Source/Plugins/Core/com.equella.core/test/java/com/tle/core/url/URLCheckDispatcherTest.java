@@ -0,0 +1,302 @@
+package com.tle.core.url;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.tle.beans.ReferencedURL;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs the dispatcher against a stub HTTP server. {@code 127.0.0.1} and {@code localhost} both
+ * reach the stub, but are separate hosts as far as the dispatcher is concerned.
+ */
+@SuppressWarnings("nls")
+public class URLCheckDispatcherTest {
+  private static final int SLOW_MILLIS = 200;
+  private static final int READ_TIMEOUT_MILLIS = 500;
+
+  private HttpServer server;
+  private ExecutorService serverThreads;
+  private ListeningExecutorService checkThreads;
+
+  private final ConcurrentMap<String, AtomicInteger> active = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, AtomicInteger> maxActive = new ConcurrentHashMap<>();
+  private final AtomicInteger totalActive = new AtomicInteger();
+  private final AtomicInteger maxTotalActive = new AtomicInteger();
+  private final AtomicInteger okRequests = new AtomicInteger();
+
+  @Before
+  public void setUp() throws IOException {
+    serverThreads = Executors.newCachedThreadPool();
+    checkThreads = MoreExecutors.listeningDecorator(Executors.newCachedThreadPool());
+
+    server = HttpServer.create(new InetSocketAddress(0), 50);
+    server.setExecutor(serverThreads);
+    server.createContext(
+        "/slow",
+        new HttpHandler() {
+          @Override
+          public void handle(HttpExchange exchange) throws IOException {
+            String host = exchange.getRequestHeaders().getFirst("Host").split(":")[0];
+            int hostCount = counter(active, host).incrementAndGet();
+            raise(counter(maxActive, host), hostCount);
+            raise(maxTotalActive, totalActive.incrementAndGet());
+            try {
+              Thread.sleep(SLOW_MILLIS);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            } finally {
+              counter(active, host).decrementAndGet();
+              totalActive.decrementAndGet();
+            }
+            respond(exchange, 200);
+          }
+        });
+    server.createContext(
+        "/redirect",
+        new HttpHandler() {
+          @Override
+          public void handle(HttpExchange exchange) throws IOException {
+            exchange.getResponseHeaders().add("Location", "/ok");
+            respond(exchange, 302);
+          }
+        });
+    server.createContext(
+        "/ok",
+        new HttpHandler() {
+          @Override
+          public void handle(HttpExchange exchange) throws IOException {
+            okRequests.incrementAndGet();
+            respond(exchange, 200);
+          }
+        });
+    server.createContext(
+        "/hang",
+        new HttpHandler() {
+          @Override
+          public void handle(HttpExchange exchange) throws IOException {
+            try {
+              Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            respond(exchange, 200);
+          }
+        });
+    server.start();
+  }
+
+  @After
+  public void tearDown() {
+    server.stop(0);
+    serverThreads.shutdownNow();
+    checkThreads.shutdownNow();
+  }
+
+  @Test
+  public void testPerHostConcurrencyLimit() throws InterruptedException {
+    List<ReferencedURL> urls = Lists.newArrayList();
+    for (int i = 0; i < 6; i++) {
+      urls.add(url("127.0.0.1", "/slow?" + i));
+      urls.add(url("localhost", "/slow?" + i));
+    }
+
+    URLCheckDispatcher dispatcher = new URLCheckDispatcher(10, 2, 0, 5);
+    List<ReferencedURL> checked = run(dispatcher, urls);
+
+    assertEquals(12, dispatcher.getCheckedCount());
+    assertEquals(12, checked.size());
+    for (ReferencedURL rurl : checked) {
+      assertTrue(rurl.getUrl(), rurl.isSuccess());
+    }
+    assertEquals(2, maxActive.get("127.0.0.1").get());
+    assertEquals(2, maxActive.get("localhost").get());
+    // The limit is per host, both hosts are checked at the same time
+    assertTrue(maxTotalActive.get() > 2);
+
+    Map<String, Long> latencies = dispatcher.getHostLatencies();
+    assertEquals(2, latencies.size());
+    assertTrue(latencies.get("127.0.0.1") >= SLOW_MILLIS);
+    assertTrue(latencies.get("localhost") >= SLOW_MILLIS);
+  }
+
+  @Test
+  public void testTimedOutCheckDoesNotHoldUpOtherHosts() throws InterruptedException {
+    List<ReferencedURL> urls = Lists.newArrayList();
+    urls.add(url("127.0.0.1", "/hang"));
+    for (int i = 0; i < 3; i++) {
+      urls.add(url("localhost", "/ok?" + i));
+    }
+
+    URLCheckDispatcher dispatcher = new URLCheckDispatcher(10, 1, 0, 10);
+    long start = System.currentTimeMillis();
+    List<ReferencedURL> checked = run(dispatcher, urls);
+    long took = System.currentTimeMillis() - start;
+
+    assertEquals(4, dispatcher.getCheckedCount());
+    assertEquals(4, checked.size());
+    for (ReferencedURL rurl : checked) {
+      if (rurl.getUrl().endsWith("/hang")) {
+        assertFalse(rurl.isSuccess());
+        assertEquals(0, rurl.getStatus());
+      } else {
+        assertTrue(rurl.isSuccess());
+      }
+    }
+    // Finished once the read timed out, not when the stub eventually responded
+    assertTrue("Took " + took + "ms", took < TimeUnit.SECONDS.toMillis(5));
+
+    Map<String, Long> latencies = dispatcher.getHostLatencies();
+    assertTrue(latencies.get("127.0.0.1") >= READ_TIMEOUT_MILLIS);
+    assertTrue(latencies.get("localhost") < READ_TIMEOUT_MILLIS);
+  }
+
+  @Test
+  public void testRedirectIsFollowed() throws InterruptedException {
+    List<ReferencedURL> urls = Lists.newArrayList();
+    for (int i = 0; i < 3; i++) {
+      urls.add(url("127.0.0.1", "/redirect?" + i));
+    }
+
+    URLCheckDispatcher dispatcher = new URLCheckDispatcher(10, 2, 0, 2);
+    List<ReferencedURL> checked = run(dispatcher, urls);
+
+    assertEquals(3, dispatcher.getCheckedCount());
+    assertEquals(3, checked.size());
+    for (ReferencedURL rurl : checked) {
+      assertTrue(rurl.isSuccess());
+      assertEquals(200, rurl.getStatus());
+    }
+    assertEquals(3, okRequests.get());
+    assertEquals(Collections.singleton("127.0.0.1"), dispatcher.getHostLatencies().keySet());
+  }
+
+  @Test
+  public void testFailedCheckIsCountedButNotHandled() throws InterruptedException {
+    List<ReferencedURL> urls = Lists.newArrayList(url("127.0.0.1", "/ok"), url("", "/ok"));
+
+    URLCheckDispatcher dispatcher = new URLCheckDispatcher(10, 2, 0, 10);
+    final List<ReferencedURL> checked = Lists.newArrayList();
+    dispatcher.run(
+        urls.iterator(),
+        new Function<ReferencedURL, ListenableFuture<ReferencedURL>>() {
+          @Override
+          public ListenableFuture<ReferencedURL> apply(ReferencedURL rurl) {
+            if (rurl.getUrl().startsWith("http:///")) {
+              throw new IllegalArgumentException("Invalid URL");
+            }
+            return check(rurl);
+          }
+        },
+        handler(checked));
+
+    assertEquals(2, dispatcher.getCheckedCount());
+    assertEquals(1, checked.size());
+  }
+
+  private List<ReferencedURL> run(URLCheckDispatcher dispatcher, List<ReferencedURL> urls)
+      throws InterruptedException {
+    List<ReferencedURL> checked = Lists.newArrayList();
+    Iterator<ReferencedURL> iter = urls.iterator();
+    dispatcher.run(
+        iter,
+        new Function<ReferencedURL, ListenableFuture<ReferencedURL>>() {
+          @Override
+          public ListenableFuture<ReferencedURL> apply(ReferencedURL rurl) {
+            return check(rurl);
+          }
+        },
+        handler(checked));
+    return checked;
+  }
+
+  private static URLCheckDispatcher.BatchHandler handler(final List<ReferencedURL> checked) {
+    return new URLCheckDispatcher.BatchHandler() {
+      @Override
+      public void handle(List<ReferencedURL> batch) {
+        checked.addAll(batch);
+      }
+    };
+  }
+
+  /** Like the real checker, a URL that can't be checked is a failed result rather than an error */
+  private ListenableFuture<ReferencedURL> check(final ReferencedURL rurl) {
+    return checkThreads.submit(
+        new Callable<ReferencedURL>() {
+          @Override
+          public ReferencedURL call() throws IOException {
+            HttpURLConnection conn = (HttpURLConnection) new URL(rurl.getUrl()).openConnection();
+            conn.setInstanceFollowRedirects(true);
+            conn.setConnectTimeout(READ_TIMEOUT_MILLIS);
+            conn.setReadTimeout(READ_TIMEOUT_MILLIS);
+            try {
+              int code = conn.getResponseCode();
+              rurl.setStatus(code);
+              rurl.setSuccess(code >= 200 && code < 300);
+            } catch (SocketTimeoutException e) {
+              rurl.setStatus(0);
+              rurl.setSuccess(false);
+              rurl.setMessage(e.getMessage());
+            } finally {
+              conn.disconnect();
+            }
+            return rurl;
+          }
+        });
+  }
+
+  private ReferencedURL url(String host, String path) {
+    ReferencedURL rurl = new ReferencedURL();
+    rurl.setUrl(
+        "http://" + host + (host.isEmpty() ? "" : ":" + server.getAddress().getPort()) + path);
+    return rurl;
+  }
+
+  private static void respond(HttpExchange exchange, int code) throws IOException {
+    exchange.sendResponseHeaders(code, -1);
+    exchange.close();
+  }
+
+  private static AtomicInteger counter(ConcurrentMap<String, AtomicInteger> counters, String key) {
+    AtomicInteger counter = counters.get(key);
+    if (counter == null) {
+      counters.putIfAbsent(key, new AtomicInteger());
+      counter = counters.get(key);
+    }
+    return counter;
+  }
+
+  private static void raise(AtomicInteger max, int value) {
+    int current;
+    while ((current = max.get()) < value && !max.compareAndSet(current, value)) {
+      // retry
+    }
+  }
+}
@@ -0,0 +1,197 @@
+package com.tle.core.usermanagement.standard.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.tle.beans.usermanagement.standard.LDAPSettings;
+import com.tle.common.usermanagement.user.valuebean.GroupBean;
+import com.tle.core.encryption.EncryptionService;
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedSearchRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryOperationInterceptor;
+import com.unboundid.ldap.sdk.Modification;
+import com.unboundid.ldap.sdk.ModificationType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.naming.NamingException;
+import javax.naming.directory.DirContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Resolves nested groups against an in-memory directory. Groups list their members in {@code
+ * member} (users by uid, groups by DN) and their parents in {@code memberOf}:
+ *
+ * <pre>
+ *   alice, bob -> staff -> everyone -> all
+ *                 staff ------------> all
+ * </pre>
+ */
+@SuppressWarnings("nls")
+public class MemberOfGroupSearchTest {
+  private static final String BASE = "dc=example,dc=com";
+  private static final String GROUPS = "ou=groups," + BASE;
+  private static final String ADMIN = "cn=admin";
+  private static final String PASSWORD = "secret";
+
+  private final AtomicInteger searches = new AtomicInteger();
+
+  private InMemoryDirectoryServer server;
+  private LDAP ldap;
+
+  @Before
+  public void setUp() throws Exception {
+    InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE);
+    config.addAdditionalBindCredentials(ADMIN, PASSWORD);
+    // memberOf isn't part of groupOfNames
+    config.setSchema(null);
+    config.addInMemoryOperationInterceptor(
+        new InMemoryOperationInterceptor() {
+          @Override
+          public void processSearchRequest(InMemoryInterceptedSearchRequest request) {
+            searches.incrementAndGet();
+          }
+        });
+
+    server = new InMemoryDirectoryServer(config);
+    server.add("dn: " + BASE, "objectClass: domain", "dc: example");
+    server.add("dn: ou=people," + BASE, "objectClass: organizationalUnit", "ou: people");
+    server.add("dn: " + GROUPS, "objectClass: organizationalUnit", "ou: groups");
+    addUser("alice");
+    addUser("bob");
+    addGroup("staff", new String[] {"alice", "bob"}, group("everyone"), group("all"));
+    addGroup("everyone", new String[] {group("staff")}, group("all"));
+    addGroup("all", new String[] {group("staff"), group("everyone")});
+    server.startListening();
+
+    LDAPSettings settings = new LDAPSettings();
+    settings.setUrl("ldap://localhost:" + server.getListenPort());
+    settings.setBases(Lists.newArrayList(BASE));
+    settings.setAdminUsername(ADMIN);
+    settings.setAdminPassword(PASSWORD);
+    settings.setGroupObject("groupOfNames");
+    settings.setAttributes(
+        ImmutableMap.<String, String>builder()
+            .put("id", "uid")
+            .put("username", "uid")
+            .put("givenname", "givenName")
+            .put("surname", "sn")
+            .put("email", "mail")
+            .put("member", "member")
+            .put("memberOf", "memberOf")
+            .put("memberKey", "uid")
+            .put("groupId", "cn")
+            .build());
+    ldap = new LDAP(settings, new PlainEncryptionService());
+  }
+
+  @After
+  public void tearDown() {
+    server.shutDown(true);
+  }
+
+  @Test
+  public void testNestedGroupsResolvedOnce() throws NamingException {
+    List<String> groups = getGroupIds("alice");
+    assertEquals(3, groups.size());
+    assertTrue(groups.contains("staff"));
+    assertTrue(groups.contains("everyone"));
+    assertTrue(groups.contains("all"));
+  }
+
+  @Test
+  public void testLevelSearchedInOneGo() throws NamingException {
+    getGroupIds("alice");
+    // The user, their groups, then one search for the parents of staff. The parents of everyone
+    // and all are known from memberOf and have already been found.
+    assertEquals(3, searches.get());
+  }
+
+  @Test
+  public void testGroupGraphSharedBetweenUsers() throws NamingException {
+    getGroupIds("alice");
+    searches.set(0);
+
+    List<String> groups = getGroupIds("bob");
+    assertEquals(3, groups.size());
+    // Only the user and their immediate groups, the nesting above staff comes from the graph
+    assertEquals(2, searches.get());
+  }
+
+  @Test
+  public void testPurgeRefreshesGroup() throws Exception {
+    getGroupIds("alice");
+
+    addGroup("root", new String[] {group("everyone")});
+    server.modify(
+        group("everyone"), new Modification(ModificationType.ADD, "memberOf", group("root")));
+
+    // Still using the cached nesting of everyone
+    assertFalse(getGroupIds("bob").contains("root"));
+
+    ldap.getGroupSearch().purgeFromCaches("everyone");
+    List<String> groups = getGroupIds("bob");
+    assertEquals(4, groups.size());
+    assertTrue(groups.contains("root"));
+  }
+
+  private List<String> getGroupIds(String userId) throws NamingException {
+    DirContext ctx = ldap.bind(ADMIN, PASSWORD, false, false);
+    try {
+      List<String> ids = new ArrayList<String>();
+      for (GroupBean group : ldap.getGroupSearch().getGroupsContainingUser(ctx, userId)) {
+        ids.add(group.getUniqueID());
+      }
+      return ids;
+    } finally {
+      ctx.close();
+    }
+  }
+
+  private void addUser(String uid) throws Exception {
+    server.add(
+        "dn: uid=" + uid + ",ou=people," + BASE,
+        "objectClass: person",
+        "objectClass: organizationalPerson",
+        "objectClass: inetOrgPerson",
+        "uid: " + uid,
+        "cn: " + uid,
+        "sn: " + uid,
+        "givenName: " + uid,
+        "mail: " + uid + "@example.com");
+  }
+
+  private void addGroup(String cn, String[] members, String... memberOf) throws Exception {
+    List<String> ldif = Lists.newArrayList("dn: " + group(cn), "objectClass: groupOfNames");
+    ldif.add("cn: " + cn);
+    for (String member : members) {
+      ldif.add("member: " + member);
+    }
+    for (String parent : memberOf) {
+      ldif.add("memberOf: " + parent);
+    }
+    server.add(ldif.toArray(new String[ldif.size()]));
+  }
+
+  private static String group(String cn) {
+    return "cn=" + cn + "," + GROUPS;
+  }
+
+  private static class PlainEncryptionService implements EncryptionService {
+    @Override
+    public String encrypt(String value) {
+      return value;
+    }
+
+    @Override
+    public String decrypt(String value) {
+      return value;
+    }
+  }
+}
@@ -276,7 +276,9 @@ public class ReportingServiceImpl
 
         HTMLRenderOption html = new HTMLRenderOption(options);
         html.setImageDirectory(
-            getFileSystemService().getExternalFile(entityFile, "image").getAbsolutePath());
+            getFileSystemService()
+                .getExternalFileForReading(entityFile, "image")
+                .getAbsolutePath());
         html.setBaseImageURL("image");
 
         new PDFRenderOption(options);
@@ -375,11 +377,12 @@ public class ReportingServiceImpl
               FileSystemService fsys = getFileSystemService();
               String fullFile = folder + filename;
               if (fsys.fileExists(file, fullFile)) {
-                return fsys.getExternalFile(file, fullFile).toURI().toURL();
+                return fsys.getExternalFileForReading(file, fullFile).toURI().toURL();
               }
               Report otherReport = getReportForFilename(filename);
               if (otherReport != null) {
-                return fsys.getExternalFile(new EntityFile(otherReport), otherReport.getFilename())
+                return fsys.getExternalFileForReading(
+                        new EntityFile(otherReport), otherReport.getFilename())
                     .toURI()
                     .toURL();
               }
@@ -22,6 +22,7 @@ import com.google.common.io.ByteStreams;
 import com.tle.core.cluster.service.ClusterMessagingService;
 import com.tle.core.plugins.PluginAwareObjectInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -30,6 +31,7 @@ import java.text.MessageFormat;
 import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.InflaterInputStream;
 import org.apache.log4j.Logger;
 
 @SuppressWarnings("nls")
@@ -45,6 +47,7 @@ public class MessageReceiver implements Runnable {
   private final String senderId; // Remote node
 
   private long messageOffset = -1;
+  private long senderSession; // Zero until the first connection
   private boolean die;
 
   private Executor executor;
@@ -94,9 +97,17 @@ public class MessageReceiver implements Runnable {
         dos.writeUTF(senderId);
         dos.writeUTF(myId);
         dos.writeLong(messageOffset);
+        dos.writeLong(senderSession);
         dos.flush();
 
         DataInputStream dis = new DataInputStream(socket.getInputStream());
+        long session = dis.readLong();
+        if (session != senderSession) {
+          // The remote node has restarted (or this is the first connection), so its offsets have
+          // started again
+          senderSession = session;
+          messageOffset = -1;
+        }
         while (!die) {
           lastConnected = System.currentTimeMillis();
           long cmo = dis.readLong();
@@ -108,48 +119,85 @@ public class MessageReceiver implements Runnable {
             continue;
           }
 
-          if (messageOffset != -1 && cmo != messageOffset) {
-            if (LOGGER.isTraceEnabled()) {
-              LOGGER.trace(
-                  MessageFormat.format(
-                      "Expected offset: {0}, Current offset: {1}", messageOffset, cmo));
-            }
-            LOGGER.warn(
-                "Message offset greater than known offset. Messages may have been missed. Offset expected: "
-                    + messageOffset
-                    + ", Offset received: "
-                    + cmo);
+          int count = dis.readInt();
+          boolean compressed = dis.readBoolean();
+          int payloadSize = dis.readInt();
+
+          if (count > ClusterMessagingService.MAX_BATCH_MESSAGES
+              || payloadSize > ClusterMessagingService.MAX_FRAME_SIZE) {
+            throw new RuntimeException("Message too big!");
           }
 
           if (LOGGER.isTraceEnabled()) {
-            LOGGER.trace(MessageFormat.format("Receiving message from NODE: {0}", senderId));
+            LOGGER.trace(
+                MessageFormat.format(
+                    "Receiving batch of {0} messages from NODE: {1}", count, senderId));
           }
 
-          int messageSize = dis.readInt();
+          byte[] payload = new byte[payloadSize];
+          ByteStreams.readFully(dis, payload);
+          lastConnected = System.currentTimeMillis();
 
-          if (messageSize > ClusterMessagingService.MAX_MSG_SIZE) {
-            throw new RuntimeException("Message too big!");
-          }
+          DataInputStream pis =
+              new DataInputStream(
+                  compressed
+                      ? new InflaterInputStream(new ByteArrayInputStream(payload))
+                      : new ByteArrayInputStream(payload));
+          for (int i = 0; i < count; i++) {
+            long offset = pis.readLong();
+            int messageSize = pis.readInt();
+
+            if (messageSize > ClusterMessagingService.MAX_MSG_SIZE) {
+              throw new RuntimeException("Message too big!");
+            }
 
-          byte[] data = new byte[messageSize];
-          ByteStreams.readFully(dis, data);
-          lastConnected = System.currentTimeMillis();
+            byte[] data = new byte[messageSize];
+            ByteStreams.readFully(pis, data);
 
-          if (die) {
-            break;
-          }
+            if (die) {
+              break;
+            }
+
+            if (messageOffset != -1 && offset < messageOffset) {
+              // Resent after a reconnect, but already handled before the connection failed
+              if (LOGGER.isTraceEnabled()) {
+                LOGGER.trace(
+                    MessageFormat.format(
+                        "Skipping duplicate message. Expected offset: {0}, Current offset: {1}",
+                        messageOffset, offset));
+              }
+              continue;
+            }
+            if (messageOffset != -1 && offset != messageOffset) {
+              if (LOGGER.isTraceEnabled()) {
+                LOGGER.trace(
+                    MessageFormat.format(
+                        "Expected offset: {0}, Current offset: {1}", messageOffset, offset));
+              }
+              LOGGER.warn(
+                  "Message offset greater than known offset. Messages may have been missed. Offset expected: "
+                      + messageOffset
+                      + ", Offset received: "
+                      + offset);
+            }
 
-          Object msg = PluginAwareObjectInputStream.fromBytes(data);
-          for (ClusterMessageHandler h : handlers) {
-            Runnable handler = h.canHandle(msg);
-            if (handler != null) {
-              executor.execute(handler);
+            Object msg = PluginAwareObjectInputStream.fromBytes(data);
+            for (ClusterMessageHandler h : handlers) {
+              Runnable handler = h.canHandle(msg);
+              if (handler != null) {
+                executor.execute(handler);
+              }
             }
+            messageOffset = offset + 1;
+          }
+
+          if (die) {
+            break;
           }
 
-          dos.writeBoolean(true);
+          // Acknowledge the batch with the next offset we expect
+          dos.writeLong(messageOffset);
           dos.flush();
-          messageOffset = cmo + 1;
         }
       } catch (IOException ex) {
         logError(senderId, ex);
@@ -20,74 +20,205 @@ package com.tle.core.cluster;
 
 import com.tle.core.cluster.exception.MessagingException;
 import com.tle.core.cluster.service.ClusterMessagingService;
+import com.tle.core.cluster.service.PeerStatistics;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.text.MessageFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import org.apache.log4j.Logger;
 
+/**
+ * Sends queued messages to a single remote node. Queued messages are coalesced into batches (see
+ * {@link ClusterMessagingService#MAX_BATCH_SIZE}) and up to {@link #WINDOW_SIZE} batches may be
+ * sent before an acknowledgement is required. Every message carries its own offset, so the receiver
+ * can still detect messages that were dropped from a full queue.
+ *
+ * <p>The wire format of a batch is: offset of the first message (or -1 for a keep-alive), number
+ * of messages, compressed flag, payload length and then the payload, which is a sequence of
+ * (offset, length, bytes) for each message. The receiver acknowledges each batch with the next
+ * offset it expects.
+ *
+ * <p>On connection the receiver sends the next offset it expects and the session of the sender it
+ * was last connected to, and the sender replies with its own session. Offsets are only comparable
+ * within a session, which lasts as long as this sender, so messages the receiver has already
+ * handled are only skipped if the sessions match.
+ */
 @SuppressWarnings("nls")
 public class MessageSender {
   private static final Logger LOGGER = Logger.getLogger(MessageSender.class);
 
+  /** The maximum number of unacknowledged batches. */
+  public static final int WINDOW_SIZE = 8;
+  /** Batches smaller than this aren't worth compressing. */
+  private static final int MIN_COMPRESS_SIZE = 4 * 1024;
+
   private String receiverId; // Remote node
-  private final BlockingDeque<byte[]> msgQueue = new LinkedBlockingDeque<>();
+  private final boolean compress;
+  private final BlockingDeque<QueuedMessage> msgQueue = new LinkedBlockingDeque<>();
+  private final Deque<Batch> unacknowledged = new ArrayDeque<>();
   private long totalQueueSize;
-  private long headOffset = 0;
+  private long nextOffset = 0;
+  private final long session = newSession();
+
+  private final AtomicLong sentMessages = new AtomicLong();
+  private final AtomicLong sentBatches = new AtomicLong();
+  private final AtomicLong sentBytes = new AtomicLong();
+  private final AtomicLong droppedMessages = new AtomicLong();
 
   public MessageSender(String receiverId) {
+    this(receiverId, false);
+  }
+
+  public MessageSender(String receiverId, boolean compress) {
     this.receiverId = receiverId;
+    this.compress = compress;
   }
 
   public void sendMessages(DataOutputStream dos, DataInputStream dis)
       throws IOException, InterruptedException {
-    byte[] msg = msgQueue.poll(5, TimeUnit.SECONDS);
-    if (msg == null) {
-      if (LOGGER.isDebugEnabled()) {
-        LOGGER.debug(MessageFormat.format("Sending keepalive to NODE: {0}", receiverId));
-      }
-      dos.writeLong(-1);
-      dos.flush();
-      return;
-    }
-
     boolean processed = false;
     try {
-      dos.writeLong(headOffset);
-      int msgSize = msg.length;
-      dos.writeInt(msgSize);
-      dos.write(msg);
-      dos.flush();
-
-      if (LOGGER.isTraceEnabled()) {
-        LOGGER.trace(MessageFormat.format("Sending message to NODE: {0}", receiverId));
+      // Collect any acknowledgements that have already arrived
+      while (!unacknowledged.isEmpty() && dis.available() >= 8) {
+        acknowledge(dis.readLong());
       }
 
-      dis.readBoolean();
+      // Window is full, or there is nothing left to send and we are
+      // waiting on the remote node
+      if (unacknowledged.size() >= WINDOW_SIZE
+          || (!unacknowledged.isEmpty() && msgQueue.isEmpty())) {
+        acknowledge(dis.readLong());
+        processed = true;
+        return;
+      }
 
-      synchronized (this) {
-        totalQueueSize -= msgSize;
-        headOffset++;
+      QueuedMessage first = msgQueue.poll(5, TimeUnit.SECONDS);
+      if (first == null) {
+        if (LOGGER.isDebugEnabled()) {
+          LOGGER.debug(MessageFormat.format("Sending keepalive to NODE: {0}", receiverId));
+        }
+        dos.writeLong(-1);
+        dos.flush();
         processed = true;
+        return;
+      }
+
+      Batch batch = new Batch();
+      batch.add(first);
+      QueuedMessage next;
+      while (batch.size < ClusterMessagingService.MAX_BATCH_SIZE
+          && batch.count() < ClusterMessagingService.MAX_BATCH_MESSAGES
+          && (next = msgQueue.poll()) != null) {
+        batch.add(next);
+      }
+      addUnacknowledged(batch);
+
+      writeBatch(dos, batch);
+      processed = true;
+
+      if (LOGGER.isTraceEnabled()) {
+        LOGGER.trace(
+            MessageFormat.format(
+                "Sent batch of {0} messages to NODE: {1}", batch.messages.size(), receiverId));
       }
     } finally {
       if (!processed) {
-        msgQueue.addFirst(msg);
+        requeueUnacknowledged();
+      }
+    }
+  }
+
+  private void writeBatch(DataOutputStream dos, Batch batch) throws IOException {
+    ByteArrayOutputStream payload =
+        new ByteArrayOutputStream((int) batch.size + 12 * batch.count());
+    boolean compressed = compress && batch.size >= MIN_COMPRESS_SIZE;
+    Deflater deflater = compressed ? new Deflater(Deflater.BEST_SPEED) : null;
+    try {
+      DataOutputStream pos =
+          new DataOutputStream(
+              compressed ? new DeflaterOutputStream(payload, deflater) : payload);
+      for (QueuedMessage msg : batch.messages) {
+        pos.writeLong(msg.offset);
+        pos.writeInt(msg.data.length);
+        pos.write(msg.data);
+      }
+      pos.close();
+    } finally {
+      if (deflater != null) {
+        deflater.end();
+      }
+    }
+
+    dos.writeLong(batch.messages.get(0).offset);
+    dos.writeInt(batch.count());
+    dos.writeBoolean(compressed);
+    dos.writeInt(payload.size());
+    payload.writeTo(dos);
+    dos.flush();
+
+    sentBatches.incrementAndGet();
+    sentMessages.addAndGet(batch.count());
+    sentBytes.addAndGet(payload.size());
+  }
+
+  private synchronized void addUnacknowledged(Batch batch) {
+    unacknowledged.addLast(batch);
+  }
+
+  private synchronized void acknowledge(long expectedOffset) {
+    Iterator<Batch> iter = unacknowledged.iterator();
+    while (iter.hasNext()) {
+      Batch batch = iter.next();
+      if (batch.getLastOffset() >= expectedOffset) {
+        break;
       }
+      totalQueueSize -= batch.size;
+      iter.remove();
     }
   }
 
-  public void checkExpectedOffset(DataInputStream dis) throws IOException {
+  /** Puts unacknowledged messages back at the head of the queue, keeping their order. */
+  private synchronized void requeueUnacknowledged() {
+    Iterator<Batch> batches = unacknowledged.descendingIterator();
+    while (batches.hasNext()) {
+      List<QueuedMessage> messages = batches.next().messages;
+      for (int i = messages.size() - 1; i >= 0; i--) {
+        msgQueue.addFirst(messages.get(i));
+      }
+    }
+    unacknowledged.clear();
+  }
+
+  public void checkExpectedOffset(DataInputStream dis, DataOutputStream dos) throws IOException {
     long expectedOffset = dis.readLong();
+    long receiverSession = dis.readLong();
+    dos.writeLong(session);
+    dos.flush();
+
+    if (receiverSession != session) {
+      // The receiver's offset belongs to an earlier sender, so it says nothing about this queue
+      return;
+    }
+    long headOffset = skipDelivered(expectedOffset);
     if (LOGGER.isTraceEnabled()) {
       LOGGER.trace(
           MessageFormat.format(
               "Expected offset: {0}, Head offset: {1}", expectedOffset, headOffset));
     }
-    if (expectedOffset != -1 && expectedOffset != headOffset) {
+    if (expectedOffset != -1 && expectedOffset < headOffset) {
       LOGGER.warn(
           MessageFormat.format(
               "NODE: {0} was down for too long. {1} messages have been missed",
@@ -95,21 +226,44 @@ public class MessageSender {
     }
   }
 
-  public synchronized void queueMessage(byte[] msg) {
-    totalQueueSize += msg.length;
+  /**
+   * Removes queued messages that the receiver had already handled before the connection failed
+   * (they were requeued because their acknowledgement never arrived).
+   *
+   * @return The offset of the next message to be sent
+   */
+  private synchronized long skipDelivered(long expectedOffset) {
+    QueuedMessage head;
+    while ((head = msgQueue.peekFirst()) != null && head.offset < expectedOffset) {
+      msgQueue.removeFirst();
+      totalQueueSize -= head.data.length;
+    }
+    return head != null ? head.offset : nextOffset;
+  }
+
+  private static long newSession() {
+    long session;
+    do {
+      session = new Random().nextLong();
+    } while (session == 0);
+    return session;
+  }
 
+  public synchronized void queueMessage(byte[] msg) {
     if (msg.length > ClusterMessagingService.MAX_MSG_SIZE) {
       throw new MessagingException("Message is too large");
     }
 
+    totalQueueSize += msg.length;
+
     int droppedMsgs = 0;
     while (totalQueueSize > ClusterMessagingService.MAX_QUEUE_SIZE && !msgQueue.isEmpty()) {
-      byte[] firstMsg = msgQueue.removeFirst();
-      totalQueueSize -= firstMsg.length;
-      headOffset++;
+      QueuedMessage firstMsg = msgQueue.removeFirst();
+      totalQueueSize -= firstMsg.data.length;
       droppedMsgs++;
     }
     if (droppedMsgs > 0) {
+      droppedMessages.addAndGet(droppedMsgs);
       LOGGER.warn("Dropped " + droppedMsgs + " messages from queue for NODE: " + receiverId);
     }
 
@@ -119,6 +273,46 @@ public class MessageSender {
               "Queueing message of size: {0}, Total queue size: {1}", msg.length, totalQueueSize));
     }
 
-    msgQueue.add(msg);
+    msgQueue.add(new QueuedMessage(nextOffset++, msg));
+  }
+
+  public synchronized PeerStatistics getStatistics() {
+    return new PeerStatistics(
+        receiverId,
+        msgQueue.size(),
+        totalQueueSize,
+        unacknowledged.size(),
+        sentMessages.get(),
+        sentBatches.get(),
+        sentBytes.get(),
+        droppedMessages.get());
+  }
+
+  private static class QueuedMessage {
+    final long offset;
+    final byte[] data;
+
+    QueuedMessage(long offset, byte[] data) {
+      this.offset = offset;
+      this.data = data;
+    }
+  }
+
+  private static class Batch {
+    final List<QueuedMessage> messages = new ArrayList<>();
+    long size;
+
+    void add(QueuedMessage msg) {
+      messages.add(msg);
+      size += msg.data.length;
+    }
+
+    int count() {
+      return messages.size();
+    }
+
+    long getLastOffset() {
+      return messages.get(messages.size() - 1).offset;
+    }
   }
 }
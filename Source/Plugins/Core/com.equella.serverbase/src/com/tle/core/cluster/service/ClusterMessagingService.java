@@ -19,12 +19,20 @@
 package com.tle.core.cluster.service;
 
 import java.io.Serializable;
+import java.util.Collection;
 
 public interface ClusterMessagingService {
   static final int MAX_MSG_SIZE = 5 * 1024 * 1024;
   static final int MAX_QUEUE_SIZE = 20 * 1024 * 1024;
+  static final int MAX_BATCH_SIZE = 1024 * 1024;
+  static final int MAX_BATCH_MESSAGES = 1000;
+  /** A batch can exceed MAX_BATCH_SIZE by at most one message and the per message headers. */
+  static final int MAX_FRAME_SIZE = MAX_BATCH_SIZE + MAX_MSG_SIZE + 12 * MAX_BATCH_MESSAGES;
 
   void postMessage(Serializable msg);
 
   void postMessage(String toNodeIdOnly, Serializable msg);
+
+  /** Queue and throughput statistics for the messages being sent to each of the other nodes. */
+  Collection<PeerStatistics> getPeerStatistics();
 }
@@ -0,0 +1,106 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.cluster.service;
+
+/** A snapshot of the messages sent, queued and dropped for a single remote node. */
+@SuppressWarnings("nls")
+public class PeerStatistics {
+  private final String nodeId;
+  private final int queuedMessages;
+  private final long queuedBytes;
+  private final int unacknowledgedBatches;
+  private final long sentMessages;
+  private final long sentBatches;
+  private final long sentBytes;
+  private final long droppedMessages;
+
+  public PeerStatistics(
+      String nodeId,
+      int queuedMessages,
+      long queuedBytes,
+      int unacknowledgedBatches,
+      long sentMessages,
+      long sentBatches,
+      long sentBytes,
+      long droppedMessages) {
+    this.nodeId = nodeId;
+    this.queuedMessages = queuedMessages;
+    this.queuedBytes = queuedBytes;
+    this.unacknowledgedBatches = unacknowledgedBatches;
+    this.sentMessages = sentMessages;
+    this.sentBatches = sentBatches;
+    this.sentBytes = sentBytes;
+    this.droppedMessages = droppedMessages;
+  }
+
+  public String getNodeId() {
+    return nodeId;
+  }
+
+  public int getQueuedMessages() {
+    return queuedMessages;
+  }
+
+  /** Includes messages which have been sent but not yet acknowledged. */
+  public long getQueuedBytes() {
+    return queuedBytes;
+  }
+
+  public int getUnacknowledgedBatches() {
+    return unacknowledgedBatches;
+  }
+
+  public long getSentMessages() {
+    return sentMessages;
+  }
+
+  public long getSentBatches() {
+    return sentBatches;
+  }
+
+  /** The number of bytes written to the wire, after any compression. */
+  public long getSentBytes() {
+    return sentBytes;
+  }
+
+  public long getDroppedMessages() {
+    return droppedMessages;
+  }
+
+  @Override
+  public String toString() {
+    return "NODE: "
+        + nodeId
+        + " queued["
+        + queuedMessages
+        + "] queuedBytes["
+        + queuedBytes
+        + "] unacknowledged["
+        + unacknowledgedBatches
+        + "] sent["
+        + sentMessages
+        + "] batches["
+        + sentBatches
+        + "] sentBytes["
+        + sentBytes
+        + "] dropped["
+        + droppedMessages
+        + "]";
+  }
+}
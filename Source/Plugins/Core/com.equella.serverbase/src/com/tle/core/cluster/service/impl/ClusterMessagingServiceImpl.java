@@ -35,6 +35,7 @@ import com.tle.core.cluster.ClusterMessageHandler;
 import com.tle.core.cluster.MessageReceiver;
 import com.tle.core.cluster.MessageSender;
 import com.tle.core.cluster.service.ClusterMessagingService;
+import com.tle.core.cluster.service.PeerStatistics;
 import com.tle.core.guice.Bind;
 import com.tle.core.plugins.PluginAwareObjectOutputStream;
 import com.tle.core.plugins.PluginTracker;
@@ -51,6 +52,7 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.UnknownHostException;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -87,6 +89,10 @@ public class ClusterMessagingServiceImpl
   @Named("messaging.bindPort")
   private int bindPort;
 
+  @Inject(optional = true)
+  @Named("messaging.compressBatches")
+  private boolean compressBatches = true;
+
   @Inject private PluginTracker<ClusterMessageHandler> handlerTracker;
   @Inject private ZookeeperService zookeeperService;
 
@@ -120,7 +126,7 @@ public class ClusterMessagingServiceImpl
                   if (LOGGER.isDebugEnabled()) {
                     LOGGER.debug("Loading sender cache for NODE: " + receiverId);
                   }
-                  return new MessageSender(receiverId);
+                  return new MessageSender(receiverId, compressBatches);
                 }
               });
 
@@ -167,7 +173,7 @@ public class ClusterMessagingServiceImpl
                             receiverId = dis.readUTF();
                             LOGGER.info("Successful connection from NODE: " + receiverId);
                             MessageSender ms = senders.get(receiverId);
-                            ms.checkExpectedOffset(dis);
+                            ms.checkExpectedOffset(dis, dos);
                             while (true) {
                               ms.sendMessages(dos, dis);
                               ms = senders.get(receiverId);
@@ -296,4 +302,13 @@ public class ClusterMessagingServiceImpl
       }
     }
   }
+
+  @Override
+  public Collection<PeerStatistics> getPeerStatistics() {
+    List<PeerStatistics> stats = new ArrayList<>();
+    for (MessageSender ms : senders.asMap().values()) {
+      stats.add(ms.getStatistics());
+    }
+    return stats;
+  }
 }
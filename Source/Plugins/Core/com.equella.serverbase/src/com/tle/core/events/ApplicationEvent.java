@@ -19,6 +19,7 @@
 package com.tle.core.events;
 
 import com.tle.annotation.NonNullByDefault;
+import com.tle.annotation.Nullable;
 import com.tle.core.events.listeners.ApplicationListener;
 import java.io.Serializable;
 
@@ -48,6 +49,24 @@ public abstract class ApplicationEvent<T extends ApplicationListener> implements
     return false;
   }
 
+  /**
+   * Events of the same class and institution that return equal (non-null) keys are delivered in
+   * the order they were published, and while one is waiting to be delivered any later ones are
+   * merged into it with {@link #coalesce(ApplicationEvent)}.
+   */
+  @Nullable
+  public Object getCoalesceKey() {
+    return null;
+  }
+
+  /**
+   * Merges a later event with the same coalesce key into this one. The default is for the events
+   * to be equivalent, so the later one is dropped.
+   */
+  public ApplicationEvent<T> coalesce(ApplicationEvent<T> later) {
+    return this;
+  }
+
   public abstract Class<T> getListener();
 
   public abstract void postEvent(T listener);
@@ -21,11 +21,17 @@ package com.tle.core.events;
 import com.tle.common.NamedThreadFactory;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Logger;
 
 public final class DefaultExecutor {
+  private static final Logger LOGGER = Logger.getLogger(DefaultExecutor.class);
   private static final int MAX_THREADS = 150;
+  private static final int MAX_QUEUED = 10000;
+  private static final long MAX_WAIT_SECONDS = 30;
 
   public static final ExecutorService executor;
 
@@ -40,9 +46,34 @@ public final class DefaultExecutor {
             MAX_THREADS,
             60L,
             TimeUnit.SECONDS,
-            new LinkedBlockingQueue<Runnable>(),
-            new NamedThreadFactory("DefaultExecutor.executor"));
+            new LinkedBlockingQueue<Runnable>(MAX_QUEUED),
+            new NamedThreadFactory("DefaultExecutor.executor"),
+            new WaitForRoom());
     tpe.allowCoreThreadTimeOut(true);
     executor = tpe;
   }
+
+  /**
+   * Makes whoever is submitting wait for room in the queue rather than letting it grow without
+   * bound. If there's still no room after a while (e.g. every thread is itself waiting to submit)
+   * the task is run by the submitter, so nothing is ever dropped.
+   */
+  private static class WaitForRoom implements RejectedExecutionHandler {
+    @Override
+    public void rejectedExecution(Runnable r, ThreadPoolExecutor tpe) {
+      if (tpe.isShutdown()) {
+        throw new RejectedExecutionException("Executor has been shut down");
+      }
+      try {
+        if (tpe.getQueue().offer(r, MAX_WAIT_SECONDS, TimeUnit.SECONDS)) {
+          return;
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RejectedExecutionException(e);
+      }
+      LOGGER.warn("Executor queue has been full for " + MAX_WAIT_SECONDS + "s, running task now");
+      r.run();
+    }
+  }
 }
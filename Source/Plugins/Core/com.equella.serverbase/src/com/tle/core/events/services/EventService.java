@@ -21,6 +21,7 @@ package com.tle.core.events.services;
 import com.tle.beans.Institution;
 import com.tle.core.events.ApplicationEvent;
 import java.util.Collection;
+import java.util.List;
 
 public interface EventService {
   void publishApplicationEvent(ApplicationEvent<?> event);
@@ -31,4 +32,7 @@ public interface EventService {
    * attempt to post a synchronous event.
    */
   void publishApplicationEvent(Collection<Institution> institutions, ApplicationEvent<?> event);
+
+  /** Returns the queue depth and delivery times of each type of event published so far. */
+  List<EventStatistics> getEventStatistics();
 }
@@ -0,0 +1,70 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tle.core.events.services;
+
+/** A snapshot of how many events of a single type are queued, and how long they take to deliver. */
+public class EventStatistics {
+  private final String eventType;
+  private final int queuedEvents;
+  private final long deliveredEvents;
+  private final long coalescedEvents;
+  private final long totalDeliveryNanos;
+  private final long maxDeliveryNanos;
+
+  public EventStatistics(
+      String eventType,
+      int queuedEvents,
+      long deliveredEvents,
+      long coalescedEvents,
+      long totalDeliveryNanos,
+      long maxDeliveryNanos) {
+    this.eventType = eventType;
+    this.queuedEvents = queuedEvents;
+    this.deliveredEvents = deliveredEvents;
+    this.coalescedEvents = coalescedEvents;
+    this.totalDeliveryNanos = totalDeliveryNanos;
+    this.maxDeliveryNanos = maxDeliveryNanos;
+  }
+
+  /** The class name of the event. */
+  public String getEventType() {
+    return eventType;
+  }
+
+  public int getQueuedEvents() {
+    return queuedEvents;
+  }
+
+  public long getDeliveredEvents() {
+    return deliveredEvents;
+  }
+
+  /** Events that were merged into one already waiting, rather than delivered themselves. */
+  public long getCoalescedEvents() {
+    return coalescedEvents;
+  }
+
+  /** The time taken to deliver an event to all of its listeners. */
+  public long getAverageDeliveryNanos() {
+    return deliveredEvents == 0 ? 0 : totalDeliveryNanos / deliveredEvents;
+  }
+
+  public long getMaxDeliveryNanos() {
+    return maxDeliveryNanos;
+  }
+}
@@ -28,6 +28,7 @@ import com.tle.core.events.DefaultExecutor;
 import com.tle.core.events.EventExecutor;
 import com.tle.core.events.listeners.ApplicationListener;
 import com.tle.core.events.services.EventService;
+import com.tle.core.events.services.EventStatistics;
 import com.tle.core.guice.Bind;
 import com.tle.core.plugins.PluginBeanLocator;
 import com.tle.core.plugins.PluginService;
@@ -35,11 +36,17 @@ import com.tle.core.plugins.PluginTracker;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import org.java.plugin.registry.Extension;
@@ -59,8 +66,11 @@ public class EventServiceImpl implements EventService, ClusterMessageHandler {
   @Inject private PluginService pluginService;
 
   private EventExecutor executor;
-  private Map<String, List<ListenerFinder>> extensionMap;
-  private Map<String, Set<ApplicationListener>> extensionBeanMap;
+  private volatile ListenerCache listenerCache;
+
+  private final ConcurrentMap<LaneKey, Lane> lanes = new ConcurrentHashMap<LaneKey, Lane>();
+  private final ConcurrentMap<String, EventTypeStats> stats =
+      new ConcurrentHashMap<String, EventTypeStats>();
 
   private EventExecutor getExecutor() {
     if (executor == null) {
@@ -73,7 +83,18 @@ public class EventServiceImpl implements EventService, ClusterMessageHandler {
   public Runnable canHandle(Object msg) {
     if (msg instanceof RemoteEvent) {
       final RemoteEvent re = (RemoteEvent) msg;
-      return convertToRunnable(re.getInstitutionId(), re.getEvent());
+      final ApplicationEvent<?> event = re.getEvent();
+      if (event.getCoalesceKey() != null) {
+        // Give it the chance to be merged with others from the same burst
+        validateEvent(event, re.getInstitutionId());
+        return new Runnable() {
+          @Override
+          public void run() {
+            submitEvent(re.getInstitutionId(), event);
+          }
+        };
+      }
+      return convertToRunnable(re.getInstitutionId(), event);
     }
     return null;
   }
@@ -96,8 +117,39 @@ public class EventServiceImpl implements EventService, ClusterMessageHandler {
             });
   }
 
-  private void submitEvent(Institution institution, ApplicationEvent<?> event) {
-    DefaultExecutor.executor.submit(convertToRunnable(getInstitutionId(institution), event));
+  private void submitEvent(long institutionId, ApplicationEvent<?> event) {
+    Object coalesceKey = event.getCoalesceKey();
+    if (coalesceKey == null) {
+      final EventTypeStats eventStats = getStats(event);
+      final Runnable runnable = convertToRunnable(institutionId, event);
+      eventStats.queued.incrementAndGet();
+      DefaultExecutor.executor.submit(
+          new Runnable() {
+            @Override
+            public void run() {
+              eventStats.queued.decrementAndGet();
+              runnable.run();
+            }
+          });
+      return;
+    }
+
+    validateEvent(event, institutionId);
+    LaneKey laneKey = new LaneKey(institutionId, event.getClass(), coalesceKey);
+    while (true) {
+      Lane lane = lanes.get(laneKey);
+      if (lane == null) {
+        Lane newLane = new Lane(laneKey);
+        lane = lanes.putIfAbsent(laneKey, newLane);
+        if (lane == null) {
+          lane = newLane;
+        }
+      }
+      // A lane that has just emptied is closed, so try again with a new one
+      if (lane.offer(event)) {
+        return;
+      }
+    }
   }
 
   private void postEventToOthers(Institution institution, ApplicationEvent<?> event) {
@@ -115,6 +167,7 @@ public class EventServiceImpl implements EventService, ClusterMessageHandler {
 
     Set<ApplicationListener> listeners = getListeners(event.getListener());
     Throwable firstEx = null;
+    long start = System.nanoTime();
     for (ApplicationListener listener : listeners) {
       try {
         eventHack.postEvent(listener);
@@ -130,60 +183,259 @@ public class EventServiceImpl implements EventService, ClusterMessageHandler {
         }
       }
     }
+    getStats(event).delivered(System.nanoTime() - start);
     if (firstEx != null) {
       throw new RuntimeException(firstEx);
     }
   }
 
-  private synchronized Set<ApplicationListener> getListeners(Class<?> clazz) {
-    if (extensionBeanMap == null || pluginListeners.needsUpdate()) {
-      extensionBeanMap = new HashMap<String, Set<ApplicationListener>>();
-    }
-
+  private Set<ApplicationListener> getListeners(Class<?> clazz) {
+    ListenerCache cache = getListenerCache();
     String clazzName = clazz.getName();
 
-    Set<ApplicationListener> listeners = extensionBeanMap.get(clazzName);
+    Set<ApplicationListener> listeners = cache.listeners.get(clazzName);
     if (listeners != null) {
       return listeners;
     }
 
-    listeners = new HashSet<ApplicationListener>();
-    List<ListenerFinder> extList = getExtensionMap().get(clazzName);
+    Set<ApplicationListener> found = new HashSet<ApplicationListener>();
+    List<ListenerFinder> extList = cache.extensions.get(clazzName);
     if (extList != null) {
       for (ListenerFinder finder : extList) {
-        finder.addListeners(listeners);
+        finder.addListeners(found);
       }
     }
-    extensionBeanMap.put(clazzName, listeners);
+    listeners = cache.listeners.putIfAbsent(clazzName, Collections.unmodifiableSet(found));
+    return listeners != null ? listeners : cache.listeners.get(clazzName);
+  }
 
-    return listeners;
+  /**
+   * Listeners are looked up without any locking, only rebuilding the extension map (under a lock)
+   * after the plugins have changed.
+   */
+  private ListenerCache getListenerCache() {
+    ListenerCache cache = listenerCache;
+    if (cache == null || pluginListeners.needsUpdate()) {
+      synchronized (this) {
+        cache = listenerCache;
+        if (cache == null || pluginListeners.needsUpdate()) {
+          cache = new ListenerCache(buildExtensionMap());
+          listenerCache = cache;
+        }
+      }
+    }
+    return cache;
   }
 
-  private synchronized Map<String, List<ListenerFinder>> getExtensionMap() {
-    if (extensionMap == null || pluginListeners.needsUpdate()) {
-      extensionMap = new HashMap<String, List<ListenerFinder>>();
-      List<Extension> extensions = pluginListeners.getExtensions();
-      for (Extension extension : extensions) {
-        Parameter listenerParam = extension.getParameter("listener");
-        Collection<Parameter> listClasses = extension.getParameters("listenerClass");
-        for (Parameter listClassname : listClasses) {
-          String listenerClass = listClassname.valueAsString();
-          List<ListenerFinder> extList = extensionMap.get(listenerClass);
-          if (extList == null) {
-            extList = new ArrayList<ListenerFinder>();
-            extensionMap.put(listenerClass, extList);
-          }
-          if (listenerParam == null) {
-            extList.add(new ScanForListeners(listenerClass, extension));
-          } else {
-            extList.add(new BeanListener(listenerParam.valueAsString(), extension));
-          }
+  private Map<String, List<ListenerFinder>> buildExtensionMap() {
+    Map<String, List<ListenerFinder>> extensionMap = new HashMap<String, List<ListenerFinder>>();
+    List<Extension> extensions = pluginListeners.getExtensions();
+    for (Extension extension : extensions) {
+      Parameter listenerParam = extension.getParameter("listener");
+      Collection<Parameter> listClasses = extension.getParameters("listenerClass");
+      for (Parameter listClassname : listClasses) {
+        String listenerClass = listClassname.valueAsString();
+        List<ListenerFinder> extList = extensionMap.get(listenerClass);
+        if (extList == null) {
+          extList = new ArrayList<ListenerFinder>();
+          extensionMap.put(listenerClass, extList);
+        }
+        if (listenerParam == null) {
+          extList.add(new ScanForListeners(listenerClass, extension));
+        } else {
+          extList.add(new BeanListener(listenerParam.valueAsString(), extension));
         }
       }
     }
     return extensionMap;
   }
 
+  private static class ListenerCache {
+    private final Map<String, List<ListenerFinder>> extensions;
+    private final ConcurrentMap<String, Set<ApplicationListener>> listeners =
+        new ConcurrentHashMap<String, Set<ApplicationListener>>();
+
+    protected ListenerCache(Map<String, List<ListenerFinder>> extensions) {
+      this.extensions = extensions;
+    }
+  }
+
+  /**
+   * Delivers the events of one type, institution and coalesce key in order. At most one event is
+   * waiting at a time, anything published while it waits is merged into it.
+   */
+  private class Lane implements Runnable {
+    private final LaneKey key;
+    private ApplicationEvent<?> pending;
+    private boolean running;
+    private boolean closed;
+
+    protected Lane(LaneKey key) {
+      this.key = key;
+    }
+
+    /** @return false if the lane has emptied and been removed */
+    public boolean offer(ApplicationEvent<?> event) {
+      EventTypeStats eventStats = getStats(event);
+      boolean schedule;
+      synchronized (this) {
+        if (closed) {
+          return false;
+        }
+        if (pending != null) {
+          pending = coalesce(pending, event);
+          eventStats.coalesced.incrementAndGet();
+          return true;
+        }
+        pending = event;
+        eventStats.queued.incrementAndGet();
+        schedule = !running;
+        running = true;
+      }
+      if (schedule) {
+        final Runnable task = getExecutor().createRunnable(key.institutionId, this);
+        DefaultExecutor.executor.submit(
+            new Runnable() {
+              @Override
+              public void run() {
+                try {
+                  task.run();
+                } catch (Throwable t) {
+                  // e.g. the institution has gone, nothing in this lane can be delivered
+                  LOGGER.error("Error delivering events", t);
+                  abandon();
+                }
+              }
+            });
+      }
+      return true;
+    }
+
+    private synchronized void abandon() {
+      if (pending != null) {
+        getStats(pending).queued.decrementAndGet();
+        pending = null;
+      }
+      running = false;
+      closed = true;
+      lanes.remove(key, this);
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        ApplicationEvent<?> event;
+        synchronized (this) {
+          event = pending;
+          pending = null;
+          if (event == null) {
+            running = false;
+            closed = true;
+            lanes.remove(key, this);
+            return;
+          }
+        }
+        getStats(event).queued.decrementAndGet();
+        try {
+          executeEventNow(event);
+        } catch (Throwable t) {
+          LOGGER.error("Error in executeEventNow", t);
+        }
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static ApplicationEvent<?> coalesce(
+      ApplicationEvent<?> first, ApplicationEvent<?> later) {
+    return ((ApplicationEvent<ApplicationListener>) first)
+        .coalesce((ApplicationEvent<ApplicationListener>) later);
+  }
+
+  private static final class LaneKey {
+    private final long institutionId;
+    private final Class<?> eventClass;
+    private final Object coalesceKey;
+
+    protected LaneKey(long institutionId, Class<?> eventClass, Object coalesceKey) {
+      this.institutionId = institutionId;
+      this.eventClass = eventClass;
+      this.coalesceKey = coalesceKey;
+    }
+
+    @Override
+    public int hashCode() {
+      return (31 * Long.hashCode(institutionId) + eventClass.hashCode()) * 31
+          + coalesceKey.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof LaneKey)) {
+        return false;
+      }
+      LaneKey other = (LaneKey) obj;
+      return institutionId == other.institutionId
+          && eventClass == other.eventClass
+          && coalesceKey.equals(other.coalesceKey);
+    }
+  }
+
+  private EventTypeStats getStats(ApplicationEvent<?> event) {
+    String eventType = event.getClass().getName();
+    EventTypeStats eventStats = stats.get(eventType);
+    if (eventStats == null) {
+      EventTypeStats newStats = new EventTypeStats();
+      eventStats = stats.putIfAbsent(eventType, newStats);
+      if (eventStats == null) {
+        eventStats = newStats;
+      }
+    }
+    return eventStats;
+  }
+
+  @Override
+  public List<EventStatistics> getEventStatistics() {
+    List<EventStatistics> snapshot = new ArrayList<EventStatistics>();
+    for (Map.Entry<String, EventTypeStats> entry : stats.entrySet()) {
+      EventTypeStats eventStats = entry.getValue();
+      snapshot.add(
+          new EventStatistics(
+              entry.getKey(),
+              eventStats.queued.get(),
+              eventStats.delivered.get(),
+              eventStats.coalesced.get(),
+              eventStats.totalNanos.get(),
+              eventStats.maxNanos.get()));
+    }
+    Collections.sort(
+        snapshot,
+        new Comparator<EventStatistics>() {
+          @Override
+          public int compare(EventStatistics s1, EventStatistics s2) {
+            return s1.getEventType().compareTo(s2.getEventType());
+          }
+        });
+    return snapshot;
+  }
+
+  private static class EventTypeStats {
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void delivered(long nanos) {
+      delivered.incrementAndGet();
+      totalNanos.addAndGet(nanos);
+      long max = maxNanos.get();
+      while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+        max = maxNanos.get();
+      }
+    }
+  }
+
   private interface ListenerFinder {
     void addListeners(Set<ApplicationListener> listeners);
   }
@@ -272,10 +524,10 @@ public class EventServiceImpl implements EventService, ClusterMessageHandler {
         executeEventNow(event);
         break;
       case POST_ONLY_TO_SELF:
-        submitEvent(institution, event);
+        submitEvent(getInstitutionId(institution), event);
         break;
       case POST_TO_ALL_CLUSTER_NODES:
-        submitEvent(institution, event);
+        submitEvent(getInstitutionId(institution), event);
         postEventToOthers(institution, event);
         break;
       case POST_TO_OTHER_CLUSTER_NODES:
@@ -20,6 +20,9 @@ package com.tle.core.replicatedcache.impl;
 
 import com.tle.annotation.NonNull;
 import com.tle.core.events.ApplicationEvent;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 public final class ReplicatedCacheInvalidationEvent
     extends ApplicationEvent<ReplicatedCacheInvalidationListener> {
@@ -47,4 +50,17 @@ public final class ReplicatedCacheInvalidationEvent
   public boolean requiresInstitution() {
     return true;
   }
+
+  @Override
+  public Object getCoalesceKey() {
+    return cacheId;
+  }
+
+  @Override
+  public ApplicationEvent<ReplicatedCacheInvalidationListener> coalesce(
+      ApplicationEvent<ReplicatedCacheInvalidationListener> later) {
+    Set<String> merged = new LinkedHashSet<String>(Arrays.asList(keys));
+    merged.addAll(Arrays.asList(((ReplicatedCacheInvalidationEvent) later).keys));
+    return new ReplicatedCacheInvalidationEvent(cacheId, merged.toArray(new String[merged.size()]));
+  }
 }
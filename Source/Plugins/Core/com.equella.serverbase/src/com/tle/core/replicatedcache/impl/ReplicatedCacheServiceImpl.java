@@ -23,6 +23,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
@@ -52,8 +53,10 @@ import java.io.Serializable;
 import java.time.Instant;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import org.apache.commons.logging.Log;
@@ -97,14 +100,25 @@ public class ReplicatedCacheServiceImpl
     return cache;
   }
 
+  /**
+   * A near-cache in front of the replicated cache table. Reads are served from memory without any
+   * locking, and only go to the DB when the key is not held locally, when its TTL has passed or
+   * when it has been invalidated (locally or by a {@link ReplicatedCacheInvalidationEvent} from
+   * another node). Each entry is stamped with the invalidation clock of its institution at the time
+   * it was loaded, so a load racing with an invalidation can never resurrect the stale value.
+   */
   @NonNullByDefault
   private class ReplicatedCacheImpl<V extends Serializable> implements ReplicatedCache<V> {
     private final String cacheId;
-    private final LoadingCache<Institution, LoadingCache<String, Optional<ExpiringValue<V>>>> cache;
+    private final LoadingCache<Institution, InstitutionCache<V>> cache;
     private final long ttl;
     private final TimeUnit ttlUnit;
     private final boolean alwaysPersist;
 
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong dbLoads = new AtomicLong();
+
     public ReplicatedCacheImpl(
         String cacheId,
         final long maxLocalCacheSize,
@@ -122,66 +136,90 @@ public class ReplicatedCacheServiceImpl
           CacheBuilder.newBuilder()
               .expireAfterAccess(1, TimeUnit.DAYS)
               .build(
-                  new CacheLoader<Institution, LoadingCache<String, Optional<ExpiringValue<V>>>>() {
+                  new CacheLoader<Institution, InstitutionCache<V>>() {
                     @Override
-                    public LoadingCache<String, Optional<ExpiringValue<V>>> load(Institution key)
-                        throws Exception {
-                      return CacheBuilder.newBuilder()
-                          .maximumSize(maxLocalCacheSize)
-                          .softValues()
-                          .expireAfterWrite(ttl, ttlUnit)
-                          .expireAfterAccess(1, TimeUnit.DAYS)
-                          .build(
-                              new CacheLoader<String, Optional<ExpiringValue<V>>>() {
-                                @Override
-                                public Optional<ExpiringValue<V>> load(String key)
-                                    throws Exception {
-                                  if (!zookeeperService.isCluster() && !alwaysPersist) {
-                                    return Optional.absent();
-                                  }
-
-                                  CachedValue cv = dao.get(ReplicatedCacheImpl.this.cacheId, key);
-
-                                  // Return Absent so we don't keep looking it
-                                  // up.
-                                  if (cv == null) {
-                                    return Optional.absent();
-                                  }
-
-                                  @SuppressWarnings("unchecked")
-                                  V v = (V) PluginAwareObjectInputStream.fromBytes(cv.getValue());
-                                  return Optional.of(
-                                      ExpiringValue.expireAt(v, cv.getTtl().getTime()));
-                                }
-                              });
+                    public InstitutionCache<V> load(Institution key) throws Exception {
+                      return new InstitutionCache<V>(maxLocalCacheSize, ttl, ttlUnit);
                     }
                   });
     }
 
+    private boolean isPersisted() {
+      return alwaysPersist || zookeeperService.isCluster();
+    }
+
+    private StampedValue<V> load(InstitutionCache<V> c, String key) {
+      misses.incrementAndGet();
+      // Read the clock before going to the DB, so that an invalidation
+      // arriving while we load marks this value as stale.
+      long stamp = c.clock.get();
+      if (!isPersisted()) {
+        return new StampedValue<V>(Optional.<ExpiringValue<V>>absent(), stamp);
+      }
+
+      dbLoads.incrementAndGet();
+      CachedValue cv = dao.get(cacheId, key);
+      if (cv == null) {
+        return new StampedValue<V>(Optional.<ExpiringValue<V>>absent(), stamp);
+      }
+
+      @SuppressWarnings("unchecked")
+      V v = (V) PluginAwareObjectInputStream.fromBytes(cv.getValue());
+      return new StampedValue<V>(
+          Optional.of(ExpiringValue.expireAt(v, cv.getTtl().getTime())), stamp);
+    }
+
     @Override
-    public synchronized Optional<V> get(@NonNull String key) {
+    public Optional<V> get(@NonNull final String key) {
       checkNotNull(key);
-      if (alwaysPersist || zookeeperService.isCluster()) {
-        cache.refresh(CurrentInstitution.get());
-      }
 
-      LoadingCache<String, Optional<ExpiringValue<V>>> c;
+      final InstitutionCache<V> c;
       try {
         c = cache.get(CurrentInstitution.get());
-        Optional<ExpiringValue<V>> op = c.getUnchecked(key);
-        if (op.isPresent()) {
-          V ev = op.get().getValue();
-          return Optional.fromNullable(ev);
-        }
-
       } catch (ExecutionException e) {
         LOGGER.error("Fail to access cache of institution " + CurrentInstitution.get());
+        return Optional.absent();
+      }
+
+      StampedValue<V> sv = c.values.getIfPresent(key);
+      if (sv != null && c.isCurrent(key, sv)) {
+        hits.incrementAndGet();
+      } else {
+        if (sv != null) {
+          c.values.asMap().remove(key, sv);
+        }
+        try {
+          sv =
+              c.values.get(
+                  key,
+                  new Callable<StampedValue<V>>() {
+                    @Override
+                    public StampedValue<V> call() {
+                      return load(c, key);
+                    }
+                  });
+        } catch (ExecutionException e) {
+          throw Throwables.propagate(e.getCause());
+        }
+      }
+
+      Optional<ExpiringValue<V>> op = sv.value;
+      if (op.isPresent()) {
+        V ev = op.get().getValue();
+        if (ev != null) {
+          return Optional.of(ev);
+        }
+      }
+      // Don't hold on to misses when the DB is shared with other nodes,
+      // the value may be put elsewhere before we hear about it.
+      if (isPersisted()) {
+        c.values.asMap().remove(key, sv);
       }
       return Optional.absent();
     }
 
     @Override
-    public synchronized void put(@NonNull String key, @NonNull V value) {
+    public void put(@NonNull String key, @NonNull V value) {
       put(key, value, Instant.ofEpochMilli(System.currentTimeMillis() + ttlUnit.toMillis(ttl)));
     }
 
@@ -190,20 +228,19 @@ public class ReplicatedCacheServiceImpl
       checkNotNull(key);
       checkNotNull(value);
 
-      LoadingCache<String, Optional<ExpiringValue<V>>> c =
-          cache.getUnchecked(CurrentInstitution.get());
+      InstitutionCache<V> c = cache.getUnchecked(CurrentInstitution.get());
 
       // Do nothing if the value hasn't changed
-      Optional<ExpiringValue<V>> opExVal = c.getIfPresent(key);
-      if (opExVal != null && opExVal.isPresent()) {
-        V oldValue = opExVal.get().getValue();
+      StampedValue<V> current = c.values.getIfPresent(key);
+      if (current != null && current.value.isPresent() && c.isCurrent(key, current)) {
+        V oldValue = current.value.get().getValue();
         if (oldValue != null && oldValue.equals(value)) {
           return;
         }
       }
 
       // Update the DB state if it's clustered
-      if (alwaysPersist || zookeeperService.isCluster()) {
+      if (isPersisted()) {
         dao.put(cacheId, key, Date.from(dbEntryTTL), PluginAwareObjectOutputStream.toBytes(value));
       }
 
@@ -211,7 +248,11 @@ public class ReplicatedCacheServiceImpl
       invalidateOthers(key);
 
       // Update our local cache
-      c.put(key, Optional.of(ExpiringValue.expireAfter(value, ttl, ttlUnit)));
+      c.values.put(
+          key,
+          new StampedValue<V>(
+              Optional.of(ExpiringValue.expireAfter(value, ttl, ttlUnit)),
+              c.clock.incrementAndGet()));
     }
 
     @Override
@@ -221,7 +262,7 @@ public class ReplicatedCacheServiceImpl
         return;
       }
 
-      if (alwaysPersist || zookeeperService.isCluster()) {
+      if (isPersisted()) {
         dao.invalidate(cacheId, keys);
       }
 
@@ -230,14 +271,24 @@ public class ReplicatedCacheServiceImpl
     }
 
     public void invalidateLocal(String... keys) {
-      LoadingCache<String, ?> c = cache.getIfPresent(CurrentInstitution.get());
+      InstitutionCache<V> c = cache.getIfPresent(CurrentInstitution.get());
       if (c != null) {
-        for (String key : keys) {
-          c.invalidate(key);
-        }
+        c.invalidate(keys);
       }
     }
 
+    public String getStats() {
+      return "Replicated cache["
+          + cacheId
+          + "] hits["
+          + hits.get()
+          + "] misses["
+          + misses.get()
+          + "] DB loads["
+          + dbLoads.get()
+          + "]";
+    }
+
     private void invalidateOthers(String... keys) {
       eventService.publishApplicationEvent(new ReplicatedCacheInvalidationEvent(cacheId, keys));
     }
@@ -269,6 +320,62 @@ public class ReplicatedCacheServiceImpl
     }
   }
 
+  /** The local values of one replicated cache for a single institution. */
+  @NonNullByDefault
+  private static class InstitutionCache<V extends Serializable> {
+    private final Cache<String, StampedValue<V>> values;
+    /** The clock value at which each recently invalidated key was invalidated. */
+    private final Cache<String, Long> invalidations;
+
+    private final AtomicLong clock = new AtomicLong();
+
+    protected InstitutionCache(long maxLocalCacheSize, long ttl, TimeUnit ttlUnit) {
+      values =
+          CacheBuilder.newBuilder()
+              .maximumSize(maxLocalCacheSize)
+              .softValues()
+              .expireAfterWrite(ttl, ttlUnit)
+              .expireAfterAccess(1, TimeUnit.DAYS)
+              .build();
+      invalidations =
+          CacheBuilder.newBuilder()
+              .maximumSize(maxLocalCacheSize)
+              .expireAfterWrite(ttl, ttlUnit)
+              .build();
+    }
+
+    /**
+     * A value is current if it hasn't passed its TTL and it was loaded (or put) after the last time
+     * its key was invalidated.
+     */
+    protected boolean isCurrent(String key, StampedValue<V> sv) {
+      if (sv.value.isPresent() && sv.value.get().isTimedOut()) {
+        return false;
+      }
+      Long invalidated = invalidations.getIfPresent(key);
+      return invalidated == null || sv.stamp >= invalidated;
+    }
+
+    protected void invalidate(String... keys) {
+      long stamp = clock.incrementAndGet();
+      for (String key : keys) {
+        invalidations.put(key, stamp);
+        values.invalidate(key);
+      }
+    }
+  }
+
+  @NonNullByDefault
+  private static class StampedValue<V> {
+    private final Optional<ExpiringValue<V>> value;
+    private final long stamp;
+
+    protected StampedValue(Optional<ExpiringValue<V>> value, long stamp) {
+      this.value = value;
+      this.stamp = stamp;
+    }
+  }
+
   @Override
   public void invalidateCacheEntries(String cacheId, String... keys) {
     ReplicatedCacheImpl<?> cache = caches.getIfPresent(cacheId);
@@ -303,5 +410,11 @@ public class ReplicatedCacheServiceImpl
   public void execute() {
     // Clear expired keys from DB
     dao.invalidateExpiredEntries();
+
+    if (LOGGER.isDebugEnabled()) {
+      for (ReplicatedCacheImpl<?> rci : caches.asMap().values()) {
+        LOGGER.debug(rci.getStats());
+      }
+    }
   }
 }
@@ -32,6 +32,7 @@ import ORG.oclc.oai.util.OAIUtil;
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
+import com.tle.annotation.Nullable;
 import com.tle.beans.entity.DynaCollection;
 import com.tle.beans.item.Item;
 import com.tle.beans.item.ItemId;
@@ -40,6 +41,7 @@ import com.tle.common.URLUtils;
 import com.tle.common.i18n.CurrentLocale;
 import com.tle.common.search.DefaultSearch;
 import com.tle.common.searching.Search.SortType;
+import com.tle.common.searching.SearchCursor;
 import com.tle.common.util.Dates;
 import com.tle.common.util.UtcDate;
 import com.tle.core.dynacollection.DynaCollectionService;
@@ -53,7 +55,7 @@ import com.tle.core.schema.service.SchemaService;
 import com.tle.core.search.QueryGatherer;
 import com.tle.core.search.VirtualisableAndValue;
 import com.tle.core.services.item.FreetextResult;
-import com.tle.core.services.item.FreetextSearchResults;
+import com.tle.core.services.item.StdFreetextResults;
 import com.tle.core.settings.service.ConfigurationService;
 import java.io.Serializable;
 import java.text.ParseException;
@@ -239,13 +241,19 @@ public class OAICatalog extends AbstractCatalog {
     // NOTHING TO DO
   }
 
+  /**
+   * Carries the position of the last item returned rather than an offset, so fetching the next
+   * page doesn't mean sorting and skipping over all the pages before it.
+   */
   private static class ResumptionToken implements Serializable {
     private final DefaultSearch request;
     private final String format;
     private final int start;
+    private final SearchCursor cursor;
 
-    public ResumptionToken(int start, DefaultSearch request, String format) {
+    public ResumptionToken(int start, SearchCursor cursor, DefaultSearch request, String format) {
       this.start = start;
+      this.cursor = cursor;
       this.request = request;
       this.format = format;
     }
@@ -263,7 +271,7 @@ public class OAICatalog extends AbstractCatalog {
       resumptionTokens.invalidate(stoken);
 
       ResumptionToken token = maybeToken.get();
-      return list(token.request, token.format, token.start + MAX_RESULTS, handler);
+      return list(token.request, token.format, token.start, token.cursor, handler);
     } catch (NoRecordsMatchException e) {
       LOGGER.error("No records match", e);
       throw new BadResumptionTokenException();
@@ -294,7 +302,7 @@ public class OAICatalog extends AbstractCatalog {
       search.setDateRange(new Date[] {parseDate(from), parseDate(until)});
     }
 
-    return list(search, metadataFormat, 0, handler);
+    return list(search, metadataFormat, 0, null, handler);
   }
 
   private Date parseDate(String s) throws BadArgumentException {
@@ -345,16 +353,25 @@ public class OAICatalog extends AbstractCatalog {
     search.setFreeTextQuery(dynaCollectionService.getSearchClause(dc, virtualiseValue));
   }
 
+  /**
+   * @param start The number of items returned by previous pages
+   * @param cursor The position of the last item of the previous page, or null for the first page
+   */
   private Map<String, Map<?, ?>> list(
-      DefaultSearch request, String format, int start, Handler handler)
+      DefaultSearch request,
+      String format,
+      int start,
+      @Nullable SearchCursor cursor,
+      Handler handler)
       throws NoRecordsMatchException, OAIInternalServerError {
     try {
       Map<String, Map<?, ?>> items = new HashMap<String, Map<?, ?>>();
 
-      FreetextSearchResults<FreetextResult> results =
-          freeTextService.search(request, start, MAX_RESULTS);
+      StdFreetextResults<FreetextResult> results =
+          freeTextService.searchAfter(request, cursor, MAX_RESULTS);
 
-      int available = results.getAvailable();
+      // Available only counts the items from the cursor onwards
+      int available = start + results.getAvailable();
       if (available == 0) {
         throw new NoRecordsMatchException();
       }
@@ -362,10 +379,11 @@ public class OAICatalog extends AbstractCatalog {
         handler.add(item, format);
       }
 
-      if (available > start + MAX_RESULTS) {
+      SearchCursor next = results.getNextCursor();
+      if (next != null) {
         String uuid = UUID.randomUUID().toString();
         Map<?, ?> map = getResumptionMap(uuid, available, start);
-        ResumptionToken token = new ResumptionToken(start, request, format);
+        ResumptionToken token = new ResumptionToken(start + MAX_RESULTS, next, request, format);
         resumptionTokens.put(uuid, token);
         items.put("resumptionMap", map); // $NON-NLS-1$
       }
@@ -19,6 +19,7 @@
 package com.tle.core.dao;
 
 import com.tle.beans.security.AccessExpression;
+import com.tle.common.Pair;
 import com.tle.common.Triple;
 import com.tle.core.hibernate.dao.GenericDao;
 import java.util.List;
@@ -34,6 +35,15 @@ public interface AccessExpressionDao extends GenericDao<AccessExpression, Long>
 
   List<AccessExpression> listAll();
 
+  /**
+   * @return The number of expressions and the highest expression id. Together these change
+   *     whenever an expression is created or deleted.
+   */
+  Pair<Long, Long> getCountAndMaxId();
+
+  /** @return The id, expression and dynamic flag of each expression after the id, in id order */
+  List<Triple<Long, String, Boolean>> listExpressionsAfter(long id);
+
   Map<Long, Long> userIdChanged(String fromUserId, String toUserId);
 
   Map<Long, Long> groupIdChanged(String fromGroupId, String toGroupId);
@@ -177,6 +177,55 @@ public class AccessExpressionDaoImpl extends GenericDaoImpl<AccessExpression, Lo
                 });
   }
 
+  @Override
+  @Transactional(propagation = Propagation.MANDATORY)
+  public Pair<Long, Long> getCountAndMaxId() {
+    Object[] result =
+        (Object[])
+            getHibernateTemplate()
+                .execute(
+                    new TLEHibernateCallback() {
+                      @Override
+                      public Object doInHibernate(Session session) throws HibernateException {
+                        return session
+                            .createQuery(
+                                "select count(*), max(id) from " + getPersistentClass().getName())
+                            .uniqueResult();
+                      }
+                    });
+    Long maxId = (Long) result[1];
+    return new Pair<Long, Long>((Long) result[0], maxId == null ? 0L : maxId);
+  }
+
+  @Override
+  @Transactional(propagation = Propagation.MANDATORY)
+  public List<Triple<Long, String, Boolean>> listExpressionsAfter(final long id) {
+    return (List<Triple<Long, String, Boolean>>)
+        getHibernateTemplate()
+            .execute(
+                new TLEHibernateCallback() {
+                  @Override
+                  public Object doInHibernate(Session session) throws HibernateException {
+                    Query query =
+                        session.createQuery(
+                            "select id, expression, dynamic from "
+                                + getPersistentClass().getName()
+                                + " where id > :id order by id");
+                    query.setLong("id", id);
+                    query.setReadOnly(true);
+
+                    List<Triple<Long, String, Boolean>> results =
+                        new ArrayList<Triple<Long, String, Boolean>>();
+                    for (Object[] o : (List<Object[]>) query.list()) {
+                      results.add(
+                          new Triple<Long, String, Boolean>(
+                              (Long) o[0], (String) o[1], (Boolean) o[2]));
+                    }
+                    return results;
+                  }
+                });
+  }
+
   @Override
   public Map<Long, Long> userIdChanged(String fromUserId, String toUserId) {
     return changedExpression(
@@ -21,6 +21,7 @@ package com.tle.core.security.impl;
 import com.dytech.edge.common.IpAddressUtils;
 import com.dytech.edge.common.IpAddressUtils.Matcher;
 import com.tle.common.security.SecurityConstants;
+import com.tle.common.security.SecurityConstants.Recipient;
 import com.tle.common.security.expressions.EvaluateExpression;
 import com.tle.common.usermanagement.user.UserState;
 import java.util.Objects;
@@ -50,10 +51,29 @@ public class AclExpressionEvaluator extends EvaluateExpression {
     return evaluate(expression);
   }
 
+  public boolean evaluate(
+      CompiledAclExpression expression,
+      UserState userState,
+      boolean isOwner,
+      boolean enableIpReferAcl) {
+    this.userState = userState;
+    this.isOwner = isOwner;
+    this.enableIpReferAcl = enableIpReferAcl;
+
+    if (!expression.isCompiled()) {
+      return evaluate(expression.getExpression());
+    }
+    return expression.evaluate(this);
+  }
+
   @Override
   protected Boolean processOperand(String token) {
-    String value = SecurityConstants.getRecipientValue(token);
-    switch (SecurityConstants.getRecipientType(token)) {
+    return processOperand(
+        SecurityConstants.getRecipientType(token), SecurityConstants.getRecipientValue(token));
+  }
+
+  boolean processOperand(Recipient recipient, String value) {
+    switch (recipient) {
       case EVERYONE:
         return true;
       case OWNER:
@@ -0,0 +1,162 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.security.impl;
+
+import com.tle.beans.security.AccessExpression;
+import com.tle.common.Pair;
+import com.tle.common.Triple;
+import com.tle.core.dao.AccessExpressionDao;
+import com.tle.core.guice.Bind;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps every access expression compiled in memory, indexed on each recipient the expression
+ * refers to (with IP address and referrer ranges indexed as everyone, the same as the expression
+ * parts in the database). Working out a user's expressions then only has to look at the
+ * expressions that mention one of the user's recipients.
+ *
+ * <p>Expressions are never edited, only created and deleted, so the index is brought up to date by
+ * checking the expression count and highest id. New expressions are added to the index, and a
+ * deletion causes it to be rebuilt.
+ */
+@Bind
+@Singleton
+@SuppressWarnings("nls")
+public class AclExpressionIndex {
+  private static final Logger LOGGER = Logger.getLogger(AclExpressionIndex.class);
+
+  private static final Snapshot EMPTY =
+      new Snapshot(-1, -1, Collections.<String, List<CompiledAclExpression>>emptyMap());
+
+  @Inject private AccessExpressionDao expressionDao;
+
+  private volatile Snapshot snapshot = EMPTY;
+
+  /**
+   * Must be called within a transaction.
+   *
+   * @param recipients e.g. the user, group, role and everyone recipients of a user
+   * @return The expressions which mention at least one of the recipients
+   */
+  public Collection<CompiledAclExpression> getMatchingExpressions(Collection<String> recipients) {
+    Map<String, List<CompiledAclExpression>> index = getCurrent().byRecipient;
+    Set<CompiledAclExpression> matches = new LinkedHashSet<CompiledAclExpression>();
+    for (String recipient : recipients) {
+      List<CompiledAclExpression> expressions = index.get(recipient);
+      if (expressions != null) {
+        matches.addAll(expressions);
+      }
+    }
+    return matches;
+  }
+
+  /** Forces the index to be rebuilt next time it is used, e.g. after expressions are remapped. */
+  public void invalidate() {
+    snapshot = EMPTY;
+  }
+
+  private Snapshot getCurrent() {
+    Pair<Long, Long> countAndMaxId = expressionDao.getCountAndMaxId();
+    Snapshot current = snapshot;
+    if (current.isCurrent(countAndMaxId)) {
+      return current;
+    }
+    synchronized (this) {
+      current = snapshot;
+      if (!current.isCurrent(countAndMaxId)) {
+        current = update(current, countAndMaxId);
+        snapshot = current;
+      }
+      return current;
+    }
+  }
+
+  private Snapshot update(Snapshot current, Pair<Long, Long> countAndMaxId) {
+    if (current != EMPTY && countAndMaxId.getSecond() > current.maxId) {
+      Snapshot added = current.add(expressionDao.listExpressionsAfter(current.maxId));
+      if (added.isCurrent(countAndMaxId)) {
+        return added;
+      }
+    }
+
+    Snapshot rebuilt = EMPTY.add(expressionDao.listExpressionsAfter(-1));
+    LOGGER.info("Indexed " + rebuilt.count + " access expressions");
+    return rebuilt;
+  }
+
+  private static class Snapshot {
+    final long count;
+    final long maxId;
+    final Map<String, List<CompiledAclExpression>> byRecipient;
+
+    protected Snapshot(
+        long count, long maxId, Map<String, List<CompiledAclExpression>> byRecipient) {
+      this.count = count;
+      this.maxId = maxId;
+      this.byRecipient = byRecipient;
+    }
+
+    boolean isCurrent(Pair<Long, Long> countAndMaxId) {
+      return count == countAndMaxId.getFirst() && maxId == countAndMaxId.getSecond();
+    }
+
+    /** Copy on write, so readers of this snapshot aren't disturbed. */
+    Snapshot add(List<Triple<Long, String, Boolean>> expressions) {
+      Map<String, List<CompiledAclExpression>> index =
+          new HashMap<String, List<CompiledAclExpression>>(byRecipient);
+      Set<String> copied = new HashSet<String>();
+      long newMaxId = Math.max(maxId, 0);
+      for (Triple<Long, String, Boolean> exp : expressions) {
+        CompiledAclExpression compiled =
+            new CompiledAclExpression(exp.getFirst(), exp.getSecond(), exp.getThird());
+        for (String recipient : getRecipients(exp.getSecond())) {
+          List<CompiledAclExpression> list = index.get(recipient);
+          if (copied.add(recipient)) {
+            list =
+                list == null
+                    ? new ArrayList<CompiledAclExpression>()
+                    : new ArrayList<CompiledAclExpression>(list);
+            index.put(recipient, list);
+          }
+          list.add(compiled);
+        }
+        newMaxId = Math.max(newMaxId, exp.getFirst());
+      }
+      return new Snapshot(Math.max(count, 0) + expressions.size(), newMaxId, index);
+    }
+
+    private static Set<String> getRecipients(String expression) {
+      AccessExpression parsed = new AccessExpression();
+      parsed.setExpression(expression);
+      parsed.parseExpression();
+      return new HashSet<String>(parsed.getExpressionParts());
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.security.impl;
+
+import com.tle.common.security.SecurityConstants;
+import com.tle.common.security.SecurityConstants.Recipient;
+import com.tle.common.security.expressions.PostfixExpressionParser.BooleanOp;
+
+/**
+ * An ACL expression that has been parsed once into its operands and operators, so it can be
+ * evaluated against many users without splitting and decoding the expression string each time.
+ */
+@SuppressWarnings("nls")
+public class CompiledAclExpression {
+  private final long id;
+  private final String expression;
+  private final boolean dynamic;
+
+  // Postfix program: null for an operand (taken in order from recipients/values) or the operator
+  private final BooleanOp[] program;
+  private final Recipient[] recipients;
+  private final String[] values;
+  private final int maxDepth;
+
+  public CompiledAclExpression(long id, String expression, boolean dynamic) {
+    this.id = id;
+    this.expression = expression;
+    this.dynamic = dynamic;
+
+    String[] tokens = expression.split("\\s");
+    BooleanOp[] ops = new BooleanOp[tokens.length];
+    Recipient[] recips = new Recipient[tokens.length];
+    String[] vals = new String[tokens.length];
+    int operands = 0;
+    int depth = 0;
+    int max = 0;
+    boolean valid = true;
+    for (int i = 0; i < tokens.length && valid; i++) {
+      String token = tokens[i];
+      BooleanOp op = BooleanOp.getOperator(token);
+      ops[i] = op;
+      if (op == null) {
+        try {
+          recips[operands] = SecurityConstants.getRecipientType(token);
+          vals[operands] = SecurityConstants.getRecipientValue(token);
+        } catch (IllegalArgumentException ex) {
+          valid = false;
+        }
+        operands++;
+        max = Math.max(max, ++depth);
+      } else if (op == BooleanOp.NOT_TOKEN) {
+        valid = depth >= 1;
+      } else {
+        valid = depth >= 2;
+        depth--;
+      }
+    }
+
+    // Anything odd is left to the string evaluator so it fails the same way it always has
+    if (valid && depth > 0) {
+      program = ops;
+      recipients = recips;
+      values = vals;
+      maxDepth = max;
+    } else {
+      program = null;
+      recipients = null;
+      values = null;
+      maxDepth = 0;
+    }
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public String getExpression() {
+    return expression;
+  }
+
+  public boolean isDynamic() {
+    return dynamic;
+  }
+
+  /** @return false if the expression couldn't be compiled and must be evaluated as a string */
+  boolean isCompiled() {
+    return program != null;
+  }
+
+  boolean evaluate(AclExpressionEvaluator evaluator) {
+    boolean[] stack = new boolean[maxDepth];
+    int top = 0;
+    int operand = 0;
+    for (BooleanOp op : program) {
+      if (op == null) {
+        stack[top++] = evaluator.processOperand(recipients[operand], values[operand]);
+        operand++;
+      } else if (op == BooleanOp.NOT_TOKEN) {
+        stack[top - 1] = !stack[top - 1];
+      } else {
+        boolean operand1 = stack[--top];
+        boolean operand2 = stack[top - 1];
+        stack[top - 1] =
+            op == BooleanOp.AND_TOKEN ? operand1 && operand2 : operand1 || operand2;
+      }
+    }
+    return stack[top - 1];
+  }
+}
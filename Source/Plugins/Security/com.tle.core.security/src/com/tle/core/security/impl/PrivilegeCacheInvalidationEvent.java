@@ -0,0 +1,55 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tle.core.security.impl;
+
+import com.tle.core.events.ApplicationEvent;
+
+/**
+ * Tells the other cluster nodes that the ACLs of the current institution (or of every institution)
+ * have changed and any privilege decisions they have cached for it should be dropped.
+ */
+public class PrivilegeCacheInvalidationEvent
+    extends ApplicationEvent<PrivilegeCacheInvalidationListener> {
+  private static final long serialVersionUID = 1L;
+
+  private final boolean allInstitutions;
+
+  public PrivilegeCacheInvalidationEvent(boolean allInstitutions) {
+    super(PostTo.POST_TO_OTHER_CLUSTER_NODES);
+    this.allInstitutions = allInstitutions;
+  }
+
+  public boolean isAllInstitutions() {
+    return allInstitutions;
+  }
+
+  @Override
+  public Class<PrivilegeCacheInvalidationListener> getListener() {
+    return PrivilegeCacheInvalidationListener.class;
+  }
+
+  @Override
+  public void postEvent(PrivilegeCacheInvalidationListener listener) {
+    listener.invalidatePrivilegeDecisions(this);
+  }
+
+  @Override
+  public boolean requiresInstitution() {
+    return !allInstitutions;
+  }
+}
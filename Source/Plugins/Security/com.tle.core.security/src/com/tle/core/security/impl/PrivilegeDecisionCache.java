@@ -0,0 +1,367 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tle.core.security.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import com.tle.beans.Institution;
+import com.tle.common.institution.CurrentInstitution;
+import com.tle.core.dao.AclDao;
+import com.tle.core.events.services.EventService;
+import com.tle.core.guice.Bind;
+import com.tle.core.institution.events.InstitutionEvent;
+import com.tle.core.institution.events.InstitutionEvent.InstitutionEventType;
+import com.tle.core.institution.events.listeners.InstitutionListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.inject.Singleton;
+import org.apache.log4j.Logger;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Caches the rows returned by {@link AclDao#getPrivilegesForTargets} for each target and privilege.
+ * Entries are keyed on the sorted set of ACL expressions the rows were evaluated against rather
+ * than the user, so every user with the same ACL profile (e.g. every guest, or every member of the
+ * same groups) shares the same decisions.
+ *
+ * <p>Each institution has a generation which is part of the key. Changing an ACL bumps the
+ * generation, so stale entries can no longer be found and simply age out of the cache. The bump
+ * happens again once the transaction has committed, and other cluster nodes are told to do the
+ * same.
+ */
+@Bind
+@Singleton
+@SuppressWarnings("nls")
+public class PrivilegeDecisionCache
+    implements PrivilegeCacheInvalidationListener, InstitutionListener {
+  private static final Logger LOGGER = Logger.getLogger(PrivilegeDecisionCache.class);
+
+  private static final Comparator<Object[]> BY_ORDERING_DESC =
+      new Comparator<Object[]>() {
+        @Override
+        public int compare(Object[] o1, Object[] o2) {
+          return ((String) o2[0]).compareTo((String) o1[0]);
+        }
+      };
+
+  @Inject private AclDao aclDao;
+  @Inject private EventService eventService;
+
+  @Inject(optional = true)
+  @Named("security.privilegeCache.maxSize")
+  private int maxSize = 100000;
+
+  @Inject(optional = true)
+  @Named("security.privilegeCache.expiryMinutes")
+  private int expiryMinutes = 30;
+
+  private final ConcurrentMap<Long, AtomicLong> generations =
+      new ConcurrentHashMap<Long, AtomicLong>();
+
+  private final AtomicLong lookups = new AtomicLong();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong queries = new AtomicLong();
+
+  private volatile Cache<DecisionKey, List<Object[]>> decisions;
+
+  /**
+   * Returns the same rows as {@link AclDao#getPrivilegesForTargets}, ordered by the aggregate
+   * ordering descending, only querying for the targets and privileges that aren't cached.
+   */
+  public List<Object[]> getPrivilegesForTargets(
+      Collection<String> privileges, Collection<String> targets, Collection<Long> expressions) {
+    final long institutionId = CurrentInstitution.get().getUniqueId();
+    final AtomicLong generation = getGeneration(institutionId);
+    final long startGeneration = generation.get();
+    final String profile = getProfileKey(expressions);
+    final Cache<DecisionKey, List<Object[]>> cache = getCache();
+
+    List<Object[]> rows = new ArrayList<Object[]>();
+    Set<DecisionKey> missing = new LinkedHashSet<DecisionKey>();
+    Set<String> missingTargets = new HashSet<String>();
+    Set<String> missingPrivileges = new HashSet<String>();
+    for (String target : targets) {
+      for (String privilege : privileges) {
+        DecisionKey key =
+            new DecisionKey(institutionId, startGeneration, profile, target, privilege);
+        List<Object[]> cached = cache.getIfPresent(key);
+        if (cached != null) {
+          rows.addAll(cached);
+        } else {
+          missing.add(key);
+          missingTargets.add(target);
+          missingPrivileges.add(privilege);
+        }
+      }
+    }
+
+    int total = targets.size() * privileges.size();
+    lookups.addAndGet(total);
+    hits.addAndGet(total - missing.size());
+
+    if (!missing.isEmpty()) {
+      queries.incrementAndGet();
+      Map<DecisionKey, List<Object[]>> loaded = new HashMap<DecisionKey, List<Object[]>>();
+      for (Object[] row :
+          aclDao.getPrivilegesForTargets(missingPrivileges, missingTargets, expressions)) {
+        DecisionKey key =
+            new DecisionKey(
+                institutionId, startGeneration, profile, (String) row[2], (String) row[1]);
+        List<Object[]> keyRows = loaded.get(key);
+        if (keyRows == null) {
+          keyRows = Lists.newArrayList();
+          loaded.put(key, keyRows);
+        }
+        keyRows.add(row);
+      }
+
+      // Don't store anything that may have been read while the ACLs were changing
+      boolean store = generation.get() == startGeneration;
+      for (DecisionKey key : missing) {
+        List<Object[]> keyRows = loaded.get(key);
+        if (keyRows != null) {
+          rows.addAll(keyRows);
+        }
+        if (store) {
+          cache.put(
+              key,
+              keyRows == null ? Collections.<Object[]>emptyList() : ImmutableList.copyOf(keyRows));
+        }
+      }
+    }
+
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug(
+          "Privilege decisions: requested["
+              + total
+              + "] cached["
+              + (total - missing.size())
+              + "] queries saved["
+              + (missing.isEmpty() ? 1 : 0)
+              + "] totals: lookups["
+              + lookups.get()
+              + "] hits["
+              + hits.get()
+              + "] queries["
+              + queries.get()
+              + "]");
+    }
+
+    // Keep the order the query would have returned them in
+    Collections.sort(rows, BY_ORDERING_DESC);
+    return rows;
+  }
+
+  /**
+   * Stops any cached decisions for the current institution being used from now on, and again once
+   * the current transaction (if any) has committed so nothing read in between survives. Other
+   * cluster nodes are told to do the same after the commit.
+   */
+  public void invalidate() {
+    Institution institution = CurrentInstitution.get();
+    if (institution == null) {
+      invalidateAll();
+      return;
+    }
+
+    final long institutionId = institution.getUniqueId();
+    getGeneration(institutionId).incrementAndGet();
+
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+              getGeneration(institutionId).incrementAndGet();
+              eventService.publishApplicationEvent(new PrivilegeCacheInvalidationEvent(false));
+            }
+          });
+    } else {
+      eventService.publishApplicationEvent(new PrivilegeCacheInvalidationEvent(false));
+    }
+  }
+
+  /**
+   * As {@link #invalidate()} but for every institution, for changes made outside of any one
+   * institution such as the scheduled removal of expired ACL entries.
+   */
+  public void invalidateAll() {
+    bumpAllGenerations();
+
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+              bumpAllGenerations();
+              eventService.publishApplicationEvent(new PrivilegeCacheInvalidationEvent(true));
+            }
+          });
+    } else {
+      eventService.publishApplicationEvent(new PrivilegeCacheInvalidationEvent(true));
+    }
+  }
+
+  @Override
+  public void invalidatePrivilegeDecisions(PrivilegeCacheInvalidationEvent event) {
+    if (event.isAllInstitutions()) {
+      bumpAllGenerations();
+    } else {
+      getGeneration(CurrentInstitution.get().getUniqueId()).incrementAndGet();
+    }
+  }
+
+  private void bumpAllGenerations() {
+    // Institutions without a generation yet have nothing cached
+    for (AtomicLong generation : generations.values()) {
+      generation.incrementAndGet();
+    }
+  }
+
+  @Override
+  public void institutionEvent(InstitutionEvent event) {
+    if (event.getEventType() == InstitutionEventType.STATUS) {
+      return;
+    }
+    // Imports and deletions change the ACLs without going through the manager
+    for (Institution institution : event.getChanges().values()) {
+      getGeneration(institution.getUniqueId()).incrementAndGet();
+    }
+  }
+
+  public long getLookupCount() {
+    return lookups.get();
+  }
+
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  public long getQueryCount() {
+    return queries.get();
+  }
+
+  private AtomicLong getGeneration(long institutionId) {
+    AtomicLong generation = generations.get(institutionId);
+    if (generation == null) {
+      AtomicLong newGeneration = new AtomicLong();
+      generation = generations.putIfAbsent(institutionId, newGeneration);
+      if (generation == null) {
+        generation = newGeneration;
+      }
+    }
+    return generation;
+  }
+
+  private Cache<DecisionKey, List<Object[]>> getCache() {
+    Cache<DecisionKey, List<Object[]>> cache = decisions;
+    if (cache == null) {
+      synchronized (this) {
+        cache = decisions;
+        if (cache == null) {
+          CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().maximumSize(maxSize);
+          if (expiryMinutes > 0) {
+            builder.expireAfterWrite(expiryMinutes, TimeUnit.MINUTES);
+          }
+          cache = builder.build();
+          decisions = cache;
+        }
+      }
+    }
+    return cache;
+  }
+
+  private static String getProfileKey(Collection<Long> expressions) {
+    long[] ids = new long[expressions.size()];
+    int i = 0;
+    for (Long id : expressions) {
+      ids[i++] = id;
+    }
+    Arrays.sort(ids);
+
+    StringBuilder key = new StringBuilder();
+    long last = -1;
+    for (long id : ids) {
+      // Owner and common expressions can overlap
+      if (id != last) {
+        key.append(id).append(',');
+        last = id;
+      }
+    }
+    return key.toString();
+  }
+
+  private static final class DecisionKey {
+    private final long institutionId;
+    private final long generation;
+    private final String profile;
+    private final String target;
+    private final String privilege;
+    private final int hashCode;
+
+    DecisionKey(
+        long institutionId, long generation, String profile, String target, String privilege) {
+      this.institutionId = institutionId;
+      this.generation = generation;
+      this.profile = profile;
+      this.target = target;
+      this.privilege = privilege;
+      this.hashCode =
+          Arrays.hashCode(new Object[] {institutionId, generation, profile, target, privilege});
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof DecisionKey)) {
+        return false;
+      }
+      DecisionKey other = (DecisionKey) obj;
+      return institutionId == other.institutionId
+          && generation == other.generation
+          && profile.equals(other.profile)
+          && target.equals(other.target)
+          && privilege.equals(other.privilege);
+    }
+  }
+}
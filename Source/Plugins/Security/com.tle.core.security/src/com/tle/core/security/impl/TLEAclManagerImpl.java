@@ -90,6 +90,8 @@ public class TLEAclManagerImpl implements TLEAclManager {
 
   @Inject private AclDao aclDao;
   @Inject private AccessExpressionDao expressionDao;
+  @Inject private AclExpressionIndex expressionIndex;
+  @Inject private PrivilegeDecisionCache decisionCache;
 
   private PluginTracker<SecurityTargetHandler> ownerHandlers;
   private PluginTracker<SecurityTargetHandler> labellingHandlers;
@@ -226,7 +228,8 @@ public class TLEAclManagerImpl implements TLEAclManager {
         new CombinedCollection<Long>(currentUser.getCommonAclExpressions(), ownerOrNotOwner);
 
     if (!targetMapping.isEmpty() && !expressions.isEmpty()) {
-      return aclDao.getPrivilegesForTargets(privileges, targetMapping.keySet(), expressions);
+      return decisionCache.getPrivilegesForTargets(
+          privileges, targetMapping.keySet(), expressions);
     }
     return Collections.emptyList();
   }
@@ -411,6 +414,7 @@ public class TLEAclManagerImpl implements TLEAclManager {
       priorities.add(PRIORITY_OBJECT_INSTANCE);
     }
     aclDao.deleteAll(target, targetList != null && targetList.isPartial(), priorities);
+    decisionCache.invalidate();
 
     if (targetList != null && targetList.getEntries() != null) {
       int order = targetList.getEntries().size() - 1;
@@ -458,6 +462,7 @@ public class TLEAclManagerImpl implements TLEAclManager {
     }
 
     addAccessEntry(target, privilegeNode, grant, override, 0, privilege, expression, expiry);
+    decisionCache.invalidate();
   }
 
   @Override
@@ -564,13 +569,11 @@ public class TLEAclManagerImpl implements TLEAclManager {
     Collection<Long> notOwner = new ArrayList<Long>();
 
     AclExpressionEvaluator evaluator = new AclExpressionEvaluator();
-    for (Triple<Long, String, Boolean> exp : expressionDao.getMatchingExpressions(values)) {
-      long expressionID = exp.getFirst();
-      String expression = exp.getSecond();
-      boolean isDynamic = exp.getThird();
+    for (CompiledAclExpression expression : expressionIndex.getMatchingExpressions(values)) {
+      long expressionID = expression.getId();
 
       // If it's a dynamic expression...
-      if (isDynamic) {
+      if (expression.isDynamic()) {
         boolean own = evaluator.evaluate(expression, userState, true, enableIpReferAcl);
         boolean nOwn = evaluator.evaluate(expression, userState, false, enableIpReferAcl);
 
@@ -581,7 +584,7 @@ public class TLEAclManagerImpl implements TLEAclManager {
         } else if (nOwn) {
           notOwner.add(expressionID);
         }
-      } else if (evaluator.evaluate(expression, userState, true)) {
+      } else if (evaluator.evaluate(expression, userState, true, true)) {
         common.add(expressionID);
       }
     }
@@ -613,6 +616,7 @@ public class TLEAclManagerImpl implements TLEAclManager {
     String target = prefix + ":" + id + ":";
     aclDao.deleteAll(
         target, true, Arrays.asList(type.getOverridePriority(), -type.getOverridePriority()));
+    decisionCache.invalidate();
   }
 
   @Override
@@ -620,9 +624,14 @@ public class TLEAclManagerImpl implements TLEAclManager {
   public void deleteExpiredAccessEntries() {
     Criterion c1 = Restrictions.isNotNull("expiry");
     Criterion c2 = Restrictions.lt("expiry", new Date());
-    for (AccessEntry entry : aclDao.findAllByCriteria(c1, c2)) {
+    List<AccessEntry> expired = aclDao.findAllByCriteria(c1, c2);
+    for (AccessEntry entry : expired) {
       aclDao.delete(entry);
     }
+    // Runs as a server wide task, and the entries can belong to any institution
+    if (!expired.isEmpty()) {
+      decisionCache.invalidateAll();
+    }
   }
 
   /**
@@ -773,6 +782,7 @@ public class TLEAclManagerImpl implements TLEAclManager {
   public void userIdChanged(String fromUserId, String toUserId) {
     Map<Long, Long> remap = expressionDao.userIdChanged(fromUserId, toUserId);
     remapAclsExpressions(remap);
+    expressionIndex.invalidate();
   }
 
   @Override
@@ -780,12 +790,16 @@ public class TLEAclManagerImpl implements TLEAclManager {
   public void groupIdChanged(String fromGroupId, String toGroupId) {
     Map<Long, Long> remap = expressionDao.groupIdChanged(fromGroupId, toGroupId);
     remapAclsExpressions(remap);
+    expressionIndex.invalidate();
   }
 
   private void remapAclsExpressions(Map<Long, Long> oldToNewIds) {
     for (Entry<Long, Long> entry : oldToNewIds.entrySet()) {
       aclDao.remapExpressionId(entry.getKey(), entry.getValue());
     }
+    if (!oldToNewIds.isEmpty()) {
+      decisionCache.invalidate();
+    }
   }
 
   @Override